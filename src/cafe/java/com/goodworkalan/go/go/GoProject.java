@@ -21,7 +21,6 @@ public class GoProject implements ProjectModule {
             .cookbook(JavaProject.class)
                 .produces("com.github.bigeasy.go-go/go-go/0.1.4.26")
                 .depends()
-                    .production("com.github.bigeasy.reflective/reflective-setter/0.+1")
                     .production("com.github.bigeasy.ilk/ilk/0.+1")
                     .production("com.github.bigeasy.class/class-boxer/0.+1")
                     .production("com.github.bigeasy.infuse/infuse/0.+1")
@@ -1,31 +1,124 @@
 package com.goodworkalan.go.go;
 
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
 import com.goodworkalan.infuse.ObjectInfuser;
-import com.goodworkalan.reflective.setter.Setter;
 
 /**
  * Assigns a command line argument to a property in a {@link Commandable}.
+ * <p>
+ * The assignment is prepared when the command node is built so that the
+ * assignment of an argument each time a command is run does as little work as
+ * possible. The setter method or field is made accessible once, so that the
+ * access checks of reflection are skipped on each assignment, the reflective
+ * call is made directly rather than through a setter wrapper, and whether the
+ * argument is a boolean flag is determined once rather than by boxing the
+ * property type each time an argument is parsed. The virtual machine compiles
+ * a reflective method or field accessor into bytecode once it has been used
+ * often enough, so a command run many times by a daemon or a batch assigns
+ * its arguments with generated code.
  * 
  * @author Alan Gutierrez
  */
 class Assignment {
-    /** The method to set the task property. */
-    public final Setter setter;
+    /** The property type. */
+    public final Class<?> type;
+
+    /** Whether the property is a boolean flag. */
+    public final boolean flag;
 
     /** The converter for the string property. */
     public final ObjectInfuser infuser;
 
+    /** The setter method or null if the property is a field. */
+    private final Method method;
+
+    /** The field or null if the property is set by a setter method. */
+    private final Field field;
+
     /**
      * Create an assignment that will set the property identified by the given
      * setter method with a string value converted with the given converter.
      * 
-     * @param setter
-     *            The property setter.
+     * @param method
+     *            The property setter method.
+     * @param infuser
+     *            The string converter.
+     */
+    public Assignment(Method method, ObjectInfuser infuser) {
+        this.method = accessible(method);
+        this.field = null;
+        this.type = method.getParameterTypes()[0];
+        this.flag = type.equals(boolean.class) || type.equals(Boolean.class);
+        this.infuser = infuser;
+    }
+
+    /**
+     * Create an assignment that will set the property identified by the given
+     * public field with a string value converted with the given converter.
+     * 
+     * @param field
+     *            The property field.
      * @param infuser
      *            The string converter.
      */
-    public Assignment(Setter setter, ObjectInfuser infuser) {
-        this.setter = setter;
+    public Assignment(Field field, ObjectInfuser infuser) {
+        this.method = null;
+        this.field = accessible(field);
+        this.type = field.getType();
+        this.flag = type.equals(boolean.class) || type.equals(Boolean.class);
         this.infuser = infuser;
     }
+
+    /**
+     * Make the given reflected member accessible so that reflection skips its
+     * access checks, if the security manager allows it.
+     * 
+     * @param <T>
+     *            The type of reflected member.
+     * @param member
+     *            The reflected member.
+     * @return The reflected member.
+     */
+    private static <T extends AccessibleObject> T accessible(T member) {
+        try {
+            member.setAccessible(true);
+        } catch (SecurityException e) {
+            // Reflection will check access on each call instead.
+        }
+        return member;
+    }
+
+    /**
+     * Get the setter method or field.
+     * 
+     * @return The setter method or field.
+     */
+    public Member getMember() {
+        return method == null ? field : method;
+    }
+
+    /**
+     * Set the property of the given commandable to the given value.
+     * 
+     * @param commandable
+     *            The commandable.
+     * @param value
+     *            The converted value.
+     * @throws InvocationTargetException
+     *             If the setter method raises an exception.
+     * @throws IllegalAccessException
+     *             If the setter method or field is not accessible.
+     */
+    public void set(Object commandable, Object value) throws InvocationTargetException, IllegalAccessException {
+        if (method == null) {
+            field.set(commandable, value);
+        } else {
+            method.invoke(commandable, value);
+        }
+    }
 }
@@ -0,0 +1,324 @@
+package com.goodworkalan.go.go;
+
+import static com.goodworkalan.go.go.Executor.retry;
+import static com.goodworkalan.go.go.GoError.CANNOT_READ_BATCH;
+import static com.goodworkalan.go.go.GoError.UNTERMINATED_QUOTE;
+import static com.goodworkalan.go.go.GoException.FUTURE_EXECUTION;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs many command lines read from a file or standard input with the caches
+ * of a single program queue.
+ * <p>
+ * Each line is a command line, split into arguments at white space. Single
+ * quotes preserve everything they enclose, double quotes preserve everything
+ * they enclose except a backslash escape, and a backslash outside of single
+ * quotes escapes the character that follows it. Blank lines and lines that
+ * begin with a hash mark are skipped. The arguments given after the batch
+ * switches are prepended to every command line.
+ * <p>
+ * Every command line is run by a program queue of its own that shares the
+ * caches and settings of the batch, including a single command cache, so the
+ * class loaders, resolved class paths, reflected command structures and
+ * command outputs of one line are reused by the next. Programs read no
+ * standard input.
+ * <p>
+ * When the batch runs more than one command line at a time, the output of
+ * each command line is gathered and written when the command line finishes,
+ * either in the order of the lines or in the order in which they finish. The
+ * exit code of each command line is reported to standard error, and the exit
+ * code of the batch is the exit code of the first line that failed, or zero
+ * if every line succeeded.
+ *
+ * @author Alan Gutierrez
+ */
+class Batch {
+    /** The library path. */
+    private final List<File> libraries;
+
+    /** The caches and settings shared by the command lines of the batch. */
+    private final ExecutorSupport support;
+
+    /** The file of command lines or null to read standard input. */
+    private final File file;
+
+    /** The arguments prepended to every command line. */
+    private final List<String> prefix;
+
+    /** The number of command lines to run at once. */
+    private final int threads;
+
+    /** Whether output is written in the order of the command lines. */
+    private final boolean ordered;
+
+    /** The system verbosity. */
+    private final int verbosity;
+
+    /**
+     * Create a batch.
+     *
+     * @param libraries
+     *            The library path.
+     * @param support
+     *            The caches and settings shared by the command lines of the
+     *            batch.
+     * @param file
+     *            The file of command lines or null to read standard input.
+     * @param prefix
+     *            The arguments prepended to every command line.
+     * @param threads
+     *            The number of command lines to run at once.
+     * @param ordered
+     *            Whether output is written in the order of the command lines.
+     * @param verbosity
+     *            The system verbosity.
+     */
+    public Batch(List<File> libraries, ExecutorSupport support, File file, List<String> prefix, int threads, boolean ordered, int verbosity) {
+        this.libraries = libraries;
+        this.support = support;
+        this.file = file;
+        this.prefix = prefix;
+        this.threads = threads;
+        this.ordered = ordered;
+        this.verbosity = verbosity;
+    }
+
+    /**
+     * Split the given command line into arguments.
+     *
+     * @param line
+     *            The command line.
+     * @return The arguments.
+     * @exception GoError
+     *                If a quotation is not closed.
+     */
+    static List<String> split(String line) {
+        List<String> arguments = new ArrayList<String>();
+        StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+        for (int i = 0, stop = line.length(); i < stop; i++) {
+            char ch = line.charAt(i);
+            if (quote == '\'') {
+                if (ch == '\'') {
+                    quote = 0;
+                } else {
+                    argument.append(ch);
+                }
+            } else if (ch == '\\') {
+                if (++i == stop) {
+                    throw new GoError(UNTERMINATED_QUOTE, line);
+                }
+                argument.append(line.charAt(i));
+                inArgument = true;
+            } else if (quote == '"') {
+                if (ch == '"') {
+                    quote = 0;
+                } else {
+                    argument.append(ch);
+                }
+            } else if (ch == '\'' || ch == '"') {
+                quote = ch;
+                inArgument = true;
+            } else if (Character.isWhitespace(ch)) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                argument.append(ch);
+                inArgument = true;
+            }
+        }
+        if (quote != 0) {
+            throw new GoError(UNTERMINATED_QUOTE, line);
+        }
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+        return arguments;
+    }
+
+    /**
+     * Read the command lines of the batch, skipping blank lines and comments.
+     *
+     * @param io
+     *            The I/O bouquet whose standard input is read if there is no
+     *            batch file.
+     * @return The command lines.
+     */
+    private List<String> readLines(InputOutput io) {
+        List<String> lines = new ArrayList<String>();
+        try {
+            InputStream in = file == null ? io.in : new FileInputStream(file);
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String trimmed = line.trim();
+                    if (trimmed.length() != 0 && !trimmed.startsWith("#")) {
+                        lines.add(line);
+                    }
+                }
+            } finally {
+                if (file != null) {
+                    in.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new GoError(CANNOT_READ_BATCH, e, file == null ? "-" : file);
+        }
+        return lines;
+    }
+
+    /**
+     * Run the given command line with the given I/O bouquet and report its
+     * exit code.
+     *
+     * @param io
+     *            The I/O bouquet.
+     * @param number
+     *            The line number.
+     * @param line
+     *            The command line.
+     * @return The exit code.
+     */
+    private int run(InputOutput io, int number, String line) {
+        int code;
+        try {
+            List<String> arguments = new ArrayList<String>(prefix);
+            arguments.addAll(split(line));
+            code = new ProgramQueue(support, libraries, arguments.toArray(new String[arguments.size()])).run(io);
+        } catch (GoException e) {
+            try {
+                code = e.unwrap(io, verbosity);
+            } catch (GoException unwrapped) {
+                unwrapped.printStackTrace(io.err);
+                code = 1;
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace(io.err);
+            code = 1;
+        } catch (Error e) {
+            e.printStackTrace(io.err);
+            code = 1;
+        }
+        Environment.error(io, Batch.class, "exit", number, code, line);
+        return code;
+    }
+
+    /**
+     * Run the command lines of the batch.
+     *
+     * @param io
+     *            The I/O bouquet.
+     * @return The exit code of the first command line that failed or zero.
+     */
+    public int run(InputOutput io) {
+        List<String> lines = readLines(io);
+        int[] codes = new int[lines.size()];
+        if (threads == 1) {
+            InputOutput lineIO = new InputOutput(new ByteArrayInputStream(new byte[0]), io.out, io.err);
+            for (int i = 0, stop = lines.size(); i < stop; i++) {
+                codes[i] = run(lineIO, i + 1, lines.get(i));
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "go-go-batch");
+                    thread.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+                    return thread;
+                }
+            });
+            try {
+                final CompletionService<Result> completions = new ExecutorCompletionService<Result>(executor);
+                List<Future<Result>> futures = new ArrayList<Future<Result>>();
+                for (int i = 0, stop = lines.size(); i < stop; i++) {
+                    final int index = i;
+                    final String line = lines.get(i);
+                    futures.add(completions.submit(new Callable<Result>() {
+                        public Result call() {
+                            Result result = new Result(index);
+                            InputOutput lineIO = new InputOutput(new ByteArrayInputStream(new byte[0]), new PrintStream(result.out, true), new PrintStream(result.err, true));
+                            result.code = run(lineIO, index + 1, line);
+                            return result;
+                        }
+                    }));
+                }
+                for (int i = 0, stop = futures.size(); i < stop; i++) {
+                    final Future<Result> future = ordered ? futures.get(i) : retry(new Callable<Future<Result>>() {
+                        public Future<Result> call() throws InterruptedException {
+                            return completions.take();
+                        }
+                    });
+                    Result result;
+                    try {
+                        result = retry(future);
+                    } catch (ExecutionException e) {
+                        throw new GoException(FUTURE_EXECUTION, e);
+                    }
+                    io.out.write(result.out.toByteArray(), 0, result.out.size());
+                    io.out.flush();
+                    io.err.write(result.err.toByteArray(), 0, result.err.size());
+                    io.err.flush();
+                    codes[result.index] = result.code;
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        for (int code : codes) {
+            if (code != 0) {
+                return code;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The gathered output and exit code of a command line run concurrently.
+     */
+    private final static class Result {
+        /** The index of the command line. */
+        public final int index;
+
+        /** The gathered standard output. */
+        public final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        /** The gathered standard error. */
+        public final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        /** The exit code. */
+        public int code;
+
+        /**
+         * Create a result for the command line at the given index.
+         *
+         * @param index
+         *            The index of the command line.
+         */
+        public Result(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.goodworkalan.go.go;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.goodworkalan.go.go.library.IndexedClassLoader;
+import com.goodworkalan.go.go.library.PathPart;
+import com.goodworkalan.go.go.library.PathParts;
+
+/**
+ * A pool of class loaders shared by the programs of a program queue.
+ * <p>
+ * Class loaders are keyed by their parent class loader and the ordered files
+ * of their class path, so two programs, or two pseudo-forks, that resolve the
+ * same class path from the same parent share one class loader, and with it
+ * the loaded classes and their compiled code.
+ * <p>
+ * A class loader is acquired for the duration of the executor layer that runs
+ * in it and released when the layer finishes. A class loader that is no longer
+ * referenced is kept for the idle timeout, so that a program run again soon
+ * reuses it, and is then evicted. A pooled class loader holds a reference on
+ * the pooled entry of its parent class loader, so a parent is never evicted
+ * out from under a child.
+ * <p>
+ * Objects created by a layer can outlive the layer, and threads started by a
+ * program can go on loading classes from its class loader, so an evicted class
+ * loader is not closed. The pool only drops its reference, so that the class
+ * loader and its open jars are collected once nothing else refers to it. The
+ * evicted class loaders that have not yet been collected are closed when the
+ * pool is cleared as the program queue or daemon shuts down.
+ *
+ * @author Alan Gutierrez
+ */
+class ClassLoaderPool {
+    /** The time in milliseconds an unreferenced class loader is kept. */
+    private final long idleTimeout;
+
+    /** The map of parent class loaders and class path files to entries. */
+    private final Map<List<Object>, Entry> entries = new HashMap<List<Object>, Entry>();
+
+    /** The map of class loaders to entries. */
+    private final Map<ClassLoader, Entry> loaders = new IdentityHashMap<ClassLoader, Entry>();
+
+    /**
+     * The evicted class loaders that have not yet been collected, to be closed
+     * when the pool is cleared.
+     */
+    private final Map<IndexedClassLoader, Object> retired = new WeakHashMap<IndexedClassLoader, Object>();
+
+    /**
+     * Create a class loader pool that keeps unreferenced class loaders for the
+     * given idle timeout.
+     *
+     * @param idleTimeout
+     *            The time in milliseconds an unreferenced class loader is
+     *            kept.
+     */
+    public ClassLoaderPool(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Acquire a class loader for the given resolved path parts with the given
+     * parent class loader, creating one if there is no pooled class loader for
+     * the same parent and class path files.
+     *
+     * @param parts
+     *            The resolved path parts.
+     * @param parent
+     *            The parent class loader.
+     * @param evicted
+     *            A list to which class loaders evicted as a side effect are
+     *            added.
+     * @return A class loader that must be released when no longer needed.
+     */
+    public synchronized ClassLoader acquire(Collection<PathPart> parts, ClassLoader parent, List<ClassLoader> evicted) {
+        evict(System.currentTimeMillis(), evicted);
+        List<Object> key = new ArrayList<Object>();
+        key.add(parent);
+        key.addAll(PathParts.fileSet(parts));
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Entry parentEntry = loaders.get(parent);
+            if (parentEntry != null) {
+                parentEntry.references++;
+            }
+            entry = new Entry(PathParts.getClassLoader(parts, parent), parentEntry);
+            entries.put(key, entry);
+            loaders.put(entry.classLoader, entry);
+        }
+        entry.references++;
+        return entry.classLoader;
+    }
+
+    /**
+     * Release a class loader acquired from this pool.
+     *
+     * @param classLoader
+     *            The class loader.
+     * @param evicted
+     *            A list to which class loaders evicted as a side effect are
+     *            added.
+     */
+    public synchronized void release(ClassLoader classLoader, List<ClassLoader> evicted) {
+        long now = System.currentTimeMillis();
+        Entry entry = loaders.get(classLoader);
+        if (entry != null) {
+            release(entry, now);
+        }
+        evict(now, evicted);
+    }
+
+    /**
+     * Decrement the reference count of the given entry, noting the time it
+     * became idle when it is no longer referenced.
+     *
+     * @param entry
+     *            The entry.
+     * @param now
+     *            The current time.
+     */
+    private void release(Entry entry, long now) {
+        if (--entry.references == 0) {
+            entry.idleSince = now;
+        }
+    }
+
+    /**
+     * Evict every class loader that is no longer referenced, regardless of the
+     * idle timeout, and close every evicted class loader that has not yet been
+     * collected, as when the program queue or daemon shuts down.
+     *
+     * @param evicted
+     *            A list to which the evicted class loaders are added.
+     */
+    public synchronized void clear(List<ClassLoader> evicted) {
+        evict(Long.MAX_VALUE, evicted);
+        for (IndexedClassLoader classLoader : retired.keySet()) {
+            classLoader.close();
+        }
+        retired.clear();
+    }
+
+    /**
+     * Evict the class loaders that have been unreferenced for longer than the
+     * idle timeout as of the given time. Evicting a class loader releases its
+     * parent, which may then also be evicted.
+     *
+     * @param now
+     *            The current time.
+     * @param evicted
+     *            A list to which the evicted class loaders are added.
+     */
+    private void evict(long now, List<ClassLoader> evicted) {
+        boolean again = true;
+        while (again) {
+            again = false;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.references == 0 && (now == Long.MAX_VALUE || now - entry.idleSince >= idleTimeout)) {
+                    iterator.remove();
+                    loaders.remove(entry.classLoader);
+                    if (entry.classLoader instanceof IndexedClassLoader) {
+                        retired.put((IndexedClassLoader) entry.classLoader, null);
+                    }
+                    evicted.add(entry.classLoader);
+                    if (entry.parent != null) {
+                        release(entry.parent, now);
+                        again = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of pooled class loaders.
+     *
+     * @return The number of pooled class loaders.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A pooled class loader.
+     */
+    private final static class Entry {
+        /** The class loader. */
+        public final ClassLoader classLoader;
+
+        /** The pooled entry of the parent class loader or null. */
+        public final Entry parent;
+
+        /** The number of references to the class loader. */
+        public int references;
+
+        /** The time at which the class loader became unreferenced. */
+        public long idleSince;
+
+        /**
+         * Create a pooled class loader entry.
+         *
+         * @param classLoader
+         *            The class loader.
+         * @param parent
+         *            The pooled entry of the parent class loader or null.
+         */
+        public Entry(ClassLoader classLoader, Entry parent) {
+            this.classLoader = classLoader;
+            this.parent = parent;
+        }
+    }
+}
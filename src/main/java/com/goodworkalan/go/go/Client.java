@@ -0,0 +1,189 @@
+package com.goodworkalan.go.go;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * A thin launcher that runs a Jav-a-Go-Go program in a resident daemon.
+ * <p>
+ * The client reads the port and secret of the daemon from the daemon file,
+ * connects to the daemon on the loopback interface, sends the command line,
+ * streams standard input to the daemon and copies the standard output and
+ * standard error frames sent by the daemon to its own standard output and
+ * standard error until the daemon sends the exit code. The client loads only a
+ * handful of JDK classes, so it starts in a fraction of the time it takes to
+ * resolve and load a program.
+ * <p>
+ * The frames sent in either direction are a type byte followed by an integer
+ * length and that many bytes, except for the exit frame which is followed by
+ * the integer exit code.
+ *
+ * @author Alan Gutierrez
+ */
+public class Client {
+    /** The magic number that begins a request, "gogo" in ASCII. */
+    public final static int MAGIC = 0x676F676F;
+
+    /** A frame of standard input, an empty frame is the end of input. */
+    public final static byte STDIN = 'I';
+
+    /** A frame of standard output. */
+    public final static byte STDOUT = 'O';
+
+    /** A frame of standard error. */
+    public final static byte STDERR = 'E';
+
+    /** The exit frame containing the exit code. */
+    public final static byte EXIT = 'X';
+
+    /** The exit code returned when the daemon cannot be reached. */
+    public final static int UNAVAILABLE = 127;
+
+    /** This static method container should not be instantiated. */
+    Client() {
+    }
+
+    /**
+     * Get the default location of the daemon file, a file named
+     * <code>daemon</code> in the <code>.go-go</code> directory of the user
+     * home directory.
+     *
+     * @return The default daemon file.
+     */
+    public static File getDefaultDaemonFile() {
+        return new File(new File(System.getProperty("user.home"), ".go-go"), "daemon");
+    }
+
+    /**
+     * Run the program specified by the given arguments in the daemon described
+     * by the given daemon file, returning the exit code of the program.
+     *
+     * @param daemonFile
+     *            The daemon file containing the port and secret of the daemon.
+     * @param in
+     *            The standard input to send to the daemon.
+     * @param out
+     *            The stream where the standard output of the program is
+     *            written.
+     * @param err
+     *            The stream where the standard error of the program is
+     *            written.
+     * @param arguments
+     *            The command line arguments.
+     * @return The exit code of the program.
+     * @throws IOException
+     *             If the daemon cannot be reached or the connection fails.
+     */
+    public static int run(File daemonFile, final InputStream in, OutputStream out, OutputStream err, String... arguments) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(daemonFile));
+        String[] daemon;
+        try {
+            String line = reader.readLine();
+            daemon = line == null ? new String[0] : line.trim().split("\\s+");
+        } finally {
+            reader.close();
+        }
+        if (daemon.length != 2) {
+            throw new IOException("Malformed daemon file " + daemonFile + ".");
+        }
+        int port;
+        try {
+            port = Integer.parseInt(daemon[0]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed daemon file " + daemonFile + ".");
+        }
+        final Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        try {
+            final DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeInt(MAGIC);
+            request.writeUTF(daemon[1]);
+            request.writeInt(arguments.length);
+            for (String argument : arguments) {
+                request.writeUTF(argument);
+            }
+            request.flush();
+            Thread stdin = new Thread(new Runnable() {
+                public void run() {
+                    byte[] buffer = new byte[8192];
+                    try {
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            if (read != 0) {
+                                synchronized (request) {
+                                    request.writeByte(STDIN);
+                                    request.writeInt(read);
+                                    request.write(buffer, 0, read);
+                                    request.flush();
+                                }
+                            }
+                        }
+                        synchronized (request) {
+                            request.writeByte(STDIN);
+                            request.writeInt(0);
+                            request.flush();
+                        }
+                    } catch (IOException e) {
+                        // The program has exited and the socket is closed.
+                    }
+                }
+            }, "go-go-client-stdin");
+            stdin.setDaemon(true);
+            stdin.start();
+            DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] buffer = new byte[8192];
+            for (;;) {
+                byte type = response.readByte();
+                if (type == EXIT) {
+                    return response.readInt();
+                }
+                OutputStream stream = type == STDERR ? err : out;
+                int length = response.readInt();
+                while (length != 0) {
+                    int read = response.read(buffer, 0, Math.min(length, buffer.length));
+                    if (read == -1) {
+                        throw new IOException("Unexpected end of stream from daemon.");
+                    }
+                    stream.write(buffer, 0, read);
+                    length -= read;
+                }
+                stream.flush();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Run the program specified by the given command line in the daemon
+     * described by the default daemon file, or by the file named by the
+     * <code>go-go.daemon</code> system property, and exit with the exit code
+     * of the program.
+     *
+     * @param arguments
+     *            The command line arguments.
+     */
+    public static void main(String[] arguments) {
+        String property = System.getProperty("go-go.daemon");
+        File daemonFile = property == null ? getDefaultDaemonFile() : new File(property);
+        int code;
+        try {
+            code = run(daemonFile, System.in, System.out, System.err, arguments);
+        } catch (IOException e) {
+            System.err.println("Unable to reach the Jav-a-Go-Go daemon described by " + daemonFile + ": " + e.getMessage());
+            code = UNAVAILABLE;
+        }
+        System.out.flush();
+        System.err.flush();
+        System.exit(code);
+    }
+}
@@ -0,0 +1,261 @@
+package com.goodworkalan.go.go;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The in memory cache of command outputs shared by the executors of a
+ * program.
+ * <p>
+ * Each executor caches the outputs of its commands in a scope of its own, and
+ * looks for cached outputs in its own scope and then in the scopes of the
+ * executors that spawned it, so that an executor sees the outputs cached by
+ * its ancestors but not the outputs cached by its descendants, which may have
+ * been loaded by a class loader the executor cannot see. The executor that
+ * begins a program caches outputs in the root scope, so that programs that
+ * share a command cache share the outputs of the commands run by their
+ * initial class loader.
+ * <p>
+ * The cache holds at most a maximum number of entries, evicting the least
+ * recently used entry when it is full. The cache entries can be held by soft
+ * references, so that a long running process can keep the outputs of
+ * expensive commands for as long as memory allows. A cache entry that has been
+ * collected is counted as an eviction. The cache counts hits, misses and
+ * evictions for verbose reporting.
+ *
+ * @author Alan Gutierrez
+ */
+class CommandCache {
+    /** The scope of the executor that begins a program. */
+    public final static int ROOT_SCOPE = 0;
+
+    /** The maximum number of entries. */
+    private final int maximumSize;
+
+    /** Whether cache entries are held by soft references. */
+    private final boolean soft;
+
+    /**
+     * The map of scopes and command keys to cache entries or soft references
+     * to cache entries in least recently used order.
+     */
+    private final Map<Scoped, Object> entries;
+
+    /** The next scope identifier. */
+    private int nextScope = ROOT_SCOPE + 1;
+
+    /** The number of lookups that found a cache entry. */
+    private long hits;
+
+    /** The number of lookups that did not find a cache entry. */
+    private long misses;
+
+    /** The number of cache entries evicted or collected. */
+    private long evictions;
+
+    /**
+     * Create a command cache.
+     *
+     * @param maximumSize
+     *            The maximum number of entries.
+     * @param soft
+     *            Whether cache entries are held by soft references.
+     */
+    public CommandCache(int maximumSize, boolean soft) {
+        this.maximumSize = maximumSize;
+        this.soft = soft;
+        this.entries = new LinkedHashMap<Scoped, Object>(16, 0.75f, true) {
+            /** The serial version id. */
+            private static final long serialVersionUID = 1L;
+
+            /**
+             * Evict the least recently used entry when the cache is full.
+             *
+             * @param eldest
+             *            The least recently used entry.
+             * @return True if the cache is full.
+             */
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Scoped, Object> eldest) {
+                if (size() > CommandCache.this.maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create a new scope for an executor that extends the class path.
+     *
+     * @return A new scope identifier.
+     */
+    public synchronized int newScope() {
+        return nextScope++;
+    }
+
+    /**
+     * Get the cache entry for the given command key from the first of the
+     * given scopes, searched from last to first, that has one, counting the
+     * lookup as a hit or a miss.
+     *
+     * @param scopes
+     *            The scopes of an executor and its ancestors, ancestors first.
+     * @param key
+     *            The command key.
+     * @return The cache entry or null.
+     */
+    public synchronized CacheEntry get(int[] scopes, List<String> key) {
+        CacheEntry cacheEntry = find(scopes, key);
+        if (cacheEntry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Cache the given cache entry for the given command key in the last of the
+     * given scopes, returning the entry visible for the command key in the
+     * given scopes before it was cached.
+     *
+     * @param scopes
+     *            The scopes of an executor and its ancestors, ancestors first.
+     * @param key
+     *            The command key.
+     * @param cacheEntry
+     *            The cache entry.
+     * @return The previously visible cache entry or null.
+     */
+    public synchronized CacheEntry put(int[] scopes, List<String> key, CacheEntry cacheEntry) {
+        CacheEntry previous = find(scopes, key);
+        entries.put(new Scoped(scopes[scopes.length - 1], key), soft ? new SoftReference<CacheEntry>(cacheEntry) : cacheEntry);
+        return previous;
+    }
+
+    /**
+     * Find the cache entry for the given command key searching the given
+     * scopes from last to first, removing collected entries.
+     *
+     * @param scopes
+     *            The scopes of an executor and its ancestors, ancestors first.
+     * @param key
+     *            The command key.
+     * @return The cache entry or null.
+     */
+    private CacheEntry find(int[] scopes, List<String> key) {
+        for (int i = scopes.length - 1; i >= 0; i--) {
+            Scoped scoped = new Scoped(scopes[i], key);
+            Object value = entries.get(scoped);
+            if (value instanceof SoftReference<?>) {
+                value = ((SoftReference<?>) value).get();
+                if (value == null) {
+                    entries.remove(scoped);
+                    evictions++;
+                }
+            }
+            if (value != null) {
+                return (CacheEntry) value;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Get the number of lookups that found a cache entry.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that did not find a cache entry.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of cache entries evicted or collected.
+     *
+     * @return The number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the number of cache entries, including soft entries that may have
+     * been collected.
+     *
+     * @return The number of cache entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * The map key of a command key in a scope. The command key is not copied,
+     * and a {@link CommandKey} is hashed without visiting its elements.
+     */
+    private final static class Scoped {
+        /** The scope. */
+        private final int scope;
+
+        /** The command key. */
+        private final List<String> key;
+
+        /** The hash code. */
+        private final int hash;
+
+        /**
+         * Create the map key for the given command key in the given scope.
+         *
+         * @param scope
+         *            The scope.
+         * @param key
+         *            The command key.
+         */
+        public Scoped(int scope, List<String> key) {
+            this.scope = scope;
+            this.key = key;
+            this.hash = 31 * scope + key.hashCode();
+        }
+
+        /**
+         * Whether the given object is a map key of an equal command key in the
+         * same scope.
+         *
+         * @param object
+         *            The object to compare.
+         * @return True if the object is equal to this map key.
+         */
+        @Override
+        public boolean equals(Object object) {
+            if (object instanceof Scoped) {
+                Scoped scoped = (Scoped) object;
+                return scope == scoped.scope && hash == scoped.hash && key.equals(scoped.key);
+            }
+            return false;
+        }
+
+        /**
+         * Get the hash code.
+         *
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
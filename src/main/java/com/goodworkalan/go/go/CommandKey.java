@@ -0,0 +1,178 @@
+package com.goodworkalan.go.go;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable command key built one element at a time by extending the key
+ * of the command path that precedes it.
+ * <p>
+ * The key is a list of the command names and qualified arguments of a command
+ * path, linked from the last element to the first, so that extending a key
+ * with a command or an argument shares the key it extends and takes constant
+ * time. The hash code is the hash code the <code>List</code> contract
+ * requires, computed as each element is added, so that a key is hashed
+ * without visiting its elements and is interchangeable with any other list of
+ * the same strings. Keys that share a prefix are compared only up to the
+ * shared prefix.
+ * 
+ * @author Alan Gutierrez
+ */
+class CommandKey extends AbstractList<String> {
+    /** The empty command key. */
+    public final static CommandKey EMPTY = new CommandKey(null, null, 0, 1);
+
+    /** The key this key extends or null for the empty key. */
+    private final CommandKey parent;
+
+    /** The last element of the key. */
+    private final String element;
+
+    /** The number of elements in the key. */
+    private final int size;
+
+    /** The list hash code of the key. */
+    private final int hash;
+
+    /**
+     * Create a command key.
+     * 
+     * @param parent
+     *            The key this key extends or null for the empty key.
+     * @param element
+     *            The last element of the key.
+     * @param size
+     *            The number of elements in the key.
+     * @param hash
+     *            The list hash code of the key.
+     */
+    private CommandKey(CommandKey parent, String element, int size, int hash) {
+        this.parent = parent;
+        this.element = element;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    /**
+     * Create a key that extends this key with the given element.
+     * 
+     * @param element
+     *            The element to append.
+     * @return A new command key.
+     */
+    public CommandKey extend(String element) {
+        return new CommandKey(this, element, size + 1, 31 * hash + (element == null ? 0 : element.hashCode()));
+    }
+
+    /**
+     * Create a key that extends this key with the given elements.
+     * 
+     * @param elements
+     *            The elements to append.
+     * @return A new command key.
+     */
+    public CommandKey extend(List<String> elements) {
+        CommandKey key = this;
+        for (String element : elements) {
+            key = key.extend(element);
+        }
+        return key;
+    }
+
+    /**
+     * Get the element at the given index.
+     * 
+     * @param index
+     *            The index.
+     * @return The element.
+     */
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        CommandKey key = this;
+        for (int i = size - 1; i > index; i--) {
+            key = key.parent;
+        }
+        return key.element;
+    }
+
+    /**
+     * Get the number of elements in the key.
+     * 
+     * @return The size.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the elements of the key in order.
+     * 
+     * @return An array of the elements.
+     */
+    @Override
+    public String[] toArray() {
+        String[] elements = new String[size];
+        CommandKey key = this;
+        for (int i = size - 1; i >= 0; i--) {
+            elements[i] = key.element;
+            key = key.parent;
+        }
+        return elements;
+    }
+
+    /**
+     * Get an iterator over the elements of the key in order.
+     * 
+     * @return An iterator.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return Arrays.asList(toArray()).iterator();
+    }
+
+    /**
+     * Get the precomputed list hash code of the key.
+     * 
+     * @return The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Whether this key is equal to the given object, comparing another command
+     * key element by element from the last to the first until the keys share
+     * a prefix, and comparing any other list by the <code>List</code>
+     * contract.
+     * 
+     * @param object
+     *            The object to compare.
+     * @return True if the object is a list of the same elements.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (object instanceof CommandKey) {
+            CommandKey key = this;
+            CommandKey other = (CommandKey) object;
+            if (key.size != other.size || key.hash != other.hash) {
+                return false;
+            }
+            while (key != other) {
+                if (key.element == null ? other.element != null : !key.element.equals(other.element)) {
+                    return false;
+                }
+                key = key.parent;
+                other = other.parent;
+            }
+            return true;
+        }
+        return super.equals(object);
+    }
+}
@@ -0,0 +1,204 @@
+package com.goodworkalan.go.go;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.goodworkalan.go.go.library.CacheFiles;
+
+/**
+ * Reads and writes the command manifest of a program jar.
+ * <p>
+ * The command manifest is written when a program is installed to a file with
+ * the same name as the jar file but with a <code>.commands</code> extension.
+ * It describes each command listed in the commandable services file of the
+ * jar: its class name, command line name, parent command class name, and
+ * argument names and types. An executor builds its command tree from the
+ * manifest without loading the command classes, and loads and reflects upon
+ * only the command classes of the command line it runs.
+ * <p>
+ * The first line of the manifest records the length and modification time of
+ * the jar file, and a manifest that does not match its jar file is ignored.
+ * The manifest is written atomically, so a program never reads a partial
+ * manifest. The manifest only spares loading command classes, so a manifest
+ * that cannot be written is not an error; the command tree is built by loading
+ * the command classes instead.
+ * Each following line describes a command as tab separated fields: the class
+ * name, the command line name, the parent class name or an empty string, and
+ * a space separated list of argument name and type name pairs separated by a
+ * colon.
+ *
+ * @author Alan Gutierrez
+ */
+public class CommandManifest {
+    /** The command manifest file extension. */
+    private final static String EXTENSION = ".commands";
+
+    /** The class name of the command. */
+    public final String className;
+
+    /** The command line name of the command. */
+    public final String name;
+
+    /** The class name of the parent command or null. */
+    public final String parentClassName;
+
+    /** The map of argument names to argument type names. */
+    public final Map<String, String> arguments;
+
+    /**
+     * Create a command manifest entry.
+     *
+     * @param className
+     *            The class name of the command.
+     * @param name
+     *            The command line name of the command.
+     * @param parentClassName
+     *            The class name of the parent command or null.
+     * @param arguments
+     *            The map of argument names to argument type names.
+     */
+    CommandManifest(String className, String name, String parentClassName, Map<String, String> arguments) {
+        this.className = className;
+        this.name = name;
+        this.parentClassName = parentClassName;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Get the command manifest file for the given jar file.
+     *
+     * @param jar
+     *            The jar file.
+     * @return The command manifest file.
+     */
+    public static File getFile(File jar) {
+        String name = jar.getName();
+        if (name.endsWith(".jar")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return new File(jar.getParentFile(), name + EXTENSION);
+    }
+
+    /**
+     * Get the jar file that contains the resource at the given URL.
+     *
+     * @param url
+     *            The resource URL.
+     * @return The jar file or null if the resource is not in a jar file.
+     */
+    static File getJar(URL url) {
+        String spec = url.toString();
+        int bang = spec.indexOf("!/");
+        if (!spec.startsWith("jar:file:") || bang == -1) {
+            return null;
+        }
+        try {
+            return new File(new URI(spec.substring(4, bang)));
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the command manifest of the given jar file describing the given
+     * commands, returning false and removing any previous manifest if the
+     * manifest cannot be written.
+     *
+     * @param jar
+     *            The jar file.
+     * @param commands
+     *            The map of command classes to their meta command
+     *            information.
+     * @return True if the manifest was written.
+     */
+    public static boolean write(final File jar, final Map<Class<? extends Commandable>, MetaCommand> commands) {
+        File file = getFile(jar);
+        boolean written = CacheFiles.write(file, "commands", new CacheFiles.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                StringBuilder manifest = new StringBuilder();
+                manifest.append(jar.length()).append('\t').append(jar.lastModified()).append('\n');
+                for (Map.Entry<Class<? extends Commandable>, MetaCommand> entry : commands.entrySet()) {
+                    MetaCommand metaCommand = entry.getValue();
+                    Class<? extends Commandable> parent = metaCommand.getParentCommandClass();
+                    StringBuilder line = new StringBuilder();
+                    line.append(entry.getKey().getName()).append('\t')
+                        .append(metaCommand.getName()).append('\t')
+                        .append(parent == null ? "" : parent.getName()).append('\t');
+                    String separator = "";
+                    for (Map.Entry<String, Class<?>> argument : metaCommand.getArguments().entrySet()) {
+                        line.append(separator).append(argument.getKey()).append(':').append(argument.getValue().getName());
+                        separator = " ";
+                    }
+                    manifest.append(line).append('\n');
+                }
+                out.write(manifest.toString().getBytes("UTF-8"));
+            }
+        });
+        if (!written) {
+            file.delete();
+        }
+        return written;
+    }
+
+    /**
+     * Read the command manifest of the given jar file.
+     *
+     * @param jar
+     *            The jar file.
+     * @return The list of command manifest entries or null if there is no
+     *         manifest, the manifest is malformed, or the manifest does not
+     *         match the jar file.
+     */
+    static List<CommandManifest> read(File jar) {
+        File file = getFile(jar);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<CommandManifest> entries = new ArrayList<CommandManifest>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                if (!(jar.length() + "\t" + jar.lastModified()).equals(reader.readLine())) {
+                    return null;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != 4) {
+                        return null;
+                    }
+                    Map<String, String> arguments = new LinkedHashMap<String, String>();
+                    if (fields[3].length() != 0) {
+                        for (String pair : fields[3].split(" ")) {
+                            int colon = pair.indexOf(':');
+                            if (colon == -1) {
+                                return null;
+                            }
+                            arguments.put(pair.substring(0, colon), pair.substring(colon + 1));
+                        }
+                    }
+                    entries.add(new CommandManifest(fields[0], fields[1], fields[2].length() == 0 ? null : fields[2], Collections.unmodifiableMap(arguments)));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return entries;
+    }
+}
@@ -1,13 +1,16 @@
 package com.goodworkalan.go.go;
 
+import static com.goodworkalan.go.go.GoException.CANNOT_CREATE_TASK;
+import static com.goodworkalan.go.go.GoException.COMMAND_CLASS_MISSING;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
 import com.goodworkalan.infuse.Infuser;
-import com.goodworkalan.reflective.setter.FieldSetter;
-import com.goodworkalan.reflective.setter.MethodSetter;
 import com.goodworkalan.utility.Primitives;
 
 /**
@@ -31,6 +34,11 @@ import com.goodworkalan.utility.Primitives;
  * probably have to call it CommandElement, which will become my standard suffix
  * for the internal bundle of meta data associated with a user facing class or
  * interface.
+ * <p>
+ * A command node can be created from a command manifest entry without loading
+ * the command class. The command class is loaded and reflected upon the first
+ * time the command class or argument assignments are requested, so that only
+ * the commands on the command line that is run are loaded.
  * 
  * @author Alan Gutierrez
  */
@@ -38,23 +46,68 @@ class CommandNode implements MetaCommand {
     /** The <code>Infuser</code> used to convert from String to scalar object. */
     private final static Infuser INFUSER = new Infuser();
     
-    /** The task class. */
-    private final Class<? extends Commandable> taskClass;
+    /** The map of primitive type names to primitive types. */
+    private final static Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+    static {
+        for (Class<?> primitive : new Class<?>[] { boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class }) {
+            PRIMITIVES.put(primitive.getName(), primitive);
+        }
+    }
+
+    /** The task class name. */
+    private final String className;
 
     /** The name of the command. */
     private final String name;
-    
-    /** The parent task if any. */
-    private final Class<? extends Commandable> parent;
 
-    /** The map of verbose argument names to assignment meta information. */
-    private final Map<String, Assignment> assignments;
+    /** The parent task class name or null. */
+    private final String parentClassName;
 
     /** The map of sub command names to sub command responders. */ 
     public final Map<String, CommandNode> commands;
-    
+
+    /**
+     * The command manifest entry of a command node that has not yet loaded its
+     * command class, or null.
+     */
+    private final CommandManifest manifest;
+
+    /** The class loader that loads the command class of a manifest node. */
+    private final ClassLoader classLoader;
+
+    /** The executor support that reflects upon the command class. */
+    private final ExecutorSupport support;
+
+    /** The I/O bouquet where reflection warnings are written. */
+    private final InputOutput io;
+
+    /** The task class or null if it has not been loaded. */
+    private Class<? extends Commandable> taskClass;
+
+    /** The parent task if any. */
+    private Class<? extends Commandable> parent;
+
+    /**
+     * The map of verbose argument names to assignment meta information or
+     * null if the task class has not been reflected upon.
+     */
+    private Map<String, Assignment> assignments;
+
     /** The map of arguments accepted by the command to their types. */
-    private final Map<String, Class<?>> arguments;
+    private Map<String, Class<?>> arguments;
+
+    /**
+     * The accessible no argument constructor of the task class or null if
+     * the task class has none.
+     */
+    private Constructor<? extends Commandable> constructor;
+
+    /**
+     * The map of argument names as they appear on the command line, with and
+     * without the command name qualifier, to their dispatch table entries, or
+     * null if the table has not been built.
+     */
+    private Map<String, Dispatch> dispatch;
 
     /**
      * Create a meta information node in the hierarchy of available commands
@@ -86,14 +139,163 @@ class CommandNode implements MetaCommand {
 
         Map<String, Class<?>> arguments = new HashMap<String, Class<?>>();
         for (Map.Entry<String, Assignment> entry : assignments.entrySet()) {
-            arguments.put(entry.getKey(), entry.getValue().setter.getType());
+            arguments.put(entry.getKey(), entry.getValue().type);
         }
 
         this.arguments = Collections.unmodifiableMap(arguments);
         this.taskClass = commandableClass;
+        this.constructor = getConstructor(commandableClass);
+        this.className = commandableClass.getName();
         this.name = name;
         this.parent = parent;
+        this.parentClassName = parent == null ? null : parent.getName();
         this.commands = new TreeMap<String, CommandNode>();
+        this.manifest = null;
+        this.classLoader = null;
+        this.support = null;
+        this.io = null;
+    }
+
+    /**
+     * Create a meta information node in the hierarchy of available commands
+     * that shares the reflected argument assignments of the given prototype
+     * but has no sub commands. The sub commands depend on the command classes
+     * found on a class path, while the assignments depend only on the command
+     * class, so a prototype can be reused for every class path where the
+     * command class is found.
+     * 
+     * @param prototype
+     *            The prototype command node.
+     */
+    public CommandNode(CommandNode prototype) {
+        this.assignments = prototype.assignments;
+        this.arguments = prototype.arguments;
+        this.taskClass = prototype.taskClass;
+        this.constructor = prototype.constructor;
+        this.className = prototype.className;
+        this.name = prototype.name;
+        this.parent = prototype.parent;
+        this.parentClassName = prototype.parentClassName;
+        this.commands = new TreeMap<String, CommandNode>();
+        this.manifest = null;
+        this.classLoader = null;
+        this.support = null;
+        this.io = null;
+    }
+
+    /**
+     * Create a meta information node in the hierarchy of available commands
+     * from the given command manifest entry, deferring the loading of the
+     * command class with the given class loader until the command class or
+     * its argument assignments are requested.
+     * 
+     * @param support
+     *            The executor support that reflects upon the command class.
+     * @param io
+     *            The I/O bouquet where reflection warnings are written.
+     * @param classLoader
+     *            The class loader that loads the command class.
+     * @param manifest
+     *            The command manifest entry.
+     */
+    public CommandNode(ExecutorSupport support, InputOutput io, ClassLoader classLoader, CommandManifest manifest) {
+        this.className = manifest.className;
+        this.name = manifest.name;
+        this.parentClassName = manifest.parentClassName;
+        this.commands = new TreeMap<String, CommandNode>();
+        this.manifest = manifest;
+        this.classLoader = classLoader;
+        this.support = support;
+        this.io = io;
+    }
+
+    /**
+     * Load the command class of a manifest node and reflect upon its
+     * arguments, if it has not already been done.
+     */
+    private synchronized void resolve() {
+        if (assignments == null) {
+            CommandNode prototype = support.newCommandNode(io, load(className).asSubclass(Commandable.class));
+            taskClass = prototype.taskClass;
+            parent = prototype.parent;
+            assignments = prototype.assignments;
+            arguments = prototype.arguments;
+            constructor = prototype.constructor;
+        }
+    }
+
+    /**
+     * Get the no argument constructor of the given commandable class, made
+     * accessible so that reflection skips its access checks on each
+     * instantiation.
+     * 
+     * @param commandableClass
+     *            The commandable class.
+     * @return The constructor or null if the class has no no argument
+     *         constructor.
+     */
+    private static Constructor<? extends Commandable> getConstructor(Class<? extends Commandable> commandableClass) {
+        Constructor<? extends Commandable> constructor;
+        try {
+            constructor = commandableClass.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        try {
+            constructor.setAccessible(true);
+        } catch (SecurityException e) {
+            // Reflection will check access on each call instead.
+        }
+        return constructor;
+    }
+
+    /**
+     * Create a new instance of the task class using the constructor resolved
+     * when the command node was built. An unchecked exception thrown by the
+     * constructor is thrown as is.
+     * 
+     * @return A new instance of the task class.
+     * @exception GoException
+     *                If the task class cannot be instantiated.
+     */
+    public Commandable newCommandable() {
+        resolve();
+        if (constructor == null) {
+            throw new GoException(CANNOT_CREATE_TASK, taskClass);
+        }
+        try {
+            return constructor.newInstance();
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new GoException(CANNOT_CREATE_TASK, e.getCause(), taskClass);
+        } catch (InstantiationException e) {
+            throw new GoException(CANNOT_CREATE_TASK, e, taskClass);
+        } catch (IllegalAccessException e) {
+            throw new GoException(CANNOT_CREATE_TASK, e, taskClass);
+        }
+    }
+
+    /**
+     * Load the class with the given name using the class loader of this
+     * manifest node.
+     * 
+     * @param name
+     *            The class name.
+     * @return The class.
+     * @exception GoException
+     *                If the class cannot be found.
+     */
+    private Class<?> load(String name) {
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new GoException(COMMAND_CLASS_MISSING, e, name);
+        }
     }
 
     /**
@@ -121,33 +323,112 @@ class CommandNode implements MetaCommand {
      * @return The task class.
      */
     public Class<? extends Commandable> getCommandClass() {
+        resolve();
         return taskClass;
     }
 
+    /**
+     * Get the task class name without loading the task class.
+     * 
+     * @return The task class name.
+     */
+    public String getCommandClassName() {
+        return className;
+    }
+
     /**
      * Get the parent task.
      * 
      * @return The parent task for null if none.
      */
-    public Class<? extends Commandable> getParentCommandClass() {
+    public synchronized Class<? extends Commandable> getParentCommandClass() {
+        if (parent == null && parentClassName != null) {
+            parent = load(parentClassName).asSubclass(Commandable.class);
+        }
         return parent;
     }
 
+    /**
+     * Get the parent task class name without loading the parent task class.
+     * 
+     * @return The parent task class name or null if none.
+     */
+    public String getParentCommandClassName() {
+        return parentClassName;
+    }
+
     /**
      * Get the map of argument names to their assignment meta information.
      * 
      * @return The assignments.
      */
     public Map<String, Assignment> getAssignments() {
+        resolve();
         return assignments;
     }
 
     /**
-     * Get the map of arguments accepted by the command to their types.
+     * Get the argument dispatch table, building it the first time it is
+     * requested. The table maps each argument name and the negated form of
+     * each boolean flag, both unqualified and qualified by the command name,
+     * to its assignment, and maps the verbose and no-verbose switches to
+     * their change in verbosity, so that an argument is resolved with a
+     * single lookup.
+     * 
+     * @return The argument dispatch table.
+     */
+    public synchronized Map<String, Dispatch> getDispatch() {
+        if (dispatch == null) {
+            Map<String, Dispatch> dispatch = new HashMap<String, Dispatch>();
+            for (Map.Entry<String, Assignment> entry : getAssignments().entrySet()) {
+                Assignment assignment = entry.getValue();
+                if (assignment.flag) {
+                    dispatch(dispatch, "no-" + entry.getKey(), new Dispatch(entry.getKey(), assignment, true, 0));
+                }
+            }
+            for (Map.Entry<String, Assignment> entry : getAssignments().entrySet()) {
+                dispatch(dispatch, entry.getKey(), new Dispatch(entry.getKey(), entry.getValue(), false, 0));
+            }
+            dispatch(dispatch, "verbose", new Dispatch(null, null, false, 1));
+            dispatch(dispatch, "no-verbose", new Dispatch(null, null, false, -1));
+            this.dispatch = dispatch;
+        }
+        return dispatch;
+    }
+
+    /**
+     * Add the given dispatch table entry to the given dispatch table under the
+     * given argument name and under the argument name qualified by the command
+     * name.
+     * 
+     * @param dispatch
+     *            The dispatch table.
+     * @param name
+     *            The argument name.
+     * @param entry
+     *            The dispatch table entry.
+     */
+    private void dispatch(Map<String, Dispatch> dispatch, String name, Dispatch entry) {
+        dispatch.put(name, entry);
+        dispatch.put(this.name + ':' + name, entry);
+    }
+
+    /**
+     * Get the map of arguments accepted by the command to their types. The
+     * argument types of a manifest node are loaded without reflecting upon the
+     * command class.
      * 
      * @return The map of arguments accepted by the command to their types.
      */
-    public Map<String, Class<?>> getArguments() {
+    public synchronized Map<String, Class<?>> getArguments() {
+        if (arguments == null) {
+            Map<String, Class<?>> arguments = new HashMap<String, Class<?>>();
+            for (Map.Entry<String, String> entry : manifest.arguments.entrySet()) {
+                Class<?> type = PRIMITIVES.get(entry.getValue());
+                arguments.put(entry.getKey(), type == null ? load(entry.getValue()) : type);
+            }
+            this.arguments = Collections.unmodifiableMap(arguments);
+        }
         return arguments;
     }
     
@@ -199,7 +480,7 @@ class CommandNode implements MetaCommand {
                     }
                     checkForDuplicates(io, arguableClass, assignment, verbose);
                     Class<?> type =  Primitives.box(method.getParameterTypes()[0]);
-                    assignment.put(verbose, new Assignment(new MethodSetter(method, null), INFUSER.getInfuser(type)));
+                    assignment.put(verbose, new Assignment(method, INFUSER.getInfuser(type)));
                 }
             }
         }
@@ -212,7 +493,7 @@ class CommandNode implements MetaCommand {
                 }
                 checkForDuplicates(io, arguableClass, assignment, verbose);
                 Class<?> type =  Primitives.box(field.getType());
-                assignment.put(verbose, new Assignment(new FieldSetter(field), INFUSER.getInfuser(type)));
+                assignment.put(verbose, new Assignment(field, INFUSER.getInfuser(type)));
             }
         }
         // No superclass inspection. The above methods return all public methods
@@ -0,0 +1,438 @@
+package com.goodworkalan.go.go;
+
+import static com.goodworkalan.go.go.GoError.CANNOT_START_DAEMON;
+import static com.goodworkalan.go.go.GoError.CANNOT_WRITE_DAEMON_FILE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A resident Jav-a-Go-Go process that runs programs on behalf of thin
+ * {@link Client} launchers.
+ * <p>
+ * The daemon listens on an ephemeral port of the loopback interface and writes
+ * the port and a random secret to a daemon file that only the owner can read.
+ * A client must present the secret before the daemon will run its command
+ * line. Each command line is run by a program queue of its own on a thread of
+ * its own, with standard input, output and error streamed over the connection,
+ * so many clients can be served at once. The number of connections served at
+ * once is bounded, further connections wait in the listen backlog, and a
+ * client that does not complete its request within the handshake timeout is
+ * disconnected, so that a connection that sends nothing cannot hold a thread
+ * of the daemon forever.
+ * <p>
+ * The program queues of the daemon share the caches and settings of the
+ * daemon, so that class loaders for the same class path and the reflected
+ * command structures of the command classes loaded by them are reused from one
+ * command line to the next. The program indexes of the libraries and the
+ * library directory listings are read fresh for each command line, so that
+ * newly installed programs are found.
+ * <p>
+ * Programs run in the working directory and with the environment and system
+ * properties of the daemon, not those of the client. A command line of
+ * <code>--stop-daemon</code> stops the daemon.
+ *
+ * @author Alan Gutierrez
+ */
+class Daemon {
+    /** The command line that stops the daemon. */
+    final static String STOP = "--stop-daemon";
+
+    /** The default maximum number of connections served at once. */
+    final static int MAXIMUM_CONNECTIONS = 64;
+
+    /** The default time in milliseconds a client has to send its request. */
+    final static int HANDSHAKE_TIMEOUT = 10000;
+
+    /** The library path. */
+    private final List<File> libraries;
+
+    /** The caches and settings shared by the program queues of the daemon. */
+    private final ExecutorSupport support;
+
+    /** The file where the port and secret are written. */
+    private final File daemonFile;
+
+    /** The system verbosity. */
+    private final int verbosity;
+
+    /** The secret a client must present. */
+    private final String secret;
+
+    /** The permits for the connections served at once. */
+    private final Semaphore connections;
+
+    /** The time in milliseconds a client has to send its request. */
+    private final int handshakeTimeout;
+
+    /** The server socket. */
+    private ServerSocket server;
+
+    /**
+     * Create a daemon.
+     *
+     * @param libraries
+     *            The library path.
+     * @param support
+     *            The caches and settings shared by the program queues of the
+     *            daemon.
+     * @param daemonFile
+     *            The file where the port and secret are written.
+     * @param verbosity
+     *            The system verbosity.
+     */
+    public Daemon(List<File> libraries, ExecutorSupport support, File daemonFile, int verbosity) {
+        this(libraries, support, daemonFile, verbosity, MAXIMUM_CONNECTIONS, HANDSHAKE_TIMEOUT);
+    }
+
+    /**
+     * Create a daemon that serves the given maximum number of connections at
+     * once and disconnects clients that do not send their request within the
+     * given handshake timeout.
+     *
+     * @param libraries
+     *            The library path.
+     * @param support
+     *            The caches and settings shared by the program queues of the
+     *            daemon.
+     * @param daemonFile
+     *            The file where the port and secret are written.
+     * @param verbosity
+     *            The system verbosity.
+     * @param maximumConnections
+     *            The maximum number of connections served at once.
+     * @param handshakeTimeout
+     *            The time in milliseconds a client has to send its request.
+     */
+    Daemon(List<File> libraries, ExecutorSupport support, File daemonFile, int verbosity, int maximumConnections, int handshakeTimeout) {
+        this.connections = new Semaphore(maximumConnections);
+        this.handshakeTimeout = handshakeTimeout;
+        this.libraries = libraries;
+        this.support = support;
+        this.daemonFile = daemonFile;
+        this.verbosity = verbosity;
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        this.secret = hex.toString();
+    }
+
+    /**
+     * Listen for clients and run their command lines until the daemon is
+     * stopped, then remove the daemon file.
+     *
+     * @param io
+     *            The I/O bouquet for daemon messages.
+     * @return The exit code of the daemon, always zero.
+     */
+    public int serve(InputOutput io) {
+        try {
+            server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        } catch (IOException e) {
+            throw new GoError(CANNOT_START_DAEMON, e, daemonFile);
+        }
+        try {
+            writeDaemonFile();
+            if (verbosity > 0) {
+                Environment.error(io, Go.class, "daemonStart", server.getLocalPort(), daemonFile);
+            }
+            for (;;) {
+                connections.acquireUninterruptibly();
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    // Server socket closed by a stop request.
+                    connections.release();
+                    break;
+                } catch (IOException e) {
+                    connections.release();
+                    continue;
+                }
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } finally {
+                            connections.release();
+                        }
+                    }
+                }, "go-go-daemon-client");
+                thread.start();
+            }
+        } finally {
+            close();
+            daemonFile.delete();
+        }
+        if (verbosity > 0) {
+            Environment.error(io, Go.class, "daemonStop", daemonFile);
+        }
+        return 0;
+    }
+
+    /**
+     * Stop listening for clients. Command lines that are already running run
+     * to completion.
+     */
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Nothing was written, so there is nothing to lose.
+        }
+    }
+
+    /**
+     * Write the port and secret to the daemon file, readable and writable only
+     * by the owner, writing first to a temporary file that is renamed so that
+     * a client never reads a partial daemon file.
+     */
+    private void writeDaemonFile() {
+        File directory = daemonFile.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new GoError(CANNOT_WRITE_DAEMON_FILE, daemonFile);
+        }
+        try {
+            File temporary = File.createTempFile("daemon", ".tmp", directory);
+            temporary.setReadable(false, false);
+            temporary.setWritable(false, false);
+            temporary.setReadable(true, true);
+            temporary.setWritable(true, true);
+            Writer writer = new FileWriter(temporary);
+            try {
+                writer.write(server.getLocalPort() + " " + secret + "\n");
+            } finally {
+                writer.close();
+            }
+            if (!temporary.renameTo(daemonFile)) {
+                daemonFile.delete();
+                if (!temporary.renameTo(daemonFile)) {
+                    temporary.delete();
+                    throw new GoError(CANNOT_WRITE_DAEMON_FILE, daemonFile);
+                }
+            }
+        } catch (IOException e) {
+            throw new GoError(CANNOT_WRITE_DAEMON_FILE, e, daemonFile);
+        }
+    }
+
+    /**
+     * Run the command line sent by the client connected to the given socket.
+     * The client must send its request within the handshake timeout, after
+     * which standard input is read from the client without a timeout.
+     *
+     * @param socket
+     *            The client socket.
+     */
+    private void serve(Socket socket) {
+        try {
+            try {
+                socket.setSoTimeout(handshakeTimeout);
+                final DataInputStream request = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final DataOutputStream response = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                if (request.readInt() != Client.MAGIC) {
+                    return;
+                }
+                if (!MessageDigest.isEqual(request.readUTF().getBytes("UTF-8"), secret.getBytes("UTF-8"))) {
+                    return;
+                }
+                List<String> arguments = new ArrayList<String>();
+                for (int i = 0, stop = request.readInt(); i < stop; i++) {
+                    arguments.add(request.readUTF());
+                }
+                socket.setSoTimeout(0);
+                if (arguments.size() == 1 && arguments.get(0).equals(STOP)) {
+                    exit(response, 0);
+                    close();
+                    return;
+                }
+                PipedInputStream in = new PipedInputStream();
+                final PipedOutputStream stdin = new PipedOutputStream(in);
+                Thread reader = new Thread(new Runnable() {
+                    public void run() {
+                        pump(request, stdin);
+                    }
+                }, "go-go-daemon-stdin");
+                reader.setDaemon(true);
+                reader.start();
+                PrintStream out = new PrintStream(new BufferedOutputStream(new FrameOutputStream(response, Client.STDOUT)), true);
+                PrintStream err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(response, Client.STDERR)), true);
+                InputOutput io = new InputOutput(in, out, err);
+                int code;
+                try {
+                    code = new ProgramQueue(support, libraries, arguments.toArray(new String[arguments.size()])).run(io);
+                } catch (GoException e) {
+                    try {
+                        code = e.unwrap(io, verbosity);
+                    } catch (GoException unwrapped) {
+                        unwrapped.printStackTrace(err);
+                        code = 1;
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace(err);
+                    code = 1;
+                } catch (Error e) {
+                    e.printStackTrace(err);
+                    code = 1;
+                }
+                out.flush();
+                err.flush();
+                exit(response, code);
+            } finally {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // The client went away, there is no one left to tell.
+        }
+    }
+
+    /**
+     * Send the exit frame with the given exit code.
+     *
+     * @param response
+     *            The response stream.
+     * @param code
+     *            The exit code.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    private static void exit(DataOutputStream response, int code) throws IOException {
+        synchronized (response) {
+            response.writeByte(Client.EXIT);
+            response.writeInt(code);
+            response.flush();
+        }
+    }
+
+    /**
+     * Copy the standard input frames from the given request stream to the
+     * given pipe that feeds the standard input of the program, closing the
+     * pipe at the end of input.
+     *
+     * @param request
+     *            The request stream.
+     * @param stdin
+     *            The standard input pipe.
+     */
+    private static void pump(DataInputStream request, PipedOutputStream stdin) {
+        try {
+            try {
+                byte[] buffer = new byte[8192];
+                while (request.readByte() == Client.STDIN) {
+                    int length = request.readInt();
+                    if (length == 0) {
+                        break;
+                    }
+                    while (length != 0) {
+                        int read = request.read(buffer, 0, Math.min(length, buffer.length));
+                        if (read == -1) {
+                            return;
+                        }
+                        stdin.write(buffer, 0, read);
+                        length -= read;
+                    }
+                }
+            } finally {
+                stdin.close();
+            }
+        } catch (IOException e) {
+            // The client went away or the program stopped reading.
+        }
+    }
+
+    /**
+     * An output stream that writes each buffer written to it as a frame of the
+     * given type.
+     */
+    private final static class FrameOutputStream extends OutputStream {
+        /** The response stream. */
+        private final DataOutputStream response;
+
+        /** The frame type. */
+        private final byte type;
+
+        /**
+         * Create a frame output stream.
+         *
+         * @param response
+         *            The response stream.
+         * @param type
+         *            The frame type.
+         */
+        public FrameOutputStream(DataOutputStream response, byte type) {
+            this.response = response;
+            this.type = type;
+        }
+
+        /**
+         * Write a single byte frame.
+         *
+         * @param b
+         *            The byte.
+         * @throws IOException
+         *             If an I/O error occurs.
+         */
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        /**
+         * Write the given range of bytes as a frame.
+         *
+         * @param bytes
+         *            The bytes.
+         * @param offset
+         *            The offset of the first byte to write.
+         * @param length
+         *            The number of bytes to write.
+         * @throws IOException
+         *             If an I/O error occurs.
+         */
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length != 0) {
+                synchronized (response) {
+                    response.writeByte(type);
+                    response.writeInt(length);
+                    response.write(bytes, offset, length);
+                }
+            }
+        }
+
+        /**
+         * Send the frames written so far.
+         *
+         * @throws IOException
+         *             If an I/O error occurs.
+         */
+        @Override
+        public void flush() throws IOException {
+            synchronized (response) {
+                response.flush();
+            }
+        }
+    }
+}
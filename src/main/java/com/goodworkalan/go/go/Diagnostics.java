@@ -0,0 +1,297 @@
+package com.goodworkalan.go.go;
+
+import static com.goodworkalan.go.go.Executor.retry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes verbose and debug messages to standard error on a background thread.
+ * <p>
+ * A diagnostic message is posted to a bounded ring buffer by the thread that
+ * reports it, without taking a lock, and is formatted and written by a single
+ * writer thread, so that a command running with verbose or debug output does
+ * not wait on the bundle lookup, the formatting or the write. When the ring
+ * buffer is full, a posted message is dropped rather than blocking the
+ * command, and the number of messages dropped is reported once the writer
+ * catches up.
+ * <p>
+ * Each message carries structured fields: the command path, the verbosity
+ * level, the message context class and the message code. The text format
+ * writes a message just as <code>Environment.error</code> would. The fields
+ * format prefixes each message with the level, the command path and the
+ * message key, separated by tabs.
+ * <p>
+ * Messages are written in the order in which they were posted. Because the
+ * message arguments are formatted on the writer thread, they must not be
+ * changed after they are posted.
+ *
+ * @author Alan Gutierrez
+ */
+class Diagnostics {
+    /** The time in nanoseconds the writer waits for a message before checking again. */
+    private final static long PARK = 10 * 1000 * 1000L;
+
+    /** The ring buffer of posted messages. */
+    private final AtomicReferenceArray<Entry> ring;
+
+    /** The mask that maps a sequence number to a ring buffer index. */
+    private final int mask;
+
+    /** Whether to prefix messages with their structured fields. */
+    private final boolean fields;
+
+    /** The sequence number of the next message to post. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The sequence number of the next message to write. */
+    private volatile long head;
+
+    /** The number of messages dropped because the ring buffer was full. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** The number of dropped messages already reported. */
+    private long reported;
+
+    /** Whether the writer is waiting for a message. */
+    private volatile boolean waiting;
+
+    /** Whether the diagnostics have been closed. */
+    private volatile boolean closed;
+
+    /** The writer thread. */
+    private final Thread writer;
+
+    /**
+     * Create diagnostics with a ring buffer that holds at least the given
+     * number of messages and start the writer thread.
+     * 
+     * @param capacity
+     *            The minimum ring buffer capacity.
+     * @param fields
+     *            Whether to prefix messages with their structured fields.
+     */
+    public Diagnostics(int capacity, boolean fields) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new AtomicReferenceArray<Entry>(size);
+        this.mask = size - 1;
+        this.fields = fields;
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "go-go-diagnostics");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Post a message to be written to the standard error of the given I/O
+     * bouquet, or drop it if the ring buffer is full.
+     * 
+     * @param io
+     *            The I/O bouquet.
+     * @param path
+     *            The command path or null.
+     * @param level
+     *            The verbosity level of the message.
+     * @param context
+     *            The message bundle context class.
+     * @param code
+     *            The message code.
+     * @param arguments
+     *            The message format arguments.
+     * @return True if the message was posted, false if it was dropped.
+     */
+    public boolean post(InputOutput io, List<String> path, int level, Class<?> context, String code, Object...arguments) {
+        Entry entry = new Entry(io, path, level, context, code, arguments, Thread.currentThread().getContextClassLoader());
+        for (;;) {
+            long sequence = tail.get();
+            if (closed || sequence - head > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                ring.set((int) sequence & mask, entry);
+                break;
+            }
+        }
+        if (waiting) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Write messages as they are posted until the diagnostics are closed and
+     * every posted message has been written.
+     */
+    private void write() {
+        Thread thread = Thread.currentThread();
+        InputOutput io = null;
+        for (;;) {
+            int index = (int) head & mask;
+            Entry entry = ring.get(index);
+            if (entry == null) {
+                if (io != null) {
+                    reportDropped(io);
+                }
+                if (closed && head == tail.get()) {
+                    return;
+                }
+                waiting = true;
+                if (ring.get(index) == null) {
+                    LockSupport.parkNanos(this, PARK);
+                }
+                waiting = false;
+                continue;
+            }
+            ring.set(index, null);
+            io = entry.io;
+            thread.setContextClassLoader(entry.classLoader);
+            try {
+                render(entry);
+            } catch (RuntimeException e) {
+                e.printStackTrace(entry.io.err);
+            } finally {
+                head = head + 1;
+            }
+        }
+    }
+
+    /**
+     * Write the given message in the chosen format.
+     * 
+     * @param entry
+     *            The message.
+     */
+    private void render(Entry entry) {
+        if (!fields) {
+            Environment.error(entry.io, entry.context, entry.code, entry.arguments);
+            return;
+        }
+        synchronized (entry.io.err) {
+            StringBuilder prefix = new StringBuilder();
+            prefix.append(entry.level).append('\t');
+            String separator = "";
+            for (String command : entry.path) {
+                prefix.append(separator).append(command);
+                separator = " ";
+            }
+            prefix.append('\t').append(entry.context.getSimpleName()).append('/').append(entry.code).append('\t');
+            entry.io.err.print(prefix);
+            Environment.error(entry.io, entry.context, entry.code, entry.arguments);
+        }
+    }
+
+    /**
+     * Report the messages dropped since the last report to the standard error
+     * of the given I/O bouquet.
+     * 
+     * @param io
+     *            The I/O bouquet.
+     */
+    private void reportDropped(InputOutput io) {
+        long count = dropped.get();
+        if (count != reported) {
+            Environment.error(io, Diagnostics.class, "dropped", count - reported);
+            reported = count;
+        }
+    }
+
+    /**
+     * Wait until every message posted before this call has been written.
+     */
+    public void flush() {
+        long sequence = tail.get();
+        while (head < sequence && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, PARK / 10);
+        }
+    }
+
+    /**
+     * Drop any messages posted from now on, wait for the posted messages to be
+     * written and for the writer thread to exit.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        retry(new Callable<Object>() {
+            public Object call() throws InterruptedException {
+                writer.join();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Get the number of messages dropped because the ring buffer was full.
+     * 
+     * @return The number of dropped messages.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * A posted message.
+     */
+    private final static class Entry {
+        /** The I/O bouquet. */
+        public final InputOutput io;
+
+        /** The command path or an empty list. */
+        public final List<String> path;
+
+        /** The verbosity level. */
+        public final int level;
+
+        /** The message bundle context class. */
+        public final Class<?> context;
+
+        /** The message code. */
+        public final String code;
+
+        /** The message format arguments. */
+        public final Object[] arguments;
+
+        /** The context class loader of the posting thread. */
+        public final ClassLoader classLoader;
+
+        /**
+         * Create a posted message.
+         * 
+         * @param io
+         *            The I/O bouquet.
+         * @param path
+         *            The command path or null.
+         * @param level
+         *            The verbosity level.
+         * @param context
+         *            The message bundle context class.
+         * @param code
+         *            The message code.
+         * @param arguments
+         *            The message format arguments.
+         * @param classLoader
+         *            The context class loader of the posting thread.
+         */
+        public Entry(InputOutput io, List<String> path, int level, Class<?> context, String code, Object[] arguments, ClassLoader classLoader) {
+            this.io = io;
+            this.path = path == null ? Collections.<String>emptyList() : path;
+            this.level = level;
+            this.context = context;
+            this.code = code;
+            this.arguments = arguments;
+            this.classLoader = classLoader;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.goodworkalan.go.go;
+
+/**
+ * An entry in the argument dispatch table of a command node that maps a
+ * command line argument name, qualified or unqualified, negated or not, to
+ * the assignment that it sets or to a change in verbosity.
+ * 
+ * @author Alan Gutierrez
+ */
+class Dispatch {
+    /** The argument name of the assignment or null for a verbosity change. */
+    public final String name;
+
+    /** The assignment or null for a verbosity change. */
+    public final Assignment assignment;
+
+    /** Whether the argument name is the negated form of a boolean flag. */
+    public final boolean negated;
+
+    /** The change in verbosity or zero if the argument sets an assignment. */
+    public final int verbosity;
+
+    /**
+     * Create a dispatch table entry.
+     * 
+     * @param name
+     *            The argument name of the assignment or null for a verbosity
+     *            change.
+     * @param assignment
+     *            The assignment or null for a verbosity change.
+     * @param negated
+     *            Whether the argument name is the negated form of a boolean
+     *            flag.
+     * @param verbosity
+     *            The change in verbosity or zero if the argument sets an
+     *            assignment.
+     */
+    public Dispatch(String name, Assignment assignment, boolean negated, int verbosity) {
+        this.name = name;
+        this.assignment = assignment;
+        this.negated = negated;
+        this.verbosity = verbosity;
+    }
+}
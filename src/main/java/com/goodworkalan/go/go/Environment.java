@@ -1,14 +1,13 @@
 package com.goodworkalan.go.go;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.MissingFormatArgumentException;
 import java.util.MissingResourceException;
-import java.util.ResourceBundle;
 import java.util.Set;
 
 import com.goodworkalan.go.go.library.Library;
@@ -36,20 +35,41 @@ public class Environment {
     /** The library. */
     public final Library library;
 
-    /** The list of commands. */
-    public final LinkedList<String> commands = new LinkedList<String>();
+    /**
+     * The list of commands. This list is layered upon the list of the
+     * environment it was copied from and is no longer a
+     * <code>LinkedList</code>. Use {@link #getLastCommand()} in place of
+     * <code>getLast()</code>.
+     */
+    public final List<String> commands;
     
     /** The list of maps of generated objects by type. */
-    final List<List<Ilk.Box>> outputs = new ArrayList<List<Ilk.Box>>();
+    final List<Outputs> outputs;
     
     /** The list of converted arguments for the commands. */
-    final LinkedList<List<Conversion>> conversions = new LinkedList<List<Conversion>>();
+    final List<List<Conversion>> conversions;
     
-    /** The list of arguments for the commands. */
-    public final LinkedList<List<String>> arguments = new LinkedList<List<String>>();
+    /**
+     * The list of arguments for the commands. This list is layered upon the
+     * list of the environment it was copied from and is no longer a
+     * <code>LinkedList</code>. Use {@link #getLastArguments()} in place of
+     * <code>getLast()</code>.
+     */
+    public final List<List<String>> arguments;
     
-    /** The list of arguments remaining. */
-    public final List<String> remaining = new ArrayList<String>();
+    /**
+     * The list of arguments remaining. This list is layered upon the list of
+     * the environment it was copied from and is no longer a
+     * <code>LinkedList</code>. Use {@link #getLastRemaining()} in place of
+     * <code>getLast()</code>.
+     */
+    public final List<String> remaining;
+
+    /**
+     * The list of command keys of the command path up to and including each
+     * command and its arguments.
+     */
+    final List<CommandKey> commandKeys;
     
     /**
      * The set of path parts to add to the class path after the commandable
@@ -64,7 +84,7 @@ public class Environment {
     final LinkedList<Class<? extends Commandable>> commandables;
 
     /** The verbosity at each level of the stack. */
-    final List<Integer> verbosity = new ArrayList<Integer>();
+    final List<Integer> verbosity;
 
     /**
      * Create a new environment.
@@ -83,6 +103,13 @@ public class Environment {
         this.index = 0;
         this.executor = executor;
         this.commandables = new LinkedList<Class<? extends Commandable>>();
+        this.commands = new LayeredList<String>();
+        this.arguments = new LayeredList<List<String>>();
+        this.conversions = new LayeredList<List<Conversion>>();
+        this.verbosity = new LayeredList<Integer>();
+        this.outputs = new LayeredList<Outputs>();
+        this.remaining = new LayeredList<String>();
+        this.commandKeys = new LayeredList<CommandKey>();
     }
 
     /**
@@ -104,13 +131,29 @@ public class Environment {
         this.io = env.io;
         this.index = commandIndex;
         this.executor = executor;
-        this.commands.addAll(env.commands);
-        this.arguments.addAll(env.arguments);
-        this.conversions.addAll(env.conversions);
-        this.verbosity.addAll(env.verbosity);
-        this.outputs.addAll(env.outputs);
+        this.commands = layer(env.commands);
+        this.arguments = layer(env.arguments);
+        this.conversions = layer(env.conversions);
+        this.verbosity = layer(env.verbosity);
+        this.outputs = layer(env.outputs);
         this.commandables = env.commandables;
-        this.remaining.addAll(env.remaining);
+        this.remaining = layer(env.remaining);
+        this.commandKeys = layer(env.commandKeys);
+    }
+
+    /**
+     * Create a list layered upon the given list, which is always a layered
+     * list created by an environment constructor, so that a copy of an
+     * environment shares the elements of the environment it copies.
+     * 
+     * @param <T>
+     *            The element type.
+     * @param list
+     *            The list to layer upon.
+     * @return A new list containing the elements of the given list.
+     */
+    private static <T> List<T> layer(List<T> list) {
+        return new LayeredList<T>((LayeredList<T>) list);
     }
 
     /**
@@ -236,7 +279,12 @@ public class Environment {
     public void error(int level, Class<?> context, String code, Object...arguments) {
         for (int i = 0, stop = verbosity.size(); i < stop; i++) {
             if (verbosity.get(i) >= level) {
-                error(context, code, arguments);
+                Diagnostics diagnostics = executor == null ? null : executor.getDiagnostics();
+                if (diagnostics == null) {
+                    error(context, code, arguments);
+                } else {
+                    diagnostics.post(io, new ArrayList<String>(commands), level, context, code, arguments);
+                }
                 break;
             }
         }
@@ -303,11 +351,9 @@ public class Environment {
         String className = context.getCanonicalName();
         className = className.substring(className.lastIndexOf('.') + 1);
         String key = className + "/" + code; 
-        ResourceBundle bundle;
-        try {
-            bundle = ResourceBundle.getBundle(context.getPackage().getName() + ".stderr", Locale.getDefault(), Thread.currentThread().getContextClassLoader());
-        } catch (MissingResourceException e) {
-            bundle = ResourceBundle.getBundle(Environment.class.getPackage().getName() + ".stderr");
+        Messages messages = Messages.getInstance(context.getPackage().getName() + ".stderr", Thread.currentThread().getContextClassLoader());
+        if (messages == null) {
+            messages = Messages.getInstance(Environment.class.getPackage().getName() + ".stderr", Environment.class.getClassLoader());
             key = "Environment/bundle.missing";
         }
         for (int i = 0, stop = arguments.length; i < stop; i++) {
@@ -316,7 +362,7 @@ public class Environment {
             }
         }
         try {
-            io.err.println(String.format(bundle.getString(key), arguments));
+            io.err.println(messages.format(key, arguments));
         } catch (MissingResourceException e) {
             error(io, Environment.class, "message.missing", key);
         } catch (MissingFormatArgumentException e) {
@@ -383,14 +429,7 @@ public class Environment {
      * @return The boxed output value.
      */
     Ilk.Box get(Ilk.Key key, int index) {
-        Ilk.Box candidate = null;
-        for (Ilk.Box box : outputs.get(index)) {
-            if (key.isAssignableFrom(box.key)
-            && (candidate == null || candidate.key.isAssignableFrom(box.key))) {
-                candidate = box;
-            }
-        }
-        return candidate;
+        return outputs.get(index).get(key);
     }
 
     /**
@@ -454,6 +493,37 @@ public class Environment {
         outputs.get(index).add(box);
     }
 
+    /**
+     * Get the name of the last command in the command path.
+     * 
+     * @return The last command name or null if there are no commands.
+     */
+    public String getLastCommand() {
+        return commands.isEmpty() ? null : commands.get(commands.size() - 1);
+    }
+
+    /**
+     * Get the arguments of the last command in the command path. The list
+     * cannot be modified, since arguments are added only as they are assigned
+     * to the command.
+     * 
+     * @return The arguments of the last command or null if there are no
+     *         commands.
+     */
+    public List<String> getLastArguments() {
+        return arguments.isEmpty() ? null : Collections.unmodifiableList(arguments.get(arguments.size() - 1));
+    }
+
+    /**
+     * Get the last of the remaining arguments.
+     * 
+     * @return The last remaining argument or null if there are no remaining
+     *         arguments.
+     */
+    public String getLastRemaining() {
+        return remaining.isEmpty() ? null : remaining.get(remaining.size() - 1);
+    }
+
     /**
      * Add a command to the list of command names creating a new element in each
      * of the command stack based lists.
@@ -466,6 +536,20 @@ public class Environment {
         arguments.add(new ArrayList<String>());
         conversions.add(new ArrayList<Conversion>());
         verbosity.add(0);
+        commandKeys.add((commandKeys.isEmpty() ? CommandKey.EMPTY : commandKeys.get(commandKeys.size() - 1)).extend(command));
+    }
+
+    /**
+     * Add a qualified argument to the arguments of the last command in the
+     * command path, extending the command key of the last command.
+     * 
+     * @param argument
+     *            The qualified argument.
+     */
+    void addArgument(String argument) {
+        int index = commands.size() - 1;
+        arguments.get(index).add(argument);
+        commandKeys.set(index, commandKeys.get(index).extend(argument));
     }
 
     /**
@@ -477,7 +561,7 @@ public class Environment {
      *         the given commandable class has not been loaded.
      */
     public MetaCommand getMetaCommand(Class<? extends Commandable> commandableClass) {
-        return executor.commandNodes.get(commandableClass);
+        return executor.commandNodes.get(commandableClass.getName());
     }
 
     /**
@@ -531,19 +615,18 @@ public class Environment {
      * @return A key that identifies the command.
      */
     public List<String> getCommandKey(int fromIndex, int toIndex) {
-        List<List<String>> components = new ArrayList<List<String>>();
-        for (int i = 0, stop = commands.size(); i < stop; i++) {
-            List<String> key = new ArrayList<String>();
-            key.add(commands.get(i));
-            key.addAll(arguments.get(i));
-            components.add(key);
-        }
-        List<String> key = new ArrayList<String>();
-        for (List<String> component : components.subList(fromIndex, toIndex)) {
-            key.addAll(component);
+        CommandKey key = CommandKey.EMPTY;
+        if (fromIndex == 0) {
+            if (toIndex != 0) {
+                key = commandKeys.get(toIndex - 1);
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex; i++) {
+                key = key.extend(commands.get(i)).extend(arguments.get(i));
+            }
         }
         if (toIndex == commands.size()) {
-            key.addAll(remaining);
+            key = key.extend(remaining);
         }
         return key;
     }
@@ -3,7 +3,6 @@ package com.goodworkalan.go.go;
 import static com.goodworkalan.go.go.Environment.flatten;
 import static com.goodworkalan.go.go.GoException.ASSIGNMENT_EXCEPTION_THROWN;
 import static com.goodworkalan.go.go.GoException.ASSIGNMENT_FAILED;
-import static com.goodworkalan.go.go.GoException.CANNOT_CREATE_TASK;
 import static com.goodworkalan.go.go.GoException.COMMANDABLE_RESOURCES_IO;
 import static com.goodworkalan.go.go.GoException.COMMANDABLE_RESOURCE_IO;
 import static com.goodworkalan.go.go.GoException.COMMAND_CLASS_MISSING;
@@ -11,35 +10,33 @@ import static com.goodworkalan.go.go.GoException.EXIT;
 import static com.goodworkalan.go.go.GoException.FUTURE_EXECUTION;
 import static com.goodworkalan.go.go.GoException.NO_SUCH_ARGUMENT;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 
 import com.goodworkalan.go.go.library.Artifact;
 import com.goodworkalan.go.go.library.Exclude;
 import com.goodworkalan.go.go.library.Library;
 import com.goodworkalan.go.go.library.PathPart;
-import com.goodworkalan.go.go.library.PathParts;
 import com.goodworkalan.go.go.library.ResolutionPart;
 import com.goodworkalan.ilk.Ilk;
 import com.goodworkalan.ilk.Ilk.Box;
-import com.goodworkalan.utility.Primitives;
 
 /**
  * Executes commands and maintains their environments.
@@ -50,56 +47,61 @@ public class Executor {
     /** The system verbosity for system standard error messages. */
     private final int systemVerbosity;
     
-    /** A map of commands and their arguments to a list of their outputs. */ 
-    private final Map<List<String>, CacheEntry> cache = new HashMap<List<String>, CacheEntry>();
+    /** The cache of command outputs shared by the executors of a program. */ 
+    private final CommandCache cache;
 
-    /** The parent executor in the thread that spawned this executor or null. */
-    private final Executor parent;
+    /**
+     * The command cache scopes of this executor and the executors that
+     * spawned it, ancestors first.
+     */
+    private final int[] scopes;
 
     private final Map<List<String>, Artifact> programs;
 
     /** A set of keys of artifacts that have already been included. */
-    private final Set<Object> seen = new HashSet<Object>();
+    private final LayeredSet<Object> seen;
     
     /** The set of class path URLs that have been inspected for commands. */
-    private final Set<URL> urls = new HashSet<URL>();
+    private final LayeredSet<URL> urls;
 
     /** The Java-a-Go-Go library. */
     private final Library library;
+
+    /** The caches and settings shared with the program queue. */
+    private final ExecutorSupport support;
+
+    /** The program queue that runs pseudo-forked programs or null. */
+    private final ProgramQueue queue;
     
     /** The root map of command names to command nodes. */
-    private final Map<String, CommandNode> commands = new TreeMap<String, CommandNode>();
+    private final LayeredMap<String, CommandNode> commands;
     
-    /** The map of tasks to command nodes. */
-    final Map<Class<? extends Commandable>, CommandNode> commandNodes = new HashMap<Class<? extends Commandable>, CommandNode>();
+    /** The map of task class names to command nodes. */
+    final LayeredMap<String, CommandNode> commandNodes;
 
     /** The map of hidden commands to command nodes. */
-    final Map<Class<? extends Commandable>, CommandNode> spawnedCommandNodes = new HashMap<Class<? extends Commandable>, CommandNode>();
+    final LayeredMap<Class<? extends Commandable>, CommandNode> spawnedCommandNodes;
 
     /** The path for the command loader. */
-    private final Collection<PathPart> parts = new ArrayList<PathPart>();
+    private final LayeredList<PathPart> parts;
 
     /**
-     * Get the output list for the given command key. The output cache is sought
-     * by looking first in the cache of the current stack element, then
-     * iterating up the stack checking the caches of the ancestor stack
-     * elements. When the key is found in the cache of stack element, the output
-     * list is returned and the search ends.
-     * 
-     * @param key
-     *            The command key.
-     * @return The output list for the command key.
+     * The path parts added to the class path by this executor or null if this
+     * executor began the program.
      */
-    private CacheEntry getCacheEntry(List<String> key) {
-        Executor iterator = this;
-        while (iterator != null) {
-            if (iterator.cache.containsKey(key)) {
-                return iterator.cache.get(key);
-            }
-            iterator = iterator.parent;
-        }
-        return null;
-    }
+    private final Collection<PathPart> layer;
+
+    /**
+     * The fingerprint of the class path for the persistent output cache, null
+     * if it has not been taken or if the class path changed too recently.
+     */
+    private List<String> fingerprint;
+
+    /** Whether the class path fingerprint has been taken. */
+    private boolean fingerprinted;
+
+    /** The profile node of this executor or null if profiling is disabled. */
+    private Profiler.Node profile;
 
     /**
      * Create an executor.
@@ -112,37 +114,118 @@ public class Executor {
      *            The system verbosity level.
      */
     Executor(Library library, Map<List<String>, Artifact> programs, int systemVerbosity) {
+        this(new ExecutorSupport(), null, library, programs, systemVerbosity);
+    }
+
+    /**
+     * Create an executor that shares the given caches and settings with the
+     * other executors of a program queue.
+     * 
+     * @param support
+     *            The caches and settings shared with the program queue.
+     * @param queue
+     *            The program queue that runs pseudo-forked programs.
+     * @param library
+     *            The library.
+     * @param programs
+     *            The program to artifact map.
+     * @param systemVerbosity
+     *            The system verbosity level.
+     */
+    Executor(ExecutorSupport support, ProgramQueue queue, Library library, Map<List<String>, Artifact> programs, int systemVerbosity) {
+        this.cache = support.newCommandCache();
+        this.scopes = new int[] { CommandCache.ROOT_SCOPE };
+        this.seen = new LayeredSet<Object>();
+        this.urls = new LayeredSet<URL>();
+        this.commands = new LayeredMap<String, CommandNode>();
+        this.commandNodes = new LayeredMap<String, CommandNode>();
+        this.spawnedCommandNodes = new LayeredMap<Class<? extends Commandable>, CommandNode>();
+        this.parts = new LayeredList<PathPart>();
+        this.layer = null;
 //        seen.add(new Exclude("com.github.bigeasy.danger/danger"));
         seen.add(new Exclude("com.github.bigeasy.go-go/go-go"));
         seen.add(new Exclude("com.github.bigeasy.infuse/infuse"));
         seen.add(new Exclude("com.github.bigeasy.ilk/ilk"));
         seen.add(new Exclude("com.github.bigeasy.class-boxer/class-boxer"));
         seen.add(new Exclude("com.github.bigeasy.class-association/class-association"));
-        seen.add(new Exclude("com.github.bigeasy.reflective/reflective-setter"));
         this.programs = programs;
         this.library = library;
-        this.parent = null;
+        this.support = support;
+        this.queue = queue;
         this.systemVerbosity = systemVerbosity;
     }
 
     /**
-     * Construct a child executor to run in a thread that has an extended class loader.
+     * Construct a child executor to run in a thread that has an extended class
+     * loader. The child shares the state of the parent and records its own
+     * changes in layers of its own, so creating a child takes constant time.
      * 
-     * @param parent The parent executor in the thread that spawned this executor or null. 
+     * @param parent
+     *            The parent executor in the thread that spawned this executor.
+     * @param subPath
+     *            The path parts added to the class path.
      */
-    private Executor(Executor parent, Set<Object> seen) {
+    private Executor(Executor parent, Collection<PathPart> subPath) {
         this.programs = parent.programs;
-        this.seen.addAll(parent.seen);
-        this.seen.addAll(seen);
-        this.urls.addAll(parent.urls);
-        this.parent = parent;
+        this.seen = new LayeredSet<Object>(parent.seen);
+        for (PathPart part : subPath) {
+            this.seen.add(part.getUnversionedKey());
+        }
+        this.urls = new LayeredSet<URL>(parent.urls);
         this.library = parent.library;
-        this.commands.putAll(parent.commands);
-        this.commandNodes.putAll(parent.commandNodes);
-        this.spawnedCommandNodes.putAll(parent.spawnedCommandNodes);
-        this.parts.addAll(parent.parts);
-        this.cache.putAll(parent.cache);
+        this.support = parent.support;
+        this.queue = parent.queue;
+        this.commands = new LayeredMap<String, CommandNode>(parent.commands);
+        this.commandNodes = new LayeredMap<String, CommandNode>(parent.commandNodes);
+        this.spawnedCommandNodes = new LayeredMap<Class<? extends Commandable>, CommandNode>(parent.spawnedCommandNodes);
+        this.parts = new LayeredList<PathPart>(parent.parts);
+        this.parts.addAll(subPath);
+        this.layer = subPath;
+        this.cache = parent.cache;
+        this.scopes = Arrays.copyOf(parent.scopes, parent.scopes.length + 1);
+        this.scopes[parent.scopes.length] = cache.newScope();
         this.systemVerbosity = parent.systemVerbosity;
+        this.profile = parent.profile == null ? null : parent.profile.child("layer " + scopes[parent.scopes.length]);
+    }
+
+    /**
+     * Get the cache of command outputs shared by the executors of the program
+     * run by this executor.
+     * 
+     * @return The command cache.
+     */
+    CommandCache getCommandCache() {
+        return cache;
+    }
+
+    /**
+     * Record the phases run by this executor and the executors of its class
+     * path extensions beneath the given profile node.
+     * 
+     * @param profile
+     *            The profile node or null to disable profiling.
+     */
+    void setProfile(Profiler.Node profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Create the command node for the given commandable class, recording the
+     * reflection as a profile phase.
+     * 
+     * @param io
+     *            The I/O bouquet.
+     * @param commandableClass
+     *            The commandable class.
+     * @return The command node.
+     */
+    private CommandNode newCommandNode(InputOutput io, Class<? extends Commandable> commandableClass) {
+        Profiler.Span span = Profiler.begin(profile, "reflect");
+        try {
+            return support.newCommandNode(io, commandableClass);
+        } finally {
+            Profiler.end(span);
+        }
     }
 
     /**
@@ -194,51 +277,120 @@ public class Executor {
      * Read the commandables from the commandable list resources in the class
      * path via the given class loader writing an debugging information or
      * errors to the given I/O bouquet.
+     * <p>
+     * When a commandable list resource is in a jar file that has a command
+     * manifest that matches the jar file, the command nodes are built from the
+     * manifest and the commandable classes are not loaded until they are run.
+     * Otherwise the commandable classes are loaded and reflected upon
+     * immediately. The command tree is linked once all of the new command
+     * nodes have been created, so that a command listed in a manifest can be
+     * the parent of a command in a jar without one.
+     * <p>
+     * An executor that extended the class path reads only the services files
+     * of the jars and directories it added, since the services files of the
+     * rest of the class path were read by the executors that spawned it. The
+     * services files of jars are read through the services index shared by
+     * every executor.
      * 
      * @param io
      *            The I/O bouquet.
      */
     void readConfigurations(ClassLoader classLoader, InputOutput io) {
-        Enumeration<URL> resources;
+        Profiler.Span span = Profiler.begin(profile, "configure");
         try {
-            resources = classLoader.getResources("META-INF/services/com.goodworkalan.go.go.Commandable");
-        } catch (IOException e) {
-            throw new GoException(COMMANDABLE_RESOURCES_IO, e);
+            readCommandNodes(classLoader, io);
+        } finally {
+            Profiler.end(span);
+        }
+    }
+
+    /**
+     * Create the command nodes for the commandables in the commandable list
+     * resources of the class path via the given class loader and link them
+     * into the command tree.
+     * 
+     * @param classLoader
+     *            The class loader.
+     * @param io
+     *            The I/O bouquet.
+     */
+    private void readCommandNodes(ClassLoader classLoader, InputOutput io) {
+        Map<URL, File> resources = new LinkedHashMap<URL, File>();
+        if (layer == null) {
+            Enumeration<URL> found;
+            try {
+                found = classLoader.getResources(ServicesIndex.COMMANDABLE);
+            } catch (IOException e) {
+                throw new GoException(COMMANDABLE_RESOURCES_IO, e);
+            }
+            while (found.hasMoreElements()) {
+                URL url = found.nextElement();
+                resources.put(url, CommandManifest.getJar(url));
+            }
+        } else {
+            for (PathPart part : layer) {
+                File file = part.getFile();
+                resources.put(ServicesIndex.getURL(file), file);
+            }
         }
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
+        List<CommandNode> added = new ArrayList<CommandNode>();
+        for (Map.Entry<URL, File> resource : resources.entrySet()) {
+            URL url = resource.getKey();
             if (!urls.contains(url)) {
-                urls.add(url);
-                Set<Class<? extends Commandable>> tasks;
-                try {
-                    tasks = readCommandables(classLoader, url.openStream(), io);
-                } catch (IOException e) {
-                    throw new GoException(COMMANDABLE_RESOURCE_IO, e, url);
+                File file = resource.getValue();
+                List<String> services;
+                if (file == null) {
+                    try {
+                        services = ServicesIndex.read(url.openStream());
+                    } catch (IOException e) {
+                        throw new GoException(COMMANDABLE_RESOURCE_IO, e, url);
+                    }
+                } else {
+                    services = support.getServicesIndex().getCommandables(file);
+                    if (services == null) {
+                        continue;
+                    }
                 }
-
+                urls.add(url);
                 List<String> classNames = new ArrayList<String>();
-                for (Class<? extends Commandable> commandableClass : tasks) {
-                    classNames.add(commandableClass.getCanonicalName());
-                    if (!commandNodes.containsKey(commandableClass)) {
-                        CommandNode commandNode = new CommandNode(io, commandableClass);
-                        commandNodes.put(commandableClass, commandNode);
-                        Class<? extends Commandable> parentCommandableClass = null;
-                        while ((parentCommandableClass = commandNode.getParentCommandClass()) != null) {
-                            CommandNode parent = commandNodes.get(parentCommandableClass);
-                            if (parent == null) {
-                                parent = new CommandNode(io, parentCommandableClass);
-                                commandNodes.put(parentCommandableClass, parent);
-                            }
-                            parent.addCommand(commandNode);
-                            commandNode = parent;
+                List<CommandManifest> manifests = file == null || file.isDirectory() ? null : CommandManifest.read(file);
+                if (manifests == null) {
+                    Set<Class<? extends Commandable>> tasks = loadCommandables(classLoader, services, io);
+                    for (Class<? extends Commandable> commandableClass : tasks) {
+                        classNames.add(commandableClass.getCanonicalName());
+                        if (!commandNodes.containsKey(commandableClass.getName())) {
+                            CommandNode commandNode = newCommandNode(io, commandableClass);
+                            commandNodes.put(commandableClass.getName(), commandNode);
+                            added.add(commandNode);
+                        }
+                    }
+                } else {
+                    for (CommandManifest manifest : manifests) {
+                        classNames.add(manifest.className);
+                        if (!commandNodes.containsKey(manifest.className)) {
+                            CommandNode commandNode = new CommandNode(support, io, classLoader, manifest);
+                            commandNodes.put(manifest.className, commandNode);
+                            added.add(commandNode);
                         }
-                        // Will reassign sometimes, but that's okay.
-                        commands.put(commandNode.getName(), commandNode);
                     }
                 }
                 debug(io, "readConfiguration", url, classNames);
             }
         }
+        for (CommandNode commandNode : added) {
+            String parentClassName = null;
+            while ((parentClassName = commandNode.getParentCommandClassName()) != null) {
+                CommandNode parent = commandNodes.get(parentClassName);
+                if (parent == null) {
+                    parent = newCommandNode(io, commandNode.getParentCommandClass());
+                    commandNodes.put(parentClassName, parent);
+                }
+                parent.addCommand(commandNode);
+                commandNode = parent;
+            }
+            // Will reassign sometimes, but that's okay.
+            commands.put(commandNode.getName(), commandNode);
+        }
     }
 
     /**
@@ -251,13 +403,25 @@ public class Executor {
      */
     Set<Class<? extends Commandable>> readCommandables(ClassLoader classLoader, InputStream in, InputOutput io)
     throws IOException {
-        BufferedReader lines = new BufferedReader(new InputStreamReader(in));
+        return loadCommandables(classLoader, ServicesIndex.read(in), io);
+    }
+
+    /**
+     * Load the commandables with the given class names with the given class
+     * loader writing an debugging information or errors to the given I/O
+     * bouquet.
+     * 
+     * @param classLoader
+     *            The class loader.
+     * @param classNames
+     *            The commandable class names.
+     * @param io
+     *            The I/O bouquet.
+     * @return The set of commandable classes.
+     */
+    private Set<Class<? extends Commandable>> loadCommandables(ClassLoader classLoader, List<String> classNames, InputOutput io) {
         Set<Class<? extends Commandable>> commandables = new HashSet<Class<? extends Commandable>>();
-        String className;
-        while ((className = lines.readLine()) != null) {
-            if (className.trim().equals("")) {
-                continue;
-            }
+        for (String className : classNames) {
             Class<?> foundClass;
             try {
                 foundClass = classLoader.loadClass(className);
@@ -305,80 +469,74 @@ public class Executor {
         return extend(env, commandNode, arguments, offset, outcomeType);
     }
 
-    // TODO Document.
+    /**
+     * Convert the argument with the given name and value for the command of
+     * the given command node and add it to the environment.
+     * <p>
+     * The argument is resolved through the dispatch table of the command
+     * node, which maps unqualified names, names qualified by the command name
+     * and the negated forms of boolean flags to their assignments with a
+     * single lookup. Only an argument qualified by the name of a sibling
+     * command is resolved through the dispatch table of the sibling.
+     * 
+     * @param env
+     *            The environment.
+     * @param commandNode
+     *            The command node of the current command.
+     * @param name
+     *            The argument name.
+     * @param value
+     *            The argument value or null if none was given.
+     */
     private void argument(Environment env, CommandNode commandNode, String name, String value) {
-        String command = env.commands.getLast();
-        if (name.indexOf(':') == -1) {
-            name = command + ':' + name;
+        CommandNode actualCommandNode = commandNode;
+        Dispatch dispatch = commandNode.getDispatch().get(name);
+        if (dispatch == null) {
+            int colon = name.indexOf(':');
+            if (colon != -1) {
+                if (name.indexOf(':', colon + 1) != -1) {
+                    throw new GoException(0);
+                }
+                String command = name.substring(0, colon);
+                String parent = commandNode.getParentCommandClassName();
+                if (parent == null) {
+                    actualCommandNode = commands.get(command);
+                } else {
+                    actualCommandNode = commandNodes.get(parent).commands.get(command);
+                }
+                if (actualCommandNode == null) {
+                    throw new GoException(0);
+                }
+                dispatch = actualCommandNode.getDispatch().get(name);
+            }
         }
-        String[] qualified = name.split(":");
-        if (qualified.length != 2) {
-            throw new GoException(0);
+        if (dispatch != null && dispatch.verbosity != 0) {
+            int index = env.verbosity.size() - 1;
+            env.verbosity.set(index, env.verbosity.get(index) + dispatch.verbosity);
+            return;
         }
-
-        Class<? extends Commandable> parent = commandNode.getParentCommandClass();
-        CommandNode actualCommandNode; 
-        if (parent == null) {
-            actualCommandNode = commands.get(qualified[0]);
-        } else {
-            actualCommandNode = commandNodes.get(parent).commands.get(qualified[0]);
+        if (dispatch == null || (dispatch.negated && value != null)) {
+            // FIXME Need a much nicer message.
+            throw new GoException(NO_SUCH_ARGUMENT, name);
         }
-        
-        if (actualCommandNode == null) {
-            throw new GoException(0);
+        // If the value is not specified, but the type is boolean, then the
+        // presence of the argument means true, or false if negated.
+        if (value == null && dispatch.assignment.flag) {
+            value = dispatch.negated ? "false" : "true";
         }
-
-        Assignment assignment = null;
-        
-        if(qualified[1].equals("verbose")) {
-            int index = env.verbosity.size() - 1;
-            env.verbosity.set(index, env.verbosity.get(index) + 1);
-        } else if (qualified[1].equals("no-verbose")) {
-            int index = env.verbosity.size() - 1;
-            env.verbosity.set(index, env.verbosity.get(index) - 1);
-        } else {
-            // Check for a negated boolean flag.
-            if (value == null) {
-                // FIXME Ensure that there are no arguments beginning with no.
-                if (qualified[1].startsWith("no-")) {
-                    String negate = qualified[1].substring(3);
-                        assignment = actualCommandNode.getAssignments().get(negate); 
-                        if (assignment != null) {
-                            if (Primitives.box(assignment.setter.getType()).equals(Boolean.class)) {
-                                name = actualCommandNode.getName() + ':' + negate;
-                                value = "false";
-                            } else {
-                                assignment = null;
-                            }
-                        }
-                    }
-            }
-            
-            // If the value is not specified, but the type is boolean, then
-            // the presence of the argument means true. 
-            if (assignment == null) {
-                assignment = actualCommandNode.getAssignments().get(qualified[1]); 
-                if (assignment == null) {
-                    // FIXME Need a much nicer message.
-                    throw new GoException(NO_SUCH_ARGUMENT, name);
-                }
-                if (value == null && Primitives.box(assignment.setter.getType()).equals(Boolean.class)) {
-                    value = "true";
-                }
-            }
-            
-            try {
-                env.conversions.getLast().add(new Conversion(qualified[0], qualified[1], assignment.infuser.infuse(value)));
-            } catch (Exception e) {
-                // Getting into the mindset that this is all about building
-                // a handsome stack trace, not about catching one exception or the
-                // the other. Does it matter if it was infusion that failed, if
-                // all I'm going to do is add some context to the stack trace, that
-                // context is just as useful if the exception is unanticipated.
-                throw new GoException(0, e);
-            }
-            env.arguments.getLast().add("--" + qualified[0] + ':' + qualified[1] + '=' + value);
+        String command = actualCommandNode.getName();
+        try {
+            env.conversions.get(env.conversions.size() - 1).add(new Conversion(command, dispatch.name, dispatch.assignment.infuser.infuse(value)));
+        } catch (Exception e) {
+            // Getting into the mindset that this is all about building
+            // a handsome stack trace, not about catching one exception or the
+            // the other. Does it matter if it was infusion that failed, if
+            // all I'm going to do is add some context to the stack trace, that
+            // context is just as useful if the exception is unanticipated.
+            throw new GoException(0, e);
         }
+        env.addArgument(new StringBuilder(command.length() + dispatch.name.length() + String.valueOf(value).length() + 4)
+            .append("--").append(command).append(':').append(dispatch.name).append('=').append(value).toString());
     }
     
     // TODO Document.
@@ -392,10 +550,17 @@ public class Executor {
                 if (argument.equals("--")) {
                     remaining = true;
                 } else if (argument.startsWith("--")) {
-                    String[] pair = argument.substring(2).split("=", 2);
-                    String name = pair[0];
-                    String value = pair.length == 1 ? null : pair[1]; 
-                    argument(env, commandNode, name, value);
+                    int equals = argument.indexOf('=', 2);
+                    Profiler.Span span = Profiler.begin(profile, "infuse");
+                    try {
+                        if (equals == -1) {
+                            argument(env, commandNode, argument.substring(2), null);
+                        } else {
+                            argument(env, commandNode, argument.substring(2, equals), argument.substring(equals + 1));
+                        }
+                    } finally {
+                        Profiler.end(span);
+                    }
                 } else {
                     Artifact artifact = programs.get(flatten(env.commands, argument));
                     if (artifact != null) {
@@ -432,17 +597,6 @@ public class Executor {
         return execute(env, commands, cacheEntry, outcomeType, commandIndex);
     }
     
-    // TODO Document.
-    private Commandable getCommandable(final Class<? extends Commandable> commandableClass) {
-        try {
-            return commandableClass.newInstance();
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new GoException(CANNOT_CREATE_TASK, e, commandableClass);
-        }
-    }
-    
     // TODO Document.
     private Ilk.Box execute(Environment env, Map<String, CommandNode> commands, CacheEntry cacheEntry, Ilk<?> outcomeType, int commandIndex) {
         // Run any hidden commands.
@@ -452,33 +606,41 @@ public class Executor {
 
                 Class<? extends Commandable> commandableClass = env.commandables.removeFirst();
 
-                CommandNode commandNode = commandNodes.get(commandableClass);
+                CommandNode commandNode = commandNodes.get(commandableClass.getName());
                 
+                if (commandNode != null && commandNode.getCommandClass() != commandableClass) {
+                    commandNode = null;
+                }
                 if (commandNode == null) {
                     commandNode = spawnedCommandNodes.get(commandableClass);
                     if (commandNode == null) {
-                        commandNode = new CommandNode(env.io, commandableClass);
+                        commandNode = newCommandNode(env.io, commandableClass);
                         spawnedCommandNodes.put(commandableClass, commandNode);
                     }
                 }
 
-                Commandable commandable = getCommandable(commandableClass);
+                Commandable commandable = commandNode.newCommandable();
                 
                 if (commandNode != null) {
                     // Set the arguments for the command.
-                    for (Conversion conversion : env.conversions.get(commandIndex)) {
-                        if (conversion.command.equals(env.commands.get(commandIndex))) {
-                            Assignment assignment = commandNode.getAssignments().get(conversion.name);
-                            if (assignment != null) {
-                                try {
-                                    assignment.setter.set(commandable, conversion.value);
-                                } catch (InvocationTargetException e) {
-                                    throw new GoException(ASSIGNMENT_EXCEPTION_THROWN, e, commandable.getClass().getCanonicalName(), assignment.setter.getMember().getName());
-                                } catch (IllegalAccessException e) {
-                                    throw new GoException(ASSIGNMENT_FAILED, e, commandable.getClass().getCanonicalName(), assignment.setter.getMember().getName());
+                    Profiler.Span span = Profiler.begin(profile, "infuse");
+                    try {
+                        for (Conversion conversion : env.conversions.get(commandIndex)) {
+                            if (conversion.command.equals(env.commands.get(commandIndex))) {
+                                Assignment assignment = commandNode.getAssignments().get(conversion.name);
+                                if (assignment != null) {
+                                    try {
+                                        assignment.set(commandable, conversion.value);
+                                    } catch (InvocationTargetException e) {
+                                        throw new GoException(ASSIGNMENT_EXCEPTION_THROWN, e, commandable.getClass().getCanonicalName(), assignment.getMember().getName());
+                                    } catch (IllegalAccessException e) {
+                                        throw new GoException(ASSIGNMENT_FAILED, e, commandable.getClass().getCanonicalName(), assignment.getMember().getName());
+                                    }
                                 }
                             }
                         }
+                    } finally {
+                        Profiler.end(span);
                     }
                 }
                 
@@ -492,6 +654,7 @@ public class Executor {
                 boolean cached = command == null || command.cache();
 
                 // Execute the command.
+                Profiler.Span span = Profiler.begin(profile, "execute");
                 try {
                     commandable.execute(subEnv);
                 } catch (Exit exit) {
@@ -499,12 +662,14 @@ public class Executor {
                         throw new GoException(EXIT, exit);
                     }
                     terminate = true;
+                } finally {
+                    Profiler.end(span);
                 }
                 if (cached) {
                     if (!cacheEntry.transients.isEmpty()) {
                         throw new GoException(0, commandable.getClass());
                     }
-                    cacheEntry.outputs.addAll(subEnv.outputs.get(commandIndex));
+                    cacheEntry.outputs.addAll(subEnv.outputs.get(commandIndex).getBoxes());
                     if (cacheEntry.outputs.isEmpty()) {
                         Ilk.Box box = new Ilk<IgnorableOutput>(IgnorableOutput.class).box(new IgnorableOutput());
                         cacheEntry.outputs.add(box);
@@ -524,7 +689,10 @@ public class Executor {
             }
             
             if (!cacheEntry.outputs.isEmpty()) {
-                cache.put(env.getCommandKey(0, commandIndex + 1), cacheEntry);
+                List<String> key = env.getCommandKey(0, commandIndex + 1);
+                if (cache.put(scopes, key, cacheEntry) == null) {
+                    storeCacheEntry(key, cacheEntry);
+                }
             }
             
             commandIndex++;
@@ -541,8 +709,7 @@ public class Executor {
             // Descend the command tree.
             commands = commandNode.commands;
 
-            // Tree list will sort the keys by assignability.
-            env.outputs.add(new ArrayList<Ilk.Box>());
+            env.outputs.add(new Outputs());
 
             if (cached != null) {
                 env.outputs.get(commandIndex).addAll(cached.outputs);
@@ -556,6 +723,56 @@ public class Executor {
         return chooseBox(env, outcomeType);
     }
 
+    /**
+     * Get the cache entry for the given command key from the command cache or,
+     * failing that, from the persistent output cache if there is one, adding
+     * an entry found in the persistent output cache to the command cache.
+     * 
+     * @param key
+     *            The command key.
+     * @return The cache entry or null if the command has not been run.
+     */
+    private CacheEntry getCacheEntry(List<String> key) {
+        CacheEntry cacheEntry = cache.get(scopes, key);
+        if (cacheEntry == null && support.getOutputStore() != null && getFingerprint() != null) {
+            cacheEntry = support.getOutputStore().get(key, getFingerprint(), Thread.currentThread().getContextClassLoader());
+            if (cacheEntry != null) {
+                cache.put(scopes, key, cacheEntry);
+            }
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Write the given newly created cache entry to the persistent output cache
+     * if there is one.
+     * 
+     * @param key
+     *            The command key.
+     * @param cacheEntry
+     *            The cache entry.
+     */
+    private void storeCacheEntry(List<String> key, CacheEntry cacheEntry) {
+        if (support.getOutputStore() != null && getFingerprint() != null) {
+            support.getOutputStore().put(key, getFingerprint(), cacheEntry);
+        }
+    }
+
+    /**
+     * Get the fingerprint of the class path of this executor, taking it the
+     * first time it is requested.
+     * 
+     * @return The class path fingerprint or null if the class path changed too
+     *         recently to be trusted.
+     */
+    private List<String> getFingerprint() {
+        if (!fingerprinted) {
+            fingerprint = OutputStore.getFingerprint(parts);
+            fingerprinted = true;
+        }
+        return fingerprint;
+    }
+
     /**
      * Get the boxed command output form the the given environment that is
      * assignable from the type indicated by the given super type token.
@@ -576,37 +793,94 @@ public class Executor {
 
     // TODO Document.
     private Ilk.Box extendClassPath(Collection<PathPart> unseen, Environment env, final FutureBox box) {
-        Collection<PathPart> subPath = new ArrayList<PathPart>();
-        subPath = library.resolve(unseen, seen);
-        Set<Object> subSeen = new HashSet<Object>();
-        for (PathPart part : subPath) {
-            subSeen.add(part.getUnversionedKey());
+        Profiler.Span span = Profiler.begin(profile, "resolve");
+        Collection<PathPart> subPath;
+        try {
+            subPath = support.resolve(library, unseen, seen);
+        } finally {
+            Profiler.end(span);
         }
-        final Executor childExecutor = new Executor(this, subSeen);
+        final Executor childExecutor = new Executor(this, subPath);
         final Environment childEnv = new Environment(env, childExecutor);
-        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
-            public Ilk.Box call() {
-                return box.call(childExecutor, childEnv);
+        span = Profiler.begin(profile, "classLoader");
+        ClassLoader classLoader;
+        try {
+            classLoader = support.getClassLoader(subPath, Thread.currentThread().getContextClassLoader());
+        } finally {
+            Profiler.end(span);
+        }
+        span = Profiler.begin(childExecutor.profile);
+        try {
+            if (!support.isSpawning()) {
+                return continueInline(classLoader, childExecutor, childEnv, box);
             }
-        });
-        final Thread thread = new Thread(future);
-        thread.setContextClassLoader(PathParts.getClassLoader(subPath, Thread.currentThread().getContextClassLoader()));
-        thread.start();
-        retry(new Callable<Object>() {
-            public Object call() throws InterruptedException {
-                thread.join();
-                return null;
+            FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+                public Ilk.Box call() {
+                    return box.call(childExecutor, childEnv);
+                }
+            });
+            final Thread thread = new Thread(future);
+            thread.setContextClassLoader(classLoader);
+            thread.start();
+            retry(new Callable<Object>() {
+                public Object call() throws InterruptedException {
+                    thread.join();
+                    return null;
+                }
+            });
+            try {
+                return retry(future);
+            } catch (ExecutionException e) {
+                throw new GoException(FUTURE_EXECUTION, e);
             }
-        });
+        } finally {
+            Profiler.end(span);
+            support.releaseClassLoader(classLoader);
+        }
+    }
+
+    /**
+     * Run the given continuation on the current thread with the given class
+     * loader as the context class loader, restoring the context class loader
+     * of the current thread when the continuation returns. An exception thrown
+     * by the continuation is wrapped exactly as it would be if the
+     * continuation had been run in a thread of its own.
+     * <p>
+     * Unlike a spawned thread, the continuation shares the thread local
+     * variables of the program that extended its class path, and an
+     * inheritable thread local variable is not copied, so a value set by a
+     * command in the extended class path remains visible to the program after
+     * the continuation returns. Commands that rely on a fresh thread local
+     * state for each class path extension must be run with
+     * <code>--spawn-threads</code>.
+     * 
+     * @param classLoader
+     *            The class loader of the extended class path.
+     * @param childExecutor
+     *            The executor of the extended class path.
+     * @param childEnv
+     *            The environment of the extended class path.
+     * @param box
+     *            The continuation.
+     * @return The box returned by the continuation.
+     */
+    static Ilk.Box continueInline(ClassLoader classLoader, Executor childExecutor, Environment childEnv, FutureBox box) {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
         try {
-            return retry(future);
-        } catch (ExecutionException e) {
-            throw new GoException(FUTURE_EXECUTION, e);
+            return box.call(childExecutor, childEnv);
+        } catch (RuntimeException e) {
+            throw new GoException(FUTURE_EXECUTION, new ExecutionException(e));
+        } catch (Error e) {
+            throw new GoException(FUTURE_EXECUTION, new ExecutionException(e));
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
         }
     }
     
     // TODO Document.
-    private interface FutureBox {
+    interface FutureBox {
         // TODO Document.
         public Ilk.Box call(Executor exuector, Environment env);
     }
@@ -678,8 +952,98 @@ public class Executor {
         return outcome.cast(outcomeType);
     }
 
-    // TODO Document.
-    public void fork(InputOutput io, Object...arguments) {
+    /**
+     * Pseudo-fork the program specified by the given arguments, returning a
+     * handle that can be joined to obtain its exit code.
+     * 
+     * @param io
+     *            The I/O bouquet of the forked program.
+     * @param arguments
+     *            The command line arguments.
+     * @return A handle to the forked program.
+     * @see #fork(Ilk, InputOutput, List)
+     */
+    public Fork<Void> fork(InputOutput io, Object...arguments) {
+        return fork((Ilk<Void>) null, io, flatten(arguments));
+    }
+
+    /**
+     * Pseudo-fork the program specified by the given arguments, returning a
+     * handle that can be joined to obtain its exit code and its output of the
+     * given outcome type.
+     * 
+     * @param <T>
+     *            The type of the outcome.
+     * @param outcomeType
+     *            The expected outcome type.
+     * @param io
+     *            The I/O bouquet of the forked program.
+     * @param arguments
+     *            The command line arguments.
+     * @return A handle to the forked program.
+     * @see #fork(Ilk, InputOutput, List)
+     */
+    public <T> Fork<T> fork(Class<T> outcomeType, InputOutput io, Object...arguments) {
+        return fork(new Ilk<T>(outcomeType), io, flatten(arguments));
+    }
+
+    /**
+     * Pseudo-fork the program specified by the given arguments, returning a
+     * handle that can be joined to obtain its exit code and its output of the
+     * given outcome type.
+     * 
+     * @param <T>
+     *            The type of the outcome.
+     * @param outcomeType
+     *            The expected outcome type or null.
+     * @param io
+     *            The I/O bouquet of the forked program.
+     * @param arguments
+     *            The command line arguments.
+     * @return A handle to the forked program.
+     * @see #fork(int, Ilk, InputOutput, List)
+     */
+    public <T> Fork<T> fork(Ilk<T> outcomeType, InputOutput io, List<String> arguments) {
+        return fork(0, outcomeType, io, arguments);
+    }
+
+    /**
+     * Pseudo-fork the program specified by the given arguments with the given
+     * priority, returning a handle that can be joined to obtain its exit code
+     * and its output of the given outcome type.
+     * <p>
+     * The program runs in an executor of its own on a worker of the scheduler
+     * of the program queue, so that it does not see the class path or cached
+     * outputs of this executor. Waiting programs of a higher priority are run
+     * before waiting programs of a lower priority. If the scheduler queue is
+     * full, the program runs on the calling thread before this method
+     * returns. An executor created outside of a program queue always runs the
+     * program on the calling thread.
+     * 
+     * @param <T>
+     *            The type of the outcome.
+     * @param priority
+     *            The priority, higher runs sooner.
+     * @param outcomeType
+     *            The expected outcome type or null.
+     * @param io
+     *            The I/O bouquet of the forked program.
+     * @param arguments
+     *            The command line arguments.
+     * @return A handle to the forked program.
+     */
+    public <T> Fork<T> fork(int priority, final Ilk<T> outcomeType, final InputOutput io, final List<String> arguments) {
+        if (queue != null) {
+            return queue.fork(priority, outcomeType, io, arguments);
+        }
+        final Executor executor = new Executor(support, null, library, programs, systemVerbosity);
+        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+            public Ilk.Box call() {
+                return executor.start(io, arguments, outcomeType);
+            }
+        });
+        future.run();
+        return new Fork<T>(future, null, outcomeType, io, systemVerbosity, support.getDiagnostics());
     }
     
     /**
@@ -694,10 +1058,26 @@ public class Executor {
      */
     private void debug(InputOutput io, String message, Object...arguments) {
         if (systemVerbosity > 1) {
-            Environment.error(io, Executor.class, message, arguments);
+            Diagnostics diagnostics = support.getDiagnostics();
+            if (diagnostics == null) {
+                Environment.error(io, Executor.class, message, arguments);
+            } else {
+                diagnostics.post(io, null, 2, Executor.class, message, arguments);
+            }
         }
     }
 
+    /**
+     * Get the diagnostics that write verbose and debug messages on a
+     * background thread.
+     * 
+     * @return The diagnostics or null if messages are written by the
+     *         reporting thread.
+     */
+    Diagnostics getDiagnostics() {
+        return support.getDiagnostics();
+    }
+
     /**
      * Get the future value, trying again if an
      * <code>InterruptedException</code> is thrown.
@@ -711,7 +1091,7 @@ public class Executor {
      *             If an exception is thrown during the execution of the future
      *             task.
      */
-    static <T> T retry(FutureTask<T> future) throws ExecutionException {
+    static <T> T retry(Future<T> future) throws ExecutionException {
         for (;;) {
             try {
                 return future.get();
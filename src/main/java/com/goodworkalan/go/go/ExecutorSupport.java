@@ -0,0 +1,347 @@
+package com.goodworkalan.go.go;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+import com.goodworkalan.go.go.library.Library;
+import com.goodworkalan.go.go.library.PathPart;
+import com.goodworkalan.go.go.library.PathParts;
+import com.goodworkalan.go.go.library.ResolutionCache;
+
+/**
+ * The caches and settings that a program queue shares with the executors of
+ * the programs it runs. An executor created without a program queue gets a
+ * support object of its own with every cache disabled, so that it behaves
+ * exactly as an executor always has.
+ *
+ * @author Alan Gutierrez
+ */
+class ExecutorSupport {
+    /** The class path resolution cache or null to resolve every time. */
+    private final ResolutionCache resolutions;
+
+    /**
+     * The executor service used to expand path parts concurrently or null to
+     * expand path parts on the resolving thread.
+     */
+    private final ExecutorService resolvers;
+
+    /** The pool of shared class loaders or null if class loaders are not reused. */
+    private final ClassLoaderPool pool;
+
+    /**
+     * Whether a program continues in a new thread each time the class path is
+     * extended, rather than on the current thread.
+     */
+    private final boolean spawning;
+
+    /** The persistent output cache or null if outputs are not persisted. */
+    private final OutputStore outputs;
+
+    /** The maximum number of entries in the command cache of a program. */
+    private final int commandCacheSize;
+
+    /** Whether command cache entries are held by soft references. */
+    private final boolean softCommandCache;
+
+    /** The index of the commandable services files of jars. */
+    private final ServicesIndex services = new ServicesIndex();
+
+    /**
+     * The command cache shared by every program or null if each program has a
+     * command cache of its own.
+     */
+    private CommandCache commandCache;
+
+    /**
+     * The diagnostics that write verbose and debug messages on a background
+     * thread or null if they are written by the reporting thread.
+     */
+    private volatile Diagnostics diagnostics;
+
+    /**
+     * The directory in which to write compiled dependency files or null if
+     * dependency files are not compiled.
+     */
+    private volatile File compiledDirectory;
+
+    /**
+     * The map of command classes to prototype command nodes or null if
+     * command nodes are not reused.
+     */
+    private final ConcurrentMap<Class<? extends Commandable>, CommandNode> prototypes;
+
+    /**
+     * Create an executor support that does not cache anything.
+     */
+    public ExecutorSupport() {
+        this(null, null, null, true, null, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Create an executor support with the given class path resolution cache
+     * and the given path part expansion executor service.
+     *
+     * @param resolutions
+     *            The class path resolution cache or null to resolve every
+     *            time.
+     * @param resolvers
+     *            The executor service used to expand path parts concurrently
+     *            or null to expand path parts on the resolving thread.
+     * @param pool
+     *            The pool of class loaders shared by every program that shares
+     *            this support or null to create a class loader for every
+     *            class path extension. Command nodes are reused only when
+     *            class loaders are pooled.
+     * @param spawning
+     *            If true, a program continues in a new thread each time the
+     *            class path is extended, otherwise it continues on the current
+     *            thread with the context class loader swapped, sharing its
+     *            thread local variables with the program that extended the
+     *            class path.
+     * @param outputs
+     *            The persistent output cache or null if outputs are not
+     *            persisted.
+     * @param commandCacheSize
+     *            The maximum number of entries in the command cache of a
+     *            program.
+     * @param softCommandCache
+     *            Whether command cache entries are held by soft references.
+     */
+    public ExecutorSupport(ResolutionCache resolutions, ExecutorService resolvers, ClassLoaderPool pool, boolean spawning, OutputStore outputs, int commandCacheSize, boolean softCommandCache) {
+        this.resolutions = resolutions;
+        this.resolvers = resolvers;
+        this.pool = pool;
+        this.spawning = spawning;
+        this.outputs = outputs;
+        this.commandCacheSize = commandCacheSize;
+        this.softCommandCache = softCommandCache;
+        this.prototypes = pool == null ? null : new ConcurrentHashMap<Class<? extends Commandable>, CommandNode>();
+    }
+
+    /**
+     * Whether a program continues in a new thread each time the class path is
+     * extended, rather than on the current thread.
+     * 
+     * @return True if a thread is spawned for each class path extension.
+     */
+    public boolean isSpawning() {
+        return spawning;
+    }
+
+    /**
+     * Get the persistent output cache.
+     * 
+     * @return The persistent output cache or null if outputs are not
+     *         persisted.
+     */
+    public OutputStore getOutputStore() {
+        return outputs;
+    }
+
+    /**
+     * Get the index of the commandable services files of jars.
+     * 
+     * @return The services index.
+     */
+    public ServicesIndex getServicesIndex() {
+        return services;
+    }
+
+    /**
+     * Share a single command cache among all of the programs that use this
+     * executor support, so that a program can reuse the outputs of the
+     * commands of the programs that ran before it, as the command lines of a
+     * batch do.
+     */
+    public synchronized void shareCommandCache() {
+        if (commandCache == null) {
+            commandCache = new CommandCache(commandCacheSize, softCommandCache);
+        }
+    }
+
+    /**
+     * Write the verbose and debug messages of every program that uses this
+     * executor support with the given diagnostics.
+     * 
+     * @param diagnostics
+     *            The diagnostics.
+     */
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Get the diagnostics that write verbose and debug messages on a
+     * background thread.
+     * 
+     * @return The diagnostics or null if messages are written by the
+     *         reporting thread.
+     */
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Compile the dependency files read by every program that uses this
+     * executor support into the given directory, or stop compiling them if
+     * the directory is null.
+     * 
+     * @param compiledDirectory
+     *            The compiled dependency file directory or null.
+     */
+    public void setCompiledDirectory(File compiledDirectory) {
+        this.compiledDirectory = compiledDirectory;
+    }
+
+    /**
+     * Get the directory in which to write compiled dependency files.
+     * 
+     * @return The compiled dependency file directory or null if dependency
+     *         files are not compiled.
+     */
+    public File getCompiledDirectory() {
+        return compiledDirectory;
+    }
+
+    /**
+     * Create a command cache for a new program, or return the shared command
+     * cache if the command cache is shared.
+     * 
+     * @return A command cache.
+     */
+    public synchronized CommandCache newCommandCache() {
+        if (commandCache != null) {
+            return commandCache;
+        }
+        return new CommandCache(commandCacheSize, softCommandCache);
+    }
+
+    /**
+     * Resolve the given collection of path parts excluding artifacts whose
+     * unversioned key is in the given set of excludes, using the class path
+     * resolution cache if there is one.
+     *
+     * @param library
+     *            The library.
+     * @param parts
+     *            The collection of path parts.
+     * @param exclude
+     *            A set of unversioned keys of artifacts to exclude.
+     * @return An expanded collection of path parts.
+     */
+    public Collection<PathPart> resolve(Library library, Collection<PathPart> parts, Set<Object> exclude) {
+        if (resolutions == null) {
+            return library.resolve(parts, exclude, resolvers);
+        }
+        return resolutions.resolve(library, parts, exclude, resolvers);
+    }
+
+    /**
+     * Get a class loader for the given resolved path parts with the given
+     * parent class loader, sharing the pooled class loader created for the
+     * same parent and the same class path files if class loaders are pooled.
+     * The class loader must be given to
+     * {@link #releaseClassLoader(ClassLoader)} when it is no longer needed.
+     * 
+     * @param parts
+     *            The resolved path parts.
+     * @param parent
+     *            The parent class loader.
+     * @return A class loader for the path parts.
+     */
+    public ClassLoader getClassLoader(Collection<PathPart> parts, ClassLoader parent) {
+        if (pool == null) {
+            return PathParts.getClassLoader(parts, parent);
+        }
+        List<ClassLoader> evicted = new ArrayList<ClassLoader>();
+        ClassLoader classLoader = pool.acquire(parts, parent, evicted);
+        forget(evicted);
+        return classLoader;
+    }
+
+    /**
+     * Release a class loader obtained from
+     * {@link #getClassLoader(Collection, ClassLoader)}.
+     * 
+     * @param classLoader
+     *            The class loader.
+     */
+    public void releaseClassLoader(ClassLoader classLoader) {
+        if (pool != null) {
+            List<ClassLoader> evicted = new ArrayList<ClassLoader>();
+            pool.release(classLoader, evicted);
+            forget(evicted);
+        }
+    }
+
+    /**
+     * Remove the prototype command nodes of the command classes loaded by the
+     * given evicted class loaders, so that the evicted class loaders can be
+     * collected.
+     * 
+     * @param evicted
+     *            The evicted class loaders.
+     */
+    private void forget(List<ClassLoader> evicted) {
+        if (!evicted.isEmpty()) {
+            for (Class<? extends Commandable> commandableClass : prototypes.keySet()) {
+                if (evicted.contains(commandableClass.getClassLoader())) {
+                    prototypes.remove(commandableClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a command node for the given command class, reusing the
+     * reflected assignments of a prototype command node if command nodes are
+     * pooled.
+     * 
+     * @param io
+     *            The I/O bouquet used to report problems with the command
+     *            class.
+     * @param commandableClass
+     *            The command class.
+     * @return A new command node without sub commands.
+     */
+    public CommandNode newCommandNode(InputOutput io, Class<? extends Commandable> commandableClass) {
+        if (prototypes == null) {
+            return new CommandNode(io, commandableClass);
+        }
+        CommandNode prototype = prototypes.get(commandableClass);
+        if (prototype == null) {
+            prototype = new CommandNode(io, commandableClass);
+            CommandNode existing = prototypes.putIfAbsent(commandableClass, prototype);
+            if (existing != null) {
+                prototype = existing;
+            }
+        }
+        return new CommandNode(prototype);
+    }
+
+    /**
+     * Release the threads used to expand path parts concurrently, evict the
+     * pooled class loaders that are no longer referenced and close the
+     * evicted class loaders that have not yet been collected.
+     */
+    public void shutdown() {
+        if (diagnostics != null) {
+            diagnostics.close();
+        }
+        if (resolvers != null) {
+            resolvers.shutdown();
+        }
+        if (pool != null) {
+            List<ClassLoader> evicted = new ArrayList<ClassLoader>();
+            pool.clear(evicted);
+            forget(evicted);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.goodworkalan.go.go;
+
+import static com.goodworkalan.go.go.Executor.retry;
+import static com.goodworkalan.go.go.GoException.FUTURE_EXECUTION;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * A handle to a pseudo-forked program running on the scheduler of the program
+ * queue.
+ * <p>
+ * Joining a fork that has not yet started removes it from the scheduler and
+ * runs it on the joining thread, so that a program that forks and joins from
+ * a worker thread never waits on a program that is waiting for a worker.
+ * <p>
+ * An error raised by a fork that is never joined is reported by the program
+ * queue when the forking program completes.
+ *
+ * @author Alan Gutierrez
+ *
+ * @param <T>
+ *            The type of the outcome of the program.
+ */
+public class Fork<T> {
+    /** The future outcome of the program. */
+    private final FutureTask<Ilk.Box> future;
+
+    /** The scheduler or null if the program has already run. */
+    private final Scheduler scheduler;
+
+    /** The expected outcome type or null. */
+    private final Ilk<T> outcomeType;
+
+    /** The I/O bouquet where errors are reported. */
+    private final InputOutput io;
+
+    /** The system verbosity. */
+    private final int verbosity;
+
+    /**
+     * The diagnostics writer to flush before reporting an error or null if
+     * diagnostics are written by the reporting thread.
+     */
+    private final Diagnostics diagnostics;
+
+    /** Whether the program has been joined or its outcome requested. */
+    private volatile boolean joined;
+
+    /**
+     * Create a fork handle.
+     *
+     * @param future
+     *            The future outcome of the program.
+     * @param scheduler
+     *            The scheduler or null if the program has already run.
+     * @param outcomeType
+     *            The expected outcome type or null.
+     * @param io
+     *            The I/O bouquet where errors are reported.
+     * @param verbosity
+     *            The system verbosity.
+     * @param diagnostics
+     *            The diagnostics writer to flush before reporting an error or
+     *            null if diagnostics are written by the reporting thread.
+     */
+    Fork(FutureTask<Ilk.Box> future, Scheduler scheduler, Ilk<T> outcomeType, InputOutput io, int verbosity, Diagnostics diagnostics) {
+        this.future = future;
+        this.scheduler = scheduler;
+        this.outcomeType = outcomeType;
+        this.io = io;
+        this.verbosity = verbosity;
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Return true if the program has finished.
+     *
+     * @return True if the program has finished.
+     */
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Wait for the program to finish, running it on this thread if it has not
+     * yet started.
+     *
+     * @return The outcome box.
+     * @throws ExecutionException
+     *             If the program raised an exception.
+     */
+    private Ilk.Box await() throws ExecutionException {
+        joined = true;
+        if (scheduler != null && scheduler.remove(future)) {
+            future.run();
+        }
+        return retry(future);
+    }
+
+    /**
+     * Wait for the program to finish and return its exit code. An error raised
+     * by the program is reported to the standard error of the fork and its
+     * exit code returned, as when a program is run by the program queue.
+     *
+     * @return The exit code of the program.
+     */
+    public int join() {
+        try {
+            await();
+            return 0;
+        } catch (ExecutionException e) {
+            return report(e);
+        }
+    }
+
+    /**
+     * Report the error raised by the program to the standard error of the
+     * fork and return its exit code, as when a program is run by the program
+     * queue. The verbose and debug messages posted by the program are written
+     * before the error.
+     *
+     * @param e
+     *            The execution exception that wraps the error.
+     * @return The exit code of the program.
+     */
+    private int report(ExecutionException e) {
+        if (diagnostics != null) {
+            diagnostics.flush();
+        }
+        if (e.getCause() instanceof GoException) {
+            return ((GoException) e.getCause()).unwrap(io, verbosity);
+        }
+        throw new GoException(FUTURE_EXECUTION, e);
+    }
+
+    /**
+     * Wait for the program to finish and return the output of the expected
+     * outcome type, or null if the program did not output an object of the
+     * type or exited with an error. An error raised by the program is reported
+     * to the standard error of the fork as it is by {@link #join()}.
+     *
+     * @return The outcome of the program or null.
+     */
+    public T getOutcome() {
+        Ilk.Box outcome;
+        try {
+            outcome = await();
+        } catch (ExecutionException e) {
+            report(e);
+            return null;
+        }
+        if (outcome == null || outcomeType == null) {
+            return null;
+        }
+        return outcome.cast(outcomeType);
+    }
+
+    /**
+     * If the program has finished but was never joined, report any error it
+     * raised to the standard error of the fork and return its exit code, as
+     * {@link #join()} would have. Return zero if the program was joined, has
+     * not finished or finished without error.
+     *
+     * @return The exit code of an unjoined program or zero.
+     */
+    int reap() {
+        if (joined || !future.isDone()) {
+            return 0;
+        }
+        return join();
+    }
+}
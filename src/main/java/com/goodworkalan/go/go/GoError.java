@@ -34,6 +34,24 @@ public class GoError extends GoException implements Erroneous {
     /** Cannot read a jar archive. */
     public static int CANNOT_READ_JAR_ARCHIVE = 1007;
 
+    /** Cannot listen for daemon clients. */
+    public static int CANNOT_START_DAEMON = 1008;
+
+    /** Cannot write the daemon port and secret file. */
+    public static int CANNOT_WRITE_DAEMON_FILE = 1009;
+
+    /** Cannot create the output codec named on the command line. */
+    public static int CANNOT_CREATE_OUTPUT_CODEC = 1010;
+
+    /** Cannot read the command lines of a batch. */
+    public static int CANNOT_READ_BATCH = 1011;
+
+    /** A command line of a batch has a quotation that is not closed. */
+    public static int UNTERMINATED_QUOTE = 1012;
+
+    /** Cannot write the profile of a program queue. */
+    public static int CANNOT_WRITE_PROFILE = 1014;
+
     /**
      * Create a go error with the given error code.
      * 
@@ -1,12 +1,19 @@
 package com.goodworkalan.go.go;
 
-import java.util.Locale;
-import java.util.ResourceBundle;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
 
 
 /**
  * A general purpose exception that indicates that an error occurred in one 
  * of the classes in the go package.
+ * <p>
+ * The message is formatted when it is first requested, so the format
+ * arguments are held until then and must be immutable, or at least never
+ * modified after the exception is created. The context class loader used to
+ * find the message bundle is held weakly. If it has been collected, the
+ * bundle is found with the class loader of the exception class.
  *   
  * @author Alan Gutierrez
  */
@@ -68,6 +75,9 @@ public class GoException extends RuntimeException {
     /** Attempted to parse malformed artifact file. */
     public final static int MALFORMED_ARTIFACT_FILE = 325;
 
+    /** An I/O exception was thrown while reading a program configuration file. */
+    public final static int PROGRAM_CONFIGURATION_IO = 326;
+
     /** An exception was thrown during task property assignment. */
     public final static int ASSIGNMENT_EXCEPTION_THROWN = 401;
 
@@ -104,8 +114,18 @@ public class GoException extends RuntimeException {
     /** The error code. */
     private final int code;
     
-    /** The error message. */
-    private final String message;
+    /** The error message or null if it has not been formatted. */
+    private String message;
+
+    /** The format arguments or null once the message is formatted. */
+    private transient Object[] arguments;
+
+    /**
+     * A weak reference to the context class loader used to find the message
+     * bundle, so that an exception that is held does not keep the class loader
+     * of a program from being collected.
+     */
+    private transient WeakReference<ClassLoader> classLoader;
     
     /**
      * Create an exception with the given error code.
@@ -113,7 +133,9 @@ public class GoException extends RuntimeException {
      * @param code
      *            The error code.
      * @param arguments
-     *            The format arguments.
+     *            The format arguments, which must not be modified after the
+     *            exception is created since the message is formatted when it
+     *            is first requested.
      */
     public GoException(int code, Object...arguments) {
         this(code, null, arguments);
@@ -127,12 +149,15 @@ public class GoException extends RuntimeException {
      * @param cause
      *            The wrapped exception.
      * @param arguments
-     *            The format arguments.
+     *            The format arguments, which must not be modified after the
+     *            exception is created since the message is formatted when it
+     *            is first requested.
      */
     public GoException(int code, Throwable cause, Object...arguments) {
         super(null, cause);
-        this.message = formatMessage(code, arguments);
         this.code = code;
+        this.arguments = arguments;
+        this.classLoader = new WeakReference<ClassLoader>(Thread.currentThread().getContextClassLoader());
     }
     
     /**
@@ -145,14 +170,34 @@ public class GoException extends RuntimeException {
     }
 
     /**
-     * Get the error message.
+     * Get the error message, formatting it the first time it is requested, so
+     * that an exception that is caught and handled never formats a message.
      * 
      * @return The error message.
      */
-    public String getMessage() {
+    public synchronized String getMessage() {
+        if (message == null) {
+            message = formatMessage(code, arguments);
+            arguments = null;
+            classLoader = null;
+        }
         return message;
     }
 
+    /**
+     * Format the message before the exception is serialized, since the
+     * format arguments are not serialized.
+     * 
+     * @param out
+     *            The object output stream.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getMessage();
+        out.defaultWriteObject();
+    }
+
     /**
      * Format the exception message using the message arguments to format the
      * message found with the message key in the message bundle found in the
@@ -169,8 +214,15 @@ public class GoException extends RuntimeException {
     private String formatMessage(int code, Object...arguments) {
         String baseName = getClass().getPackage().getName() + ".exceptions";
         try {
-            ResourceBundle bundle = ResourceBundle.getBundle(baseName, Locale.getDefault(), Thread.currentThread().getContextClassLoader());
-            return String.format((String) bundle.getObject(Integer.toString(code)), arguments);
+            ClassLoader loader = classLoader.get();
+            if (loader == null) {
+                loader = getClass().getClassLoader();
+            }
+            Messages messages = Messages.getInstance(baseName, loader);
+            if (messages == null) {
+                return String.format("Cannot load message key [%s] from bundle [%s] becuase [%s].", code, baseName, "bundle missing");
+            }
+            return messages.format(Integer.toString(code), arguments);
         } catch (Exception e) {
             return String.format("Cannot load message key [%s] from bundle [%s] becuase [%s].", code, baseName, e.getMessage());
         }
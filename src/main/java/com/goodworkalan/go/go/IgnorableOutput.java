@@ -1,11 +1,16 @@
 package com.goodworkalan.go.go;
 
+import java.io.Serializable;
+
 /**
  * Something to stuff into a cache entry that is invisible to the public
  * interface since the caching logic uses a non-empty cache as a sentry
- * during cache population.
+ * during cache population. It is serializable so that it can be written to
+ * the persistent output cache.
  * 
  * @author Alan Gutierrez
  */
-class IgnorableOutput {
+class IgnorableOutput implements Serializable {
+    /** The serial version id. */
+    private static final long serialVersionUID = 1L;
 }
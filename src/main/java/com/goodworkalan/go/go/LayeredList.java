@@ -0,0 +1,198 @@
+package com.goodworkalan.go.go;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list that shares the elements of the list it was layered upon and appends
+ * its own elements to a layer of its own, so that layering a child list upon a
+ * parent list takes constant time regardless of the size of the parent.
+ * <p>
+ * Layering a child list upon a parent list freezes the elements of the
+ * parent. The child and the parent each append subsequent elements to a new
+ * layer, so that neither sees the changes the other makes after the child is
+ * created, just as if the child had been a copy of the parent. Setting,
+ * inserting or removing an element in a frozen layer copies the elements into
+ * a single layer of the list's own first. When the number of layers exceeds a
+ * limit, a new child list is created with a single layer containing all the
+ * elements, so that indexed access remains cheap.
+ * <p>
+ * As with a copy, the elements themselves are shared, not copied.
+ *
+ * @author Alan Gutierrez
+ *
+ * @param <E>
+ *            The element type.
+ */
+class LayeredList<E> extends AbstractList<E> implements RandomAccess {
+    /** The topmost layer. */
+    private Layer<E> layer;
+
+    /** Create an empty layered list. */
+    public LayeredList() {
+        this.layer = new Layer<E>(null, new ArrayList<E>());
+    }
+
+    /**
+     * Create a list layered upon the given parent list.
+     *
+     * @param parent
+     *            The parent list.
+     */
+    public LayeredList(LayeredList<E> parent) {
+        parent.layer.frozen = true;
+        if (parent.layer.depth < LayeredMap.MAXIMUM_DEPTH) {
+            this.layer = new Layer<E>(parent.layer, new ArrayList<E>());
+        } else {
+            this.layer = new Layer<E>(null, new ArrayList<E>(parent));
+        }
+    }
+
+    /**
+     * Get the layer that contains the element at the given index.
+     *
+     * @param index
+     *            The index.
+     * @return The layer containing the element.
+     */
+    private Layer<E> find(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Layer<E> iterator = layer;
+        while (index < iterator.offset) {
+            iterator = iterator.parent;
+        }
+        return iterator;
+    }
+
+    /**
+     * Make the topmost layer the only layer, copying the elements of all the
+     * layers into it, so that any element can be changed.
+     */
+    private void own() {
+        if (layer.parent != null || layer.frozen) {
+            layer = new Layer<E>(null, new ArrayList<E>(this));
+        }
+    }
+
+    /**
+     * Get the element at the given index.
+     *
+     * @param index
+     *            The index.
+     * @return The element.
+     */
+    @Override
+    public E get(int index) {
+        Layer<E> found = find(index);
+        return found.elements.get(index - found.offset);
+    }
+
+    /**
+     * Get the number of elements in all the layers.
+     *
+     * @return The size of the list.
+     */
+    @Override
+    public int size() {
+        return layer.offset + layer.elements.size();
+    }
+
+    /**
+     * Replace the element at the given index.
+     *
+     * @param index
+     *            The index.
+     * @param element
+     *            The new element.
+     * @return The element previously at the index.
+     */
+    @Override
+    public E set(int index, E element) {
+        if (find(index) != layer || layer.frozen) {
+            own();
+        }
+        return layer.elements.set(index - layer.offset, element);
+    }
+
+    /**
+     * Insert the given element at the given index. Appending an element takes
+     * constant time. Inserting an element anywhere else copies the elements
+     * into a single layer of the list's own first.
+     *
+     * @param index
+     *            The index.
+     * @param element
+     *            The element.
+     */
+    @Override
+    public void add(int index, E element) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index != size()) {
+            own();
+        } else if (layer.frozen) {
+            layer = new Layer<E>(layer, new ArrayList<E>());
+        }
+        layer.elements.add(index - layer.offset, element);
+        modCount++;
+    }
+
+    /**
+     * Remove the element at the given index.
+     *
+     * @param index
+     *            The index.
+     * @return The element removed.
+     */
+    @Override
+    public E remove(int index) {
+        if (find(index) != layer || layer.frozen) {
+            own();
+        }
+        modCount++;
+        return layer.elements.remove(index - layer.offset);
+    }
+
+    /**
+     * A layer of elements.
+     *
+     * @param <E>
+     *            The element type.
+     */
+    private final static class Layer<E> {
+        /** The layer beneath this layer or null. */
+        public final Layer<E> parent;
+
+        /** The number of layers including this layer. */
+        public final int depth;
+
+        /** The index of the first element of this layer. */
+        public final int offset;
+
+        /** The elements of this layer. */
+        public final List<E> elements;
+
+        /** Whether this layer is shared and can no longer be changed. */
+        public boolean frozen;
+
+        /**
+         * Create a layer.
+         *
+         * @param parent
+         *            The layer beneath this layer or null.
+         * @param elements
+         *            The elements of this layer.
+         */
+        public Layer(Layer<E> parent, List<E> elements) {
+            this.parent = parent;
+            this.depth = parent == null ? 1 : parent.depth + 1;
+            this.offset = parent == null ? 0 : parent.offset + parent.elements.size();
+            this.elements = elements;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.goodworkalan.go.go;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map that shares the mappings of the map it was layered upon and records
+ * its own mappings in a layer of its own, so that layering a child map upon a
+ * parent map takes constant time regardless of the size of the parent.
+ * <p>
+ * Layering a child map upon a parent map freezes the mappings of the parent.
+ * The child and the parent each record subsequent mappings in a new layer, so
+ * that neither sees the mappings the other makes after the child is created,
+ * just as if the child had been a copy of the parent. When the number of
+ * layers exceeds a limit, a new child map is created with a single layer
+ * containing all the mappings, so that lookups remain cheap.
+ * <p>
+ * Mappings cannot be removed. Iterating over the map merges the layers.
+ *
+ * @author Alan Gutierrez
+ *
+ * @param <K>
+ *            The key type.
+ * @param <V>
+ *            The value type.
+ */
+class LayeredMap<K, V> extends AbstractMap<K, V> {
+    /** The maximum number of layers before the layers are merged. */
+    final static int MAXIMUM_DEPTH = 16;
+
+    /** The topmost layer. */
+    private Layer<K, V> layer;
+
+    /** The number of distinct keys mapped by all the layers. */
+    private int size;
+
+    /** Create an empty layered map. */
+    public LayeredMap() {
+        this.layer = new Layer<K, V>(null, new HashMap<K, V>());
+    }
+
+    /**
+     * Create a map layered upon the given parent map.
+     *
+     * @param parent
+     *            The parent map.
+     */
+    public LayeredMap(LayeredMap<K, V> parent) {
+        Layer<K, V> frozen = parent.freeze();
+        if (frozen.depth < MAXIMUM_DEPTH) {
+            this.layer = new Layer<K, V>(frozen, new HashMap<K, V>());
+            this.size = parent.size;
+        } else {
+            this.layer = new Layer<K, V>(null, new HashMap<K, V>(merge(frozen)));
+            this.size = layer.entries.size();
+        }
+    }
+
+    /**
+     * Freeze the topmost layer so that it can be shared with a child map and
+     * return it. Subsequent mappings are recorded in a new layer.
+     *
+     * @return The frozen topmost layer.
+     */
+    private Layer<K, V> freeze() {
+        layer.frozen = true;
+        return layer;
+    }
+
+    /**
+     * Merge the mappings of the given layer and its ancestors into a single
+     * map, where the mappings of descendant layers replace the mappings of
+     * their ancestors.
+     *
+     * @param top
+     *            The topmost layer.
+     * @return A map of the mappings of all the layers.
+     */
+    private static <K, V> Map<K, V> merge(Layer<K, V> top) {
+        List<Layer<K, V>> layers = new ArrayList<Layer<K, V>>();
+        for (Layer<K, V> iterator = top; iterator != null; iterator = iterator.parent) {
+            layers.add(iterator);
+        }
+        Collections.reverse(layers);
+        Map<K, V> merged = new LinkedHashMap<K, V>();
+        for (Layer<K, V> iterator : layers) {
+            merged.putAll(iterator.entries);
+        }
+        return merged;
+    }
+
+    /**
+     * Find the layer that maps the given key, searching from the topmost layer
+     * down.
+     *
+     * @param key
+     *            The key.
+     * @return The layer that maps the key or null if no layer does.
+     */
+    private Layer<K, V> find(Object key) {
+        for (Layer<K, V> iterator = layer; iterator != null; iterator = iterator.parent) {
+            if (iterator.entries.containsKey(key)) {
+                return iterator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return true if any layer maps the given key.
+     *
+     * @param key
+     *            The key.
+     * @return True if the key is mapped.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    /**
+     * Get the value mapped to the given key by the topmost layer that maps
+     * the key.
+     *
+     * @param key
+     *            The key.
+     * @return The value or null if the key is not mapped.
+     */
+    @Override
+    public V get(Object key) {
+        Layer<K, V> found = find(key);
+        return found == null ? null : found.entries.get(key);
+    }
+
+    /**
+     * Map the given key to the given value in the topmost layer, creating a
+     * new topmost layer if the current one is shared with a child map.
+     *
+     * @param key
+     *            The key.
+     * @param value
+     *            The value.
+     * @return The value previously mapped to the key or null.
+     */
+    @Override
+    public V put(K key, V value) {
+        Layer<K, V> found = find(key);
+        V previous = null;
+        if (found == null) {
+            size++;
+        } else {
+            previous = found.entries.get(key);
+        }
+        if (layer.frozen) {
+            layer = new Layer<K, V>(layer, new HashMap<K, V>());
+        }
+        layer.entries.put(key, value);
+        return previous;
+    }
+
+    /**
+     * Get the number of distinct keys mapped by all the layers without
+     * merging the layers.
+     *
+     * @return The number of mappings.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get an unmodifiable set of the mappings of all the layers.
+     *
+     * @return The set of mappings.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return Collections.unmodifiableMap(merge(layer)).entrySet();
+    }
+
+    /**
+     * A layer of mappings.
+     *
+     * @param <K>
+     *            The key type.
+     * @param <V>
+     *            The value type.
+     */
+    private final static class Layer<K, V> {
+        /** The layer beneath this layer or null. */
+        public final Layer<K, V> parent;
+
+        /** The number of layers including this layer. */
+        public final int depth;
+
+        /** The mappings of this layer. */
+        public final Map<K, V> entries;
+
+        /** Whether this layer is shared and can no longer be changed. */
+        public boolean frozen;
+
+        /**
+         * Create a layer.
+         *
+         * @param parent
+         *            The layer beneath this layer or null.
+         * @param entries
+         *            The mappings of this layer.
+         */
+        public Layer(Layer<K, V> parent, Map<K, V> entries) {
+            this.parent = parent;
+            this.depth = parent == null ? 1 : parent.depth + 1;
+            this.entries = entries;
+        }
+    }
+}
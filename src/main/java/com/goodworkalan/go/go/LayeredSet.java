@@ -0,0 +1,86 @@
+package com.goodworkalan.go.go;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * A set that shares the members of the set it was layered upon and records its
+ * own members in a layer of its own, so that layering a child set upon a
+ * parent set takes constant time regardless of the size of the parent. The
+ * sharing rules are those of the {@link LayeredMap} that backs the set.
+ * <p>
+ * Members cannot be removed.
+ *
+ * @author Alan Gutierrez
+ *
+ * @param <E>
+ *            The member type.
+ */
+class LayeredSet<E> extends AbstractSet<E> {
+    /** The map of members to true. */
+    private final LayeredMap<E, Boolean> members;
+
+    /** Create an empty layered set. */
+    public LayeredSet() {
+        this.members = new LayeredMap<E, Boolean>();
+    }
+
+    /**
+     * Create a set layered upon the given parent set.
+     *
+     * @param parent
+     *            The parent set.
+     */
+    public LayeredSet(LayeredSet<E> parent) {
+        this.members = new LayeredMap<E, Boolean>(parent.members);
+    }
+
+    /**
+     * Return true if any layer contains the given object.
+     *
+     * @param object
+     *            The object.
+     * @return True if the object is a member of this set.
+     */
+    @Override
+    public boolean contains(Object object) {
+        return members.containsKey(object);
+    }
+
+    /**
+     * Add the given member to the topmost layer if it is not already a member.
+     *
+     * @param member
+     *            The member.
+     * @return True if the member was added.
+     */
+    @Override
+    public boolean add(E member) {
+        if (members.containsKey(member)) {
+            return false;
+        }
+        members.put(member, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Get an iterator over the members of all the layers that does not
+     * support removal.
+     *
+     * @return An iterator over the members.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return members.keySet().iterator();
+    }
+
+    /**
+     * Get the number of members in all the layers.
+     *
+     * @return The size of the set.
+     */
+    @Override
+    public int size() {
+        return members.size();
+    }
+}
@@ -0,0 +1,149 @@
+package com.goodworkalan.go.go;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A catalog of the message formats of a resource bundle, cached by class
+ * loader and bundle name.
+ * <p>
+ * Looking up a bundle with <code>ResourceBundle.getBundle</code> builds a
+ * cache key and a list of candidate locales on every call, and every message
+ * written to standard error or given to an exception looked up its bundle
+ * that way. The catalog of a bundle is looked up once for each class loader
+ * and kept for as long as the class loader is reachable and the default
+ * locale is unchanged. A missing bundle is remembered as well.
+ * <p>
+ * Each message format is read from the bundle once and kept as a template
+ * that records whether the format has any conversions at all, so that a
+ * message without conversions is written without being formatted.
+ *
+ * @author Alan Gutierrez
+ */
+class Messages {
+    /**
+     * The map of class loaders to maps of bundle names to catalogs, guarded
+     * by the map itself.
+     */
+    private final static Map<ClassLoader, Map<String, Messages>> CATALOGS = new WeakHashMap<ClassLoader, Map<String, Messages>>();
+
+    /** The locale of the bundle. */
+    private final Locale locale;
+
+    /** The bundle or null if the bundle is missing. */
+    private final ResourceBundle bundle;
+
+    /** The map of message keys to their templates. */
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+
+    /**
+     * Create a catalog.
+     * 
+     * @param locale
+     *            The locale of the bundle.
+     * @param bundle
+     *            The bundle or null if the bundle is missing.
+     */
+    private Messages(Locale locale, ResourceBundle bundle) {
+        this.locale = locale;
+        this.bundle = bundle;
+    }
+
+    /**
+     * Get the catalog of the bundle with the given name for the default locale
+     * loaded by the given class loader.
+     * 
+     * @param baseName
+     *            The bundle name.
+     * @param classLoader
+     *            The class loader.
+     * @return The catalog or null if the bundle is missing.
+     */
+    public static Messages getInstance(String baseName, ClassLoader classLoader) {
+        Locale locale = Locale.getDefault();
+        Map<String, Messages> catalogs;
+        synchronized (CATALOGS) {
+            catalogs = CATALOGS.get(classLoader);
+            if (catalogs == null) {
+                catalogs = new HashMap<String, Messages>();
+                CATALOGS.put(classLoader, catalogs);
+            }
+            Messages messages = catalogs.get(baseName);
+            if (messages != null && messages.locale.equals(locale)) {
+                return messages.bundle == null ? null : messages;
+            }
+        }
+        ResourceBundle bundle;
+        try {
+            bundle = ResourceBundle.getBundle(baseName, locale, classLoader);
+        } catch (MissingResourceException e) {
+            bundle = null;
+        }
+        Messages messages = new Messages(locale, bundle);
+        synchronized (CATALOGS) {
+            catalogs.put(baseName, messages);
+        }
+        return bundle == null ? null : messages;
+    }
+
+    /**
+     * Format the message with the given key using the given arguments.
+     * 
+     * @param key
+     *            The message key.
+     * @param arguments
+     *            The message format arguments.
+     * @return The formatted message.
+     * @exception MissingResourceException
+     *                If the message key is not in the bundle.
+     * @exception java.util.IllegalFormatException
+     *                If the arguments do not match the format.
+     */
+    public String format(String key, Object...arguments) {
+        Template template = templates.get(key);
+        if (template == null) {
+            template = new Template(bundle.getObject(key).toString());
+            templates.put(key, template);
+        }
+        return template.format(arguments);
+    }
+
+    /**
+     * A message format read from a bundle.
+     */
+    private final static class Template {
+        /** The message format. */
+        private final String format;
+
+        /** Whether the message format has no conversions. */
+        private final boolean literal;
+
+        /**
+         * Create a template for the given message format.
+         * 
+         * @param format
+         *            The message format.
+         */
+        public Template(String format) {
+            this.format = format;
+            this.literal = format.indexOf('%') == -1;
+        }
+
+        /**
+         * Format the message using the given arguments.
+         * 
+         * @param arguments
+         *            The message format arguments.
+         * @return The formatted message.
+         */
+        public String format(Object...arguments) {
+            return literal ? format : String.format(format, arguments);
+        }
+    }
+}
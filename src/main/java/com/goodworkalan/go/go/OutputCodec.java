@@ -0,0 +1,39 @@
+package com.goodworkalan.go.go;
+
+import java.util.List;
+
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * Converts the boxed outputs of a command to and from bytes so that they can
+ * be kept in the persistent output cache and restored by a later invocation.
+ * <p>
+ * A codec must have a public no argument constructor so that it can be named
+ * on the command line with the <code>--output-codec</code> switch.
+ *
+ * @author Alan Gutierrez
+ */
+public interface OutputCodec {
+    /**
+     * Encode the given boxed outputs, returning null if any of the outputs
+     * cannot be encoded, in which case the outputs are not cached.
+     *
+     * @param outputs
+     *            The boxed outputs.
+     * @return The encoded outputs or null.
+     */
+    public byte[] encode(List<Ilk.Box> outputs);
+
+    /**
+     * Decode the given bytes into boxed outputs, loading the output classes
+     * with the given class loader, returning null if the outputs cannot be
+     * decoded, in which case the command is run again.
+     *
+     * @param bytes
+     *            The encoded outputs.
+     * @param classLoader
+     *            The class loader used to load the output classes.
+     * @return The boxed outputs or null.
+     */
+    public List<Ilk.Box> decode(byte[] bytes, ClassLoader classLoader);
+}
@@ -0,0 +1,309 @@
+package com.goodworkalan.go.go;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import com.goodworkalan.go.go.library.CacheFiles;
+import com.goodworkalan.go.go.library.PathPart;
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * An on disk cache of command outputs that outlives the program queue.
+ * <p>
+ * The outputs of a cacheable command are written to a file keyed by the
+ * command key, the class path of the executor that ran the command, and the
+ * codec used to encode the outputs. The class path is recorded as the path,
+ * modification time and length of each of its files, so that installing a new
+ * version of any jar on the class path invalidates the cached outputs.
+ * Outputs that depend upon files modified within the last couple of seconds
+ * are not written, since a file system with a coarse clock might not show a
+ * subsequent change.
+ * <p>
+ * The outputs are encoded by an {@link OutputCodec}. Outputs that the codec
+ * cannot encode are not cached. The cache is bounded by the total size of its
+ * files. When it grows beyond the bound, the least recently used files are
+ * deleted, where reading a file touches its modification time.
+ *
+ * @author Alan Gutierrez
+ */
+class OutputStore {
+    /** The version of the output file format. */
+    private static final int VERSION = 1;
+
+    /** The suffix of output files. */
+    private static final String SUFFIX = ".out";
+
+    /** The directory where output files are written. */
+    private final File directory;
+
+    /** The maximum total size in bytes of the output files. */
+    private final long maximumSize;
+
+    /** The codec used to encode and decode outputs. */
+    private final OutputCodec codec;
+
+    /** The total size of the output files or -1 if it is not yet known. */
+    private long size = -1;
+
+    /**
+     * Create an output store.
+     *
+     * @param directory
+     *            The directory where output files are written.
+     * @param maximumSize
+     *            The maximum total size in bytes of the output files.
+     * @param codec
+     *            The codec used to encode and decode outputs.
+     */
+    public OutputStore(File directory, long maximumSize, OutputCodec codec) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        this.codec = codec;
+    }
+
+    /**
+     * Get the fingerprint of the given class path, a list of the path,
+     * modification time and length of each file, or null if any of the files
+     * has been modified too recently to be trusted.
+     *
+     * @param parts
+     *            The class path.
+     * @return The class path fingerprint or null.
+     */
+    public static List<String> getFingerprint(Collection<PathPart> parts) {
+        long now = System.currentTimeMillis();
+        List<String> fingerprint = new ArrayList<String>();
+        for (PathPart part : parts) {
+            File file = part.getFile();
+            long lastModified = file.lastModified();
+            if (CacheFiles.isRacy(lastModified, now)) {
+                return null;
+            }
+            fingerprint.add(file.getAbsolutePath() + "\t" + lastModified + "\t" + file.length());
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Get the cache entry for the given command key and class path fingerprint
+     * loading the transient commands and outputs with the given class loader,
+     * or null if there is no cache entry or it cannot be read.
+     *
+     * @param command
+     *            The command key.
+     * @param fingerprint
+     *            The class path fingerprint.
+     * @param classLoader
+     *            The class loader of the command.
+     * @return The cache entry or null.
+     */
+    public CacheEntry get(List<String> command, List<String> fingerprint, ClassLoader classLoader) {
+        List<String> key = getKey(command, fingerprint);
+        File file = new File(directory, digest(key) + SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        CacheEntry cacheEntry = read(file, key, classLoader);
+        if (cacheEntry != null) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Write the given cache entry for the given command key and class path
+     * fingerprint, evicting the least recently used output files if the cache
+     * has grown too large. Any failure is ignored, since the command will
+     * simply be run again.
+     *
+     * @param command
+     *            The command key.
+     * @param fingerprint
+     *            The class path fingerprint.
+     * @param cacheEntry
+     *            The cache entry.
+     */
+    public void put(List<String> command, List<String> fingerprint, final CacheEntry cacheEntry) {
+        final byte[] outputs = codec.encode(cacheEntry.outputs);
+        if (outputs == null) {
+            return;
+        }
+        final List<String> key = getKey(command, fingerprint);
+        File file = new File(directory, digest(key) + SUFFIX);
+        boolean written = CacheFiles.write(file, "output", new CacheFiles.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                CacheFiles.writeHeader(out, VERSION);
+                out.writeInt(key.size());
+                for (String line : key) {
+                    out.writeUTF(line);
+                }
+                out.writeInt(cacheEntry.transients.size());
+                for (Class<? extends Commandable> commandableClass : cacheEntry.transients) {
+                    out.writeUTF(commandableClass.getName());
+                }
+                out.writeInt(outputs.length);
+                out.write(outputs);
+            }
+        });
+        if (written) {
+            evict(file.length());
+        }
+    }
+
+    /**
+     * Add the given length to the total size of the output files and delete
+     * the least recently used output files until the total size is within the
+     * maximum size.
+     *
+     * @param length
+     *            The length of the output file just written.
+     */
+    private synchronized void evict(long length) {
+        if (size != -1) {
+            size += length;
+            if (size <= maximumSize) {
+                return;
+            }
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final long[] lastModified = new long[files.length];
+        List<Integer> order = new ArrayList<Integer>();
+        size = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().endsWith(SUFFIX)) {
+                lastModified[i] = files[i].lastModified();
+                size += files[i].length();
+                order.add(i);
+            }
+        }
+        Integer[] sorted = order.toArray(new Integer[order.size()]);
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer left, Integer right) {
+                return lastModified[left] < lastModified[right] ? -1 : lastModified[left] == lastModified[right] ? 0 : 1;
+            }
+        });
+        for (int i = 0; size > maximumSize && i < sorted.length; i++) {
+            long fileLength = files[sorted[i]].length();
+            if (files[sorted[i]].delete()) {
+                size -= fileLength;
+            }
+        }
+    }
+
+    /**
+     * Create the key of an output file from the command key, the class path
+     * fingerprint and the name of the codec.
+     *
+     * @param command
+     *            The command key.
+     * @param fingerprint
+     *            The class path fingerprint.
+     * @return The output file key.
+     */
+    private List<String> getKey(List<String> command, List<String> fingerprint) {
+        List<String> key = new ArrayList<String>();
+        key.add("c " + codec.getClass().getName());
+        for (String argument : command) {
+            key.add("a " + argument);
+        }
+        for (String line : fingerprint) {
+            key.add("f " + line);
+        }
+        return key;
+    }
+
+    /**
+     * Create a hexadecimal SHA-1 digest of the given key to use as the output
+     * file name.
+     *
+     * @param key
+     *            The output file key.
+     * @return The digest of the key.
+     */
+    private static String digest(List<String> key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String line : key) {
+                digest.update(line.getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Read the cache entry from the given output file returning null if the
+     * output file was written for a different key, or if the output file, the
+     * transient command classes or the outputs cannot be read.
+     *
+     * @param file
+     *            The output file.
+     * @param key
+     *            The output file key.
+     * @param classLoader
+     *            The class loader of the command.
+     * @return The cache entry or null.
+     */
+    private CacheEntry read(File file, List<String> key, ClassLoader classLoader) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (!CacheFiles.readHeader(in, VERSION)) {
+                    return null;
+                }
+                if (in.readInt() != key.size()) {
+                    return null;
+                }
+                for (String line : key) {
+                    if (!line.equals(in.readUTF())) {
+                        return null;
+                    }
+                }
+                CacheEntry cacheEntry = new CacheEntry();
+                for (int i = 0, stop = in.readInt(); i < stop; i++) {
+                    Class<?> transientClass = Class.forName(in.readUTF(), false, classLoader);
+                    cacheEntry.transients.add(transientClass.asSubclass(Commandable.class));
+                }
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                List<Ilk.Box> outputs = codec.decode(bytes, classLoader);
+                if (outputs == null) {
+                    return null;
+                }
+                cacheEntry.outputs.addAll(outputs);
+                return cacheEntry;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // A damaged output file is simply run again.
+            return null;
+        }
+    }
+}
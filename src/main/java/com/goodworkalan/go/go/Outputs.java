@@ -0,0 +1,107 @@
+package com.goodworkalan.go.go;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * The outputs of a command in the command path, indexed for lookup by type.
+ * <p>
+ * The most specific output assignable to a requested type is found by a scan
+ * of the outputs the first time the type is requested. The answer is
+ * memoized by the type key of the request, so that later requests for the
+ * same type are a single hash lookup. When an output is added, each memoized
+ * answer is updated with the one comparison the scan would have made for it,
+ * so that the registry always gives the answer of a full scan without
+ * repeating one.
+ *
+ * @author Alan Gutierrez
+ */
+class Outputs {
+    /** The boxed outputs in the order in which they were added. */
+    private final List<Ilk.Box> boxes = new ArrayList<Ilk.Box>();
+
+    /**
+     * The map of requested type keys to the most specific assignable output,
+     * or to null if no output is assignable.
+     */
+    private final Map<Ilk.Key, Ilk.Box> assignable = new HashMap<Ilk.Key, Ilk.Box>();
+
+    /**
+     * Add the given boxed output.
+     * 
+     * @param box
+     *            The boxed output.
+     */
+    public synchronized void add(Ilk.Box box) {
+        boxes.add(box);
+        for (Map.Entry<Ilk.Key, Ilk.Box> entry : assignable.entrySet()) {
+            if (isMoreSpecific(entry.getKey(), entry.getValue(), box)) {
+                entry.setValue(box);
+            }
+        }
+    }
+
+    /**
+     * Add the given boxed outputs.
+     * 
+     * @param boxes
+     *            The boxed outputs.
+     */
+    public synchronized void addAll(Collection<Ilk.Box> boxes) {
+        for (Ilk.Box box : boxes) {
+            add(box);
+        }
+    }
+
+    /**
+     * Get the most specific output assignable to the type of the given type
+     * key.
+     * 
+     * @param key
+     *            The type key.
+     * @return The boxed output or null if no output is assignable.
+     */
+    public synchronized Ilk.Box get(Ilk.Key key) {
+        if (assignable.containsKey(key)) {
+            return assignable.get(key);
+        }
+        Ilk.Box candidate = null;
+        for (Ilk.Box box : boxes) {
+            if (isMoreSpecific(key, candidate, box)) {
+                candidate = box;
+            }
+        }
+        assignable.put(key, candidate);
+        return candidate;
+    }
+
+    /**
+     * Whether the given box is assignable to the type of the given key and is
+     * at least as specific as the given candidate.
+     * 
+     * @param key
+     *            The type key.
+     * @param candidate
+     *            The current candidate or null.
+     * @param box
+     *            The boxed output.
+     * @return True if the box should replace the candidate.
+     */
+    private static boolean isMoreSpecific(Ilk.Key key, Ilk.Box candidate, Ilk.Box box) {
+        return key.isAssignableFrom(box.key) && (candidate == null || candidate.key.isAssignableFrom(box.key));
+    }
+
+    /**
+     * Get a copy of the boxed outputs in the order in which they were added.
+     * 
+     * @return The boxed outputs.
+     */
+    public synchronized List<Ilk.Box> getBoxes() {
+        return new ArrayList<Ilk.Box>(boxes);
+    }
+}
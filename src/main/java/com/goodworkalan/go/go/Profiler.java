@@ -0,0 +1,362 @@
+package com.goodworkalan.go.go;
+
+import static com.goodworkalan.go.go.GoError.CANNOT_WRITE_PROFILE;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the time and allocations of the phases of running a program, so
+ * that a slow start can be traced to the phase that caused it without an
+ * external profiler.
+ * <p>
+ * The profile is a tree. The program queue records the scanning of the
+ * program indexes and a node for each program. An executor records beneath
+ * the node of its program the phases it runs: reading the commandable
+ * configurations, reflecting upon command classes, resolving and creating
+ * the class loader of a class path extension, converting and assigning
+ * arguments, and executing commandables. Each class path extension layer is
+ * a node beneath the executor that extended the class path, with the phases
+ * of that layer beneath it. Phases of the same name beneath the same node are
+ * added together and counted.
+ * <p>
+ * Times are wall clock nanoseconds. Allocations are the bytes allocated by
+ * the thread that ran the phase, and are recorded only when the virtual
+ * machine can count the bytes allocated by a thread. Phases may nest: the
+ * reflection upon command classes found while reading configurations is
+ * counted in both phases.
+ * 
+ * @author Alan Gutierrez
+ */
+class Profiler {
+    /** The thread management bean or null if allocations are not counted. */
+    private final static Object THREADS;
+
+    /** The method that gets the bytes allocated by a thread or null. */
+    private final static Method ALLOCATED;
+
+    static {
+        Object threads = null;
+        Method allocated = null;
+        try {
+            Class<?> threadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+            threads = ManagementFactory.getThreadMXBean();
+            if (threadMXBean.isInstance(threads)) {
+                allocated = threadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+                allocated.invoke(threads, Thread.currentThread().getId());
+            }
+        } catch (Exception e) {
+            allocated = null;
+        }
+        THREADS = allocated == null ? null : threads;
+        ALLOCATED = allocated;
+    }
+
+    /** The root of the profile tree. */
+    private final Node root = new Node("profile");
+
+    /**
+     * Get the root of the profile tree.
+     * 
+     * @return The root node.
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Begin timing the phase with the given name beneath the given node.
+     * 
+     * @param parent
+     *            The parent node or null if profiling is disabled.
+     * @param phase
+     *            The phase name.
+     * @return A span to end when the phase ends or null if profiling is
+     *         disabled.
+     */
+    public static Span begin(Node parent, String phase) {
+        return parent == null ? null : new Span(parent.child(phase));
+    }
+
+    /**
+     * Begin timing the phase of the given node.
+     * 
+     * @param node
+     *            The node or null if profiling is disabled.
+     * @return A span to end when the phase ends or null if profiling is
+     *         disabled.
+     */
+    public static Span begin(Node node) {
+        return node == null ? null : new Span(node);
+    }
+
+    /**
+     * End the given span, adding its time and allocations to its node.
+     * 
+     * @param span
+     *            The span or null if profiling is disabled.
+     */
+    public static void end(Span span) {
+        if (span != null) {
+            long bytes = allocated();
+            span.node.add(System.nanoTime() - span.start, bytes == -1 ? -1 : bytes - span.bytes);
+        }
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread.
+     * 
+     * @return The allocated bytes or -1 if they are not counted.
+     */
+    private static long allocated() {
+        if (ALLOCATED != null) {
+            try {
+                return (Long) ALLOCATED.invoke(THREADS, Thread.currentThread().getId());
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the profile tree to the standard error of the given I/O bouquet,
+     * indenting each phase beneath its parent.
+     * 
+     * @param io
+     *            The I/O bouquet.
+     */
+    public void print(InputOutput io) {
+        for (Node child : root.getChildren()) {
+            print(io, child, "");
+        }
+    }
+
+    /**
+     * Write the given node and its children to the standard error of the
+     * given I/O bouquet with the given indent.
+     * 
+     * @param io
+     *            The I/O bouquet.
+     * @param node
+     *            The node.
+     * @param indent
+     *            The indent.
+     */
+    private static void print(InputOutput io, Node node, String indent) {
+        long bytes = node.getBytes();
+        Environment.error(io, Profiler.class, "node", indent, node.name, node.getCount(), node.getNanos() / 1000000.0, bytes == -1 ? "?" : Long.toString(bytes));
+        for (Node child : node.getChildren()) {
+            print(io, child, indent + "  ");
+        }
+    }
+
+    /**
+     * Write the profile tree to the given file as JSON.
+     * 
+     * @param file
+     *            The file.
+     * @exception GoError
+     *                If the file cannot be written.
+     */
+    public void write(File file) {
+        try {
+            Writer writer = new FileWriter(file);
+            try {
+                StringBuilder json = new StringBuilder();
+                json(json, root);
+                writer.write(json.append('\n').toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new GoError(CANNOT_WRITE_PROFILE, e, file);
+        }
+    }
+
+    /**
+     * Append the given node and its children to the given string builder as
+     * a JSON object.
+     * 
+     * @param json
+     *            The string builder.
+     * @param node
+     *            The node.
+     */
+    static void json(StringBuilder json, Node node) {
+        json.append("{\"name\":");
+        quote(json, node.name);
+        json.append(",\"count\":").append(node.getCount())
+            .append(",\"nanos\":").append(node.getNanos());
+        if (node.getBytes() != -1) {
+            json.append(",\"bytes\":").append(node.getBytes());
+        }
+        json.append(",\"children\":[");
+        String separator = "";
+        for (Node child : node.getChildren()) {
+            json.append(separator);
+            json(json, child);
+            separator = ",";
+        }
+        json.append("]}");
+    }
+
+    /**
+     * Append the given string to the given string builder as a JSON string.
+     * 
+     * @param json
+     *            The string builder.
+     * @param string
+     *            The string.
+     */
+    private static void quote(StringBuilder json, String string) {
+        json.append('"');
+        for (int i = 0, stop = string.length(); i < stop; i++) {
+            char ch = string.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                json.append('\\').append(ch);
+            } else if (ch < ' ') {
+                json.append(String.format("\\u%04x", (int) ch));
+            } else {
+                json.append(ch);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * A phase in the profile tree with the total time and allocations of
+     * every time it ran.
+     */
+    public final static class Node {
+        /** The phase name. */
+        public final String name;
+
+        /** The map of phase names to child phases. */
+        private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+        /** The number of times the phase ran. */
+        private long count;
+
+        /** The total time in nanoseconds. */
+        private long nanos;
+
+        /** The total bytes allocated or -1 if allocations are not counted. */
+        private long bytes = -1;
+
+        /**
+         * Create a node.
+         * 
+         * @param name
+         *            The phase name.
+         */
+        public Node(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the child phase with the given name, creating it if it does not
+         * exist.
+         * 
+         * @param name
+         *            The phase name.
+         * @return The child node.
+         */
+        public synchronized Node child(String name) {
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node(name);
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        /**
+         * Add a run of the phase that took the given time and allocated the
+         * given bytes.
+         * 
+         * @param nanos
+         *            The time in nanoseconds.
+         * @param bytes
+         *            The bytes allocated or -1 if allocations are not
+         *            counted.
+         */
+        public synchronized void add(long nanos, long bytes) {
+            this.count++;
+            this.nanos += nanos;
+            if (bytes != -1) {
+                this.bytes = this.bytes == -1 ? bytes : this.bytes + bytes;
+            }
+        }
+
+        /**
+         * Get the number of times the phase ran.
+         * 
+         * @return The count.
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the total time in nanoseconds.
+         * 
+         * @return The total time.
+         */
+        public synchronized long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Get the total bytes allocated.
+         * 
+         * @return The bytes allocated or -1 if allocations are not counted.
+         */
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Get a copy of the child phases in the order in which they first ran.
+         * 
+         * @return The child nodes.
+         */
+        public synchronized List<Node> getChildren() {
+            return new ArrayList<Node>(children.values());
+        }
+    }
+
+    /**
+     * A run of a phase that has begun.
+     */
+    public final static class Span {
+        /** The node of the phase. */
+        public final Node node;
+
+        /** The time in nanoseconds at which the phase began. */
+        private final long start;
+
+        /** The bytes allocated by the thread when the phase began or -1. */
+        private final long bytes;
+
+        /**
+         * Begin a run of the phase of the given node.
+         * 
+         * @param node
+         *            The node of the phase.
+         */
+        private Span(Node node) {
+            this.node = node;
+            this.bytes = allocated();
+            this.start = System.nanoTime();
+        }
+    }
+}
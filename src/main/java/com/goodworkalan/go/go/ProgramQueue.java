@@ -1,27 +1,34 @@
 package com.goodworkalan.go.go;
 
 import static com.goodworkalan.go.go.Executor.retry;
+import static com.goodworkalan.go.go.GoError.CANNOT_CREATE_OUTPUT_CODEC;
 import static com.goodworkalan.go.go.GoError.COMMAND_LINE_NO_ARGUMENTS;
 import static com.goodworkalan.go.go.GoError.INVALID_ARGUMENT;
 import static com.goodworkalan.go.go.GoError.INVALID_DEFINE_PARAMETER;
 import static com.goodworkalan.go.go.GoException.FUTURE_EXECUTION;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import com.goodworkalan.go.go.library.Artifact;
 import com.goodworkalan.go.go.library.Library;
+import com.goodworkalan.go.go.library.ListingCache;
+import com.goodworkalan.go.go.library.ProgramIndex;
+import com.goodworkalan.go.go.library.ResolutionCache;
+import com.goodworkalan.ilk.Ilk;
 
 /**
  * Queues pseudo-forked Jav-a-Go-Go programs for execution.
@@ -29,6 +36,29 @@ import com.goodworkalan.go.go.library.Library;
  * @author Alan Gutierrez
  */
 class ProgramQueue {
+    /**
+     * The time in milliseconds a resident daemon keeps a class loader that no
+     * running program references.
+     */
+    private final static long DAEMON_IDLE_TIMEOUT = 10 * 60 * 1000L;
+
+    /**
+     * The default maximum total size in bytes of the persistent output cache.
+     */
+    private final static long DEFAULT_OUTPUT_CACHE_SIZE = 16 * 1024 * 1024L;
+
+    /**
+     * The maximum number of entries in the command cache of a program run by
+     * a resident daemon.
+     */
+    private final static int DAEMON_COMMAND_CACHE_SIZE = 1024;
+
+    /**
+     * The default number of verbose and debug messages held for the
+     * diagnostics writer thread.
+     */
+    private final static int DEFAULT_DIAGNOSTICS_CAPACITY = 1024;
+
     /** The system verbosity. */
     private int verbosity = 0;
     
@@ -38,21 +68,91 @@ class ProgramQueue {
     /** The program arguments. */
     private final List<String> arguments;
     
-    /** The linked list of programs to run. */
-    private final LinkedList<FutureTask<Integer>> executions = new LinkedList<FutureTask<Integer>>();
-    
     /** The list of commands available in all libraries. */
     private final Map<List<String>, Artifact> programs;
 
-    /** A monitor to guard the programs list and thread count. */
-    private final Object monitor = new Object();
-    
-    /** The number of threads running. */
-    private int threadCount;
-    
+    /** The caches and settings shared by the executors of every program. */
+    private final ExecutorSupport support;
+
+    /**
+     * Whether the caches and settings were created by this program queue and
+     * should be released when it finishes.
+     */
+    private final boolean ownsSupport;
+
+    /** The daemon file if this program queue runs a daemon, or null. */
+    private File daemon;
+
+    /** Whether this program queue runs a batch of command lines. */
+    private boolean batch;
+
+    /** The file of batch command lines or null to read standard input. */
+    private File batchFile;
+
+    /** The number of batch command lines to run at once. */
+    private int batchThreads = 1;
+
+    /** Whether batch output is written in the order of the command lines. */
+    private boolean batchOrdered = true;
+
+    /** The profiler or null if profiling is disabled. */
+    private Profiler profiler;
+
+    /** The file the profile is written to as JSON or null to print it. */
+    private File profileFile;
+
+    /** The directory listings shared by the libraries of every program. */
+    private final ListingCache listings = new ListingCache();
+
+    /** The pseudo-forked programs whose errors have not yet been reaped. */
+    private final Queue<Fork<?>> forks = new ConcurrentLinkedQueue<Fork<?>>();
+
+    /** The scheduler that runs the program and its pseudo-forked programs. */
+    private final Scheduler scheduler;
+
+    /**
+     * The context class loader of the thread that created the program queue,
+     * used as the context class loader of every program.
+     */
+    private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
     // TODO Document.
     public ProgramQueue(List<File> libraries, String...arguments) {
+        this(null, libraries, arguments);
+    }
+
+    /**
+     * Create a program queue that shares the given caches and settings with
+     * other program queues, as the program queues of a daemon do. If the given
+     * support is null, the program queue creates caches and settings of its
+     * own according to the leading switches of the command line. When
+     * support is given, the switches that configure the shared caches and
+     * settings, the switches that change process wide state such as
+     * <code>--define</code>, and the daemon and batch switches are all invalid
+     * arguments, so that one program cannot change the settings of the
+     * programs it shares a daemon or a batch with. The verbosity, scheduler and
+     * profile switches apply to the program alone and are always accepted.
+     * 
+     * @param support
+     *            The shared caches and settings or null.
+     * @param libraries
+     *            The library path.
+     * @param arguments
+     *            The command line arguments.
+     */
+    ProgramQueue(ExecutorSupport support, List<File> libraries, String...arguments) {
         LinkedList<String> args = new LinkedList<String>(Arrays.asList(arguments));
+        int resolveThreads = 1;
+        boolean spawning = false;
+        long outputCacheSize = 0;
+        String outputCodec = SerializationCodec.class.getName();
+        int commandCacheSize = 0;
+        Boolean softCommandCache = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queueCapacity = 64;
+        int diagnosticsCapacity = 0;
+        boolean diagnosticsFields = false;
+        boolean compileDependencies = false;
         if (args.isEmpty()) {
             // FIXME Should be an error.
             throw new GoException(COMMAND_LINE_NO_ARGUMENTS);
@@ -63,7 +163,81 @@ class ProgramQueue {
                 verbosity++;
             } else if (argument.equals("--no-verbose")) {
                 verbosity--;
-            } else if (argument.startsWith("--define=")) {
+            } else if (support == null && argument.equals("--daemon")) {
+                daemon = Client.getDefaultDaemonFile();
+            } else if (support == null && argument.startsWith("--daemon=")) {
+                daemon = new File(argument.substring(argument.indexOf('=') + 1));
+            } else if (support == null && argument.equals("--batch")) {
+                batch = true;
+            } else if (support == null && argument.startsWith("--batch=")) {
+                String name = argument.substring(argument.indexOf('=') + 1);
+                batch = true;
+                batchFile = name.equals("-") ? null : new File(name);
+            } else if (argument.startsWith("--batch-threads=")) {
+                batchThreads = positive(argument);
+            } else if (argument.equals("--batch-ordered")) {
+                batchOrdered = true;
+            } else if (argument.equals("--no-batch-ordered")) {
+                batchOrdered = false;
+            } else if (support == null && argument.equals("--spawn-threads")) {
+                spawning = true;
+            } else if (support == null && argument.equals("--no-spawn-threads")) {
+                spawning = false;
+            } else if (support == null && argument.equals("--cache-outputs")) {
+                outputCacheSize = DEFAULT_OUTPUT_CACHE_SIZE;
+            } else if (support == null && argument.startsWith("--cache-outputs=")) {
+                try {
+                    outputCacheSize = Long.parseLong(argument.substring(argument.indexOf('=') + 1));
+                } catch (NumberFormatException e) {
+                    throw new GoError(INVALID_ARGUMENT, argument);
+                }
+                if (outputCacheSize < 1) {
+                    throw new GoError(INVALID_ARGUMENT, argument);
+                }
+            } else if (support == null && argument.equals("--no-cache-outputs")) {
+                outputCacheSize = 0;
+            } else if (support == null && argument.startsWith("--command-cache-size=")) {
+                commandCacheSize = positive(argument);
+            } else if (support == null && argument.equals("--soft-command-cache")) {
+                softCommandCache = true;
+            } else if (support == null && argument.equals("--no-soft-command-cache")) {
+                softCommandCache = false;
+            } else if (support == null && argument.startsWith("--output-codec=")) {
+                outputCodec = argument.substring(argument.indexOf('=') + 1);
+            } else if (argument.startsWith("--workers=")) {
+                workers = positive(argument);
+            } else if (argument.startsWith("--queue-capacity=")) {
+                queueCapacity = positive(argument);
+            } else if (support == null && argument.equals("--async-diagnostics")) {
+                diagnosticsCapacity = DEFAULT_DIAGNOSTICS_CAPACITY;
+            } else if (support == null && argument.startsWith("--async-diagnostics=")) {
+                diagnosticsCapacity = positive(argument);
+            } else if (support == null && argument.equals("--no-async-diagnostics")) {
+                diagnosticsCapacity = 0;
+            } else if (support == null && argument.startsWith("--diagnostics-format=")) {
+                String format = argument.substring(argument.indexOf('=') + 1);
+                if (format.equals("text")) {
+                    diagnosticsFields = false;
+                } else if (format.equals("fields")) {
+                    diagnosticsFields = true;
+                } else {
+                    throw new GoError(INVALID_ARGUMENT, argument);
+                }
+            } else if (argument.equals("--profile")) {
+                profiler = new Profiler();
+                profileFile = null;
+            } else if (argument.startsWith("--profile=")) {
+                profiler = new Profiler();
+                profileFile = new File(argument.substring(argument.indexOf('=') + 1));
+            } else if (argument.equals("--no-profile")) {
+                profiler = null;
+            } else if (support == null && argument.equals("--compile-dependencies")) {
+                compileDependencies = true;
+            } else if (support == null && argument.equals("--no-compile-dependencies")) {
+                compileDependencies = false;
+            } else if (support == null && argument.startsWith("--resolve-threads=")) {
+                resolveThreads = positive(argument);
+            } else if (support == null && argument.startsWith("--define=")) {
                 String define = argument.substring(argument.indexOf('=') + 1);
                 String[] definition = define.split(":", 2);
                 if (definition.length != 2) {
@@ -74,44 +248,19 @@ class ProgramQueue {
                 throw new GoError(INVALID_ARGUMENT, argument);
             }
         }
-        Map<List<String>, Artifact> commands = new HashMap<List<String>, Artifact>();
+        List<ProgramIndex> indexes = new ArrayList<ProgramIndex>();
+        Profiler.Span span = Profiler.begin(profiler == null ? null : profiler.getRoot(), "scan");
         for (File library : libraries) {
-            File gogo = new File(library, "go-go");
-            if (!(gogo.isDirectory() && gogo.canRead())) {
-                continue;
-            }
-            for (File directory : gogo.listFiles()) {
-                if (directory.isDirectory()) {
-                    for (File file : directory.listFiles()) {
-                        if (file.getName().endsWith(".go")) {
-                            try {
-                                BufferedReader configuration = new BufferedReader(new FileReader(file));
-                                String line;
-                                while ((line = configuration.readLine()) != null) {
-                                    line = line.trim();
-                                    if (line.length() == 0 || line.startsWith("#")) {
-                                        continue;
-                                    }
-                                    String[] record = line.split("\\s+", 2);
-                                    Artifact artifact = new Artifact(record[0]);
-                                    if (record.length > 1) {
-                                        List<List<String>> found = new ArrayList<List<String>>(); 
-                                        for (String path : record[1].split(",")) {
-                                            List<String> command = Arrays.asList(path.trim().split("\\s+"));
-                                            commands.put(command, artifact);
-                                            found.add(command);
-                                        }
-                                        debug(new InputOutput(), "programsFound", artifact, found);
-                                    }
-                                }
-                            } catch (IOException e) {
-                                throw new GoException(0, e);
-                            }
-                        }
-                    }
+            ProgramIndex index = ProgramIndex.open(library);
+            if (index != null) {
+                indexes.add(index);
+                if (verbosity > 1) {
+                    debugPrograms(index);
                 }
             }
         }
+        Profiler.end(span);
+        Programs commands = new Programs(indexes);
     
         commands.put(Arrays.asList("boot"), new Artifact("com.github.bigeasy.go-go/go-go/0.1.4"));
         commands.put(Arrays.asList("boot", "hello"), new Artifact("com.github.bigeasy.go-go/go-go/0.1.4"));
@@ -119,9 +268,112 @@ class ProgramQueue {
     
         this.libraries = libraries;
         this.arguments = new ArrayList<String>(args);
+        this.scheduler = new Scheduler(workers, queueCapacity, contextClassLoader);
         this.programs = commands;
+        if (support == null) {
+            ResolutionCache resolutions = libraries.isEmpty() ? null : new ResolutionCache(new File(libraries.get(0), "go-go/resolutions"));
+            OutputStore outputs = null;
+            if (outputCacheSize != 0 && !libraries.isEmpty()) {
+                outputs = new OutputStore(new File(libraries.get(0), "go-go/outputs"), outputCacheSize, newOutputCodec(outputCodec));
+            }
+            if (commandCacheSize == 0) {
+                commandCacheSize = daemon == null ? Integer.MAX_VALUE : DAEMON_COMMAND_CACHE_SIZE;
+            }
+            if (softCommandCache == null) {
+                softCommandCache = daemon != null;
+            }
+            this.support = new ExecutorSupport(resolutions, resolveThreads == 1 ? null : newResolvers(resolveThreads), new ClassLoaderPool(daemon == null ? Long.MAX_VALUE : DAEMON_IDLE_TIMEOUT), spawning, outputs, commandCacheSize, softCommandCache);
+            if (batch) {
+                this.support.shareCommandCache();
+            }
+            if (diagnosticsCapacity != 0) {
+                this.support.setDiagnostics(new Diagnostics(diagnosticsCapacity, diagnosticsFields));
+            }
+            this.support.setCompiledDirectory(compileDependencies && !libraries.isEmpty() ? new File(libraries.get(0), "go-go/dependencies") : null);
+            this.ownsSupport = true;
+        } else {
+            this.support = support;
+            this.ownsSupport = false;
+        }
+    }
+
+    /**
+     * Parse the value of the given switch as a positive integer.
+     * 
+     * @param argument
+     *            The switch.
+     * @return The integer value.
+     * @exception GoError
+     *                If the value is not a positive integer.
+     */
+    private static int positive(String argument) {
+        int value;
+        try {
+            value = Integer.parseInt(argument.substring(argument.indexOf('=') + 1));
+        } catch (NumberFormatException e) {
+            throw new GoError(INVALID_ARGUMENT, argument);
+        }
+        if (value < 1) {
+            throw new GoError(INVALID_ARGUMENT, argument);
+        }
+        return value;
+    }
+
+    /**
+     * Create an instance of the output codec with the given class name, loaded
+     * by the class loader of Jav-a-Go-Go.
+     * 
+     * @param className
+     *            The output codec class name.
+     * @return A new output codec.
+     */
+    private static OutputCodec newOutputCodec(String className) {
+        try {
+            return Class.forName(className).asSubclass(OutputCodec.class).newInstance();
+        } catch (Exception e) {
+            throw new GoError(CANNOT_CREATE_OUTPUT_CODEC, e, className);
+        }
+    }
+
+    /**
+     * Create an executor service with the given number of daemon threads to
+     * expand path parts concurrently.
+     * 
+     * @param threads
+     *            The number of threads.
+     * @return An executor service.
+     */
+    private static ExecutorService newResolvers(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "go-go-resolver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Print the programs found in the given program index grouped by the
+     * artifact that provides them.
+     * 
+     * @param index
+     *            The program index.
+     */
+    private void debugPrograms(ProgramIndex index) {
+        Map<Artifact, List<List<String>>> found = new LinkedHashMap<Artifact, List<List<String>>>();
+        for (Map.Entry<List<String>, Artifact> entry : index.getPrograms().entrySet()) {
+            List<List<String>> commands = found.get(entry.getValue());
+            if (commands == null) {
+                commands = new ArrayList<List<String>>();
+                found.put(entry.getValue(), commands);
+            }
+            commands.add(entry.getKey());
+        }
+        for (Map.Entry<Artifact, List<List<String>>> entry : found.entrySet()) {
+            debug(new InputOutput(), "programsFound", entry.getKey(), entry.getValue());
+        }
     }
-    
 
     /**
      * Print the debug output if the verbose argument has been specified twice.
@@ -135,7 +387,7 @@ class ProgramQueue {
      */
     private void debug(InputOutput io, String message, Object...arguments) {
         if (verbosity > 1) {
-            Environment.error(io, Go.class, message, arguments);
+            report(io, 2, message, arguments);
         }
     }
 
@@ -151,109 +403,196 @@ class ProgramQueue {
      */
     private void verbose(InputOutput io, String message, Object...arguments) {
         if (verbosity > 0) {
-            Environment.error(io, Go.class, message, arguments);
+            report(io, 1, message, arguments);
         }
     }
 
-    // TODO Document.
-    public int fork(InputOutput io, List<String> arguments) {
-        FutureTask<Integer> future = null;
-        synchronized (monitor) {
-            future = addProgram(io, arguments);
-            monitor.notify();
+    /**
+     * Write the given verbose or debug message through the diagnostics writer
+     * thread if there is one, otherwise write it immediately.
+     * 
+     * @param io
+     *            The InputOutput structure.
+     * @param level
+     *            The verbosity level of the message.
+     * @param message
+     *            The message key.
+     * @param arguments
+     *            The message format arguments.
+     */
+    private void report(InputOutput io, int level, String message, Object...arguments) {
+        Diagnostics diagnostics = support.getDiagnostics();
+        if (diagnostics == null) {
+            Environment.error(io, Go.class, message, arguments);
+        } else {
+            diagnostics.post(io, null, level, Go.class, message, arguments);
         }
-        try {
-            return retry(future);
-        } catch (ExecutionException e) {
-            throw new GoException(FUTURE_EXECUTION, e);
+    }
+
+    /**
+     * Run the program specified by the given arguments on the scheduler with
+     * the given priority and return a handle to it that can be joined to
+     * obtain its exit code and outcome. The forked program runs in an executor
+     * of its own with the context class loader of the program queue. The
+     * program queue waits for outstanding forks before it returns, and reports
+     * the error of any fork that failed without being joined.
+     * 
+     * @param <T>
+     *            The type of the outcome.
+     * @param priority
+     *            The priority, higher runs sooner.
+     * @param outcomeType
+     *            The expected outcome type or null.
+     * @param io
+     *            The I/O bouquet of the forked program.
+     * @param arguments
+     *            The command line arguments.
+     * @return A handle to the forked program.
+     */
+    public <T> Fork<T> fork(int priority, final Ilk<T> outcomeType, final InputOutput io, final List<String> arguments) {
+        verbose(io, "fork", arguments);
+        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+            public Ilk.Box call() {
+                Thread thread = Thread.currentThread();
+                ClassLoader previous = thread.getContextClassLoader();
+                thread.setContextClassLoader(contextClassLoader);
+                try {
+                    return execute(io, arguments, outcomeType);
+                } finally {
+                    thread.setContextClassLoader(previous);
+                }
+            }
+        });
+        scheduler.submit(future, priority);
+        Fork<T> fork = new Fork<T>(future, scheduler, outcomeType, io, verbosity, support.getDiagnostics());
+        forks.add(fork);
+        return fork;
+    }
+
+    /**
+     * Report the errors raised by forked programs that were never joined and
+     * return the exit code of the first of them, or zero if there were none.
+     * 
+     * @return The exit code of the first failed unjoined fork or zero.
+     */
+    private int reap() {
+        int code = 0;
+        Fork<?> fork;
+        while ((fork = forks.poll()) != null) {
+            int exit = fork.reap();
+            if (code == 0) {
+                code = exit;
+            }
         }
+        return code;
     }
 
     /**
-     * Run the given program and return zero if the execution is successful.
-     * <p>
-     * Because method will only ever return zero, the program thread doesn't
-     * really need to be implemented as a future. We could create a
-     * <code>Runnable</code> that catches an exception and we can inspect that
-     * result to determine if we need to throw an exception. All this would be
-     * duplicating the exception propagation code of <code>FutureTask</code> and
-     * we'd have to add a count down latch, so here we're using
-     * <code>FutureTask</code> for its exception propagation code and as a count
-     * down latch, since it would be cumbersome to write our own.
+     * Run the program specified by the given arguments in a new executor,
+     * reporting the start and stop of the program and the command cache
+     * statistics at verbose level.
      * 
      * @param io
-     *            The input/output bouquet.
+     *            The I/O bouquet.
      * @param arguments
      *            The command line arguments.
-     * @return Always returns zero, not sure why it is returning anything.
+     * @param outcomeType
+     *            The expected outcome type or null.
+     * @return The boxed outcome or null.
      */
-    private int runProgram(InputOutput io, List<String> arguments) {
-        Executor executor = new Executor(new Library(libraries.toArray(new File[libraries.size()])), programs,  verbosity);
+    private Ilk.Box execute(InputOutput io, List<String> arguments, Ilk<?> outcomeType) {
+        Executor executor = new Executor(support, this, new Library(libraries.toArray(new File[libraries.size()]), listings, support.getCompiledDirectory()), programs,  verbosity);
         verbose(io, "start", arguments);
         long start = System.currentTimeMillis();
+        Profiler.Span span = null;
+        if (profiler != null) {
+            span = Profiler.begin(profiler.getRoot(), "program " + arguments);
+            executor.setProfile(span.node);
+        }
         try {
-            executor.start(io, arguments, null);
+            return executor.start(io, arguments, outcomeType);
         } finally {
+            Profiler.end(span);
+            CommandCache cache = executor.getCommandCache();
+            verbose(io, "commandCache", cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.size());
             verbose(io, "stop",
                     System.currentTimeMillis() - start,
                     (double) Runtime.getRuntime().totalMemory() / 1024 / 1024,
                     (double) Runtime.getRuntime().freeMemory() / 1024 / 1024);
-            synchronized (monitor) {
-                threadCount--;
-                monitor.notify();
-            }
         }
-        return 0;
     }
-    
-    // TODO Document.
-    private FutureTask<Integer> addProgram(final InputOutput io, final List<String> arguments) {
+
+    /**
+     * Wait for the verbose and debug messages posted to the diagnostics writer
+     * thread to be written, so that they appear before any error that is
+     * reported after them.
+     */
+    private void flush() {
+        Diagnostics diagnostics = support.getDiagnostics();
+        if (diagnostics != null) {
+            diagnostics.flush();
+        }
+    }
+
+    /**
+     * Run the program given on the command line on a worker of the scheduler,
+     * wait for it and every program it forked to finish, then shut down the
+     * scheduler and report its statistics at verbose level. Errors raised by
+     * forks that were never joined are reported, and if the program itself
+     * succeeded, the exit code of the first such fork is returned.
+     * 
+     * @param io
+     *            The input/output bouquet.
+     * @return The exit code.
+     */
+    private int start(final InputOutput io) {
         FutureTask<Integer> future = new FutureTask<Integer>(new Callable<Integer>() {
             public Integer call() {
-                return runProgram(io, arguments);
+                execute(io, arguments, null);
+                return 0;
             }
         });
-        executions.add(future);
-        return future;
-    }
-
-    // TODO Document.
-    private int start(InputOutput io) {
-        FutureTask<Integer> future = addProgram(io, arguments);
-        loop();
-        int code;
+        scheduler.submit(future, 0);
+        scheduler.awaitIdle();
+        scheduler.shutdown();
+        flush();
+        int unjoined = reap();
+        if (profiler != null) {
+            if (profileFile == null) {
+                profiler.print(io);
+            } else {
+                profiler.write(profileFile);
+            }
+        }
+        long scheduled = scheduler.getScheduled();
+        verbose(io, "scheduler", scheduled, scheduler.getMaximumDepth(), scheduled == 0 ? 0.0 : scheduler.getTotalWait() / scheduled);
         try {
-            code = retry(future);
+            int code = retry(future);
+            return code == 0 ? unjoined : code;
         } catch (ExecutionException e) {
             // FIXME Unpack here?
             throw new GoException(FUTURE_EXECUTION, e);
         }
-        return code;
     }
 
     // TODO Document.
     public int run(InputOutput io) {
         try {
+            if (daemon != null) {
+                return new Daemon(libraries, support, daemon, verbosity).serve(io);
+            }
+            if (batch) {
+                return new Batch(libraries, support, batchFile, arguments, batchThreads, batchOrdered, verbosity).run(io);
+            }
             return start(io);
         } catch (GoException e) {
+            flush();
             return e.unwrap(io, verbosity);
-        }
-    }
-
-    // TODO Document.
-    private void loop() {
-        synchronized (monitor) {
-            while (threadCount > 0 || !executions.isEmpty()) {
-                if (!executions.isEmpty()) {
-                    threadCount++;
-                    new Thread(executions.removeFirst()).start();
-                }
-                retry(new Callable<Object>() {
-                    public Object call() throws InterruptedException {
-                        monitor.wait();
-                        return null;
-                    }
-                });
+        } finally {
+            scheduler.shutdown();
+            flush();
+            if (ownsSupport) {
+                support.shutdown();
             }
         }
     }
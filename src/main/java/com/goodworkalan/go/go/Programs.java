@@ -0,0 +1,104 @@
+package com.goodworkalan.go.go;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.goodworkalan.go.go.library.Artifact;
+import com.goodworkalan.go.go.library.ProgramIndex;
+
+/**
+ * A map of command paths to the artifacts that provide them backed by the
+ * program indexes of the libraries in a library path.
+ * <p>
+ * Lookups probe the program indexes directly, last library first, so that a
+ * program installed in a library later in the library path overrides a program
+ * with the same command path installed earlier in the path. The built in
+ * programs that are added with {@link #put(List, Artifact) put} override all of
+ * the programs in the libraries.
+ *
+ * @author Alan Gutierrez
+ */
+class Programs extends AbstractMap<List<String>, Artifact> {
+    /** The program indexes in library path order. */
+    private final List<ProgramIndex> indexes;
+
+    /** The built in programs. */
+    private final Map<List<String>, Artifact> builtins = new HashMap<List<String>, Artifact>();
+
+    /**
+     * Create a program map backed by the given program indexes.
+     *
+     * @param indexes
+     *            The program indexes in library path order.
+     */
+    public Programs(List<ProgramIndex> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Add a built in program that will override any program with the same
+     * command path in the libraries.
+     *
+     * @param command
+     *            The command path.
+     * @param artifact
+     *            The artifact that provides the program.
+     * @return The previous built in program artifact or null.
+     */
+    @Override
+    public Artifact put(List<String> command, Artifact artifact) {
+        return builtins.put(command, artifact);
+    }
+
+    /**
+     * Get the artifact that provides the program with the given command path
+     * or null if there is no such program.
+     *
+     * @param command
+     *            The command path.
+     * @return The artifact that provides the program or null.
+     */
+    @Override
+    public Artifact get(Object command) {
+        Artifact artifact = builtins.get(command);
+        if (artifact == null && command instanceof List<?>) {
+            for (int i = indexes.size() - 1; artifact == null && i != -1; i--) {
+                artifact = indexes.get(i).get((List<?>) command);
+            }
+        }
+        return artifact;
+    }
+
+    /**
+     * Return true if there is a program with the given command path.
+     *
+     * @param command
+     *            The command path.
+     * @return True if there is a program with the given command path.
+     */
+    @Override
+    public boolean containsKey(Object command) {
+        return get(command) != null;
+    }
+
+    /**
+     * Get the set of all program entries. This decodes every program index and
+     * is meant for diagnostics, not for program lookup.
+     *
+     * @return The set of all program entries.
+     */
+    @Override
+    public Set<Map.Entry<List<String>, Artifact>> entrySet() {
+        Map<List<String>, Artifact> programs = new LinkedHashMap<List<String>, Artifact>();
+        for (ProgramIndex index : indexes) {
+            programs.putAll(index.getPrograms());
+        }
+        programs.putAll(builtins);
+        return Collections.unmodifiableMap(programs).entrySet();
+    }
+}
@@ -0,0 +1,298 @@
+package com.goodworkalan.go.go;
+
+import static com.goodworkalan.go.go.Executor.retry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the programs of a program queue on a bounded number of worker threads.
+ * <p>
+ * Programs are run in order of priority, highest first, and in the order in
+ * which they were submitted within a priority. Worker threads are started as
+ * programs are submitted, whenever there are more programs waiting than idle
+ * workers, up to the maximum worker count, and exit after they have been idle
+ * for a while. Workers are daemon threads, so that idle workers do not keep
+ * the virtual machine from exiting once the programs have finished. When the number of programs waiting for a
+ * worker reaches the capacity of the scheduler, a submitted program is run on
+ * the submitting thread instead, so that a program that forks faster than the
+ * workers can run its forks is slowed to match. A program submitted after the
+ * scheduler is shut down is also run on the submitting thread.
+ * <p>
+ * The scheduler counts the programs scheduled, the deepest the queue has
+ * been, and the total time programs waited for a worker.
+ *
+ * @author Alan Gutierrez
+ */
+class Scheduler {
+    /** The time in seconds an idle worker waits for a program before exiting. */
+    private static final long KEEP_ALIVE = 10;
+
+    /** The maximum number of worker threads. */
+    private final int maximumWorkers;
+
+    /** The maximum number of programs waiting for a worker. */
+    private final int capacity;
+
+    /** The context class loader of the worker threads. */
+    private final ClassLoader contextClassLoader;
+
+    /** The programs waiting for a worker. */
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<Task>();
+
+    /** The sequence number of the next task, to order tasks of a priority. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** The number of programs queued or running on a worker. */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /** The number of workers waiting for a program. */
+    private final AtomicInteger idle = new AtomicInteger();
+
+    /** The number of programs scheduled on a worker. */
+    private final AtomicLong scheduled = new AtomicLong();
+
+    /** The deepest the queue has been. */
+    private final AtomicInteger maximumDepth = new AtomicInteger();
+
+    /** The total time in nanoseconds programs waited for a worker. */
+    private final AtomicLong totalWait = new AtomicLong();
+
+    /** The number of worker threads running, guarded by this scheduler. */
+    private int workers;
+
+    /** Whether the scheduler has been shut down. */
+    private volatile boolean shutdown;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param maximumWorkers
+     *            The maximum number of worker threads.
+     * @param capacity
+     *            The maximum number of programs waiting for a worker.
+     * @param contextClassLoader
+     *            The context class loader of the worker threads.
+     */
+    public Scheduler(int maximumWorkers, int capacity, ClassLoader contextClassLoader) {
+        this.maximumWorkers = maximumWorkers;
+        this.capacity = capacity;
+        this.contextClassLoader = contextClassLoader;
+    }
+
+    /**
+     * Run the given program on a worker thread with the given priority, or on
+     * this thread if the queue is full or the scheduler is shut down.
+     *
+     * @param program
+     *            The program.
+     * @param priority
+     *            The priority, higher runs sooner.
+     */
+    public void submit(Runnable program, int priority) {
+        if (shutdown || queue.size() >= capacity) {
+            program.run();
+            return;
+        }
+        outstanding.incrementAndGet();
+        scheduled.incrementAndGet();
+        queue.add(new Task(program, priority, sequence.getAndIncrement()));
+        int depth = queue.size();
+        for (;;) {
+            int deepest = maximumDepth.get();
+            if (depth <= deepest || maximumDepth.compareAndSet(deepest, depth)) {
+                break;
+            }
+        }
+        startWorker();
+    }
+
+    /**
+     * Start workers while there are more programs waiting than idle workers
+     * to run them and the maximum number of workers is not yet running. A
+     * started worker counts as idle from the moment it is started, so that
+     * programs submitted before it first polls the queue do not start
+     * further workers needlessly.
+     */
+    private synchronized void startWorker() {
+        while (queue.size() > idle.get() && workers < maximumWorkers) {
+            workers++;
+            idle.incrementAndGet();
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, "go-go-worker");
+            thread.setContextClassLoader(contextClassLoader);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Run programs from the queue until the queue has been empty for the keep
+     * alive time. The worker is counted as idle upon entry.
+     */
+    private void work() {
+        for (;;) {
+            Task task;
+            try {
+                task = queue.poll(KEEP_ALIVE, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                task = null;
+            } finally {
+                idle.decrementAndGet();
+            }
+            if (task == null) {
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        workers--;
+                        return;
+                    }
+                }
+                idle.incrementAndGet();
+                continue;
+            }
+            totalWait.addAndGet(System.nanoTime() - task.submitted);
+            try {
+                task.program.run();
+            } finally {
+                idle.incrementAndGet();
+                complete();
+            }
+        }
+    }
+
+    /**
+     * Note that an outstanding program has finished or has been removed from
+     * the queue, waking the threads waiting for the scheduler to become idle
+     * if it was the last outstanding program.
+     */
+    private void complete() {
+        if (outstanding.decrementAndGet() == 0) {
+            synchronized (outstanding) {
+                outstanding.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Remove the given program from the queue if it has not yet been started
+     * by a worker.
+     *
+     * @param program
+     *            The program.
+     * @return True if the program was removed and has not been run.
+     */
+    public boolean remove(Runnable program) {
+        for (Task task : queue) {
+            if (task.program == program && queue.remove(task)) {
+                complete();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait until every program submitted to a worker has finished, including
+     * the programs those programs submitted.
+     */
+    public void awaitIdle() {
+        retry(new Callable<Object>() {
+            public Object call() throws InterruptedException {
+                synchronized (outstanding) {
+                    while (outstanding.get() != 0) {
+                        outstanding.wait();
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Stop scheduling programs on workers. Programs already queued are still
+     * run, and programs submitted afterward are run on the submitting thread.
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Get the number of programs scheduled on a worker.
+     *
+     * @return The number of programs scheduled.
+     */
+    public long getScheduled() {
+        return scheduled.get();
+    }
+
+    /**
+     * Get the deepest the queue of programs waiting for a worker has been.
+     *
+     * @return The maximum queue depth.
+     */
+    public int getMaximumDepth() {
+        return maximumDepth.get();
+    }
+
+    /**
+     * Get the total time in milliseconds that programs waited for a worker.
+     *
+     * @return The total wait time in milliseconds.
+     */
+    public double getTotalWait() {
+        return totalWait.get() / 1000000.0;
+    }
+
+    /**
+     * A program waiting for a worker.
+     */
+    private final static class Task implements Comparable<Task> {
+        /** The program. */
+        public final Runnable program;
+
+        /** The priority, higher runs sooner. */
+        public final int priority;
+
+        /** The submission sequence number. */
+        public final long sequence;
+
+        /** The time in nanoseconds at which the program was submitted. */
+        public final long submitted = System.nanoTime();
+
+        /**
+         * Create a task.
+         *
+         * @param program
+         *            The program.
+         * @param priority
+         *            The priority, higher runs sooner.
+         * @param sequence
+         *            The submission sequence number.
+         */
+        public Task(Runnable program, int priority, long sequence) {
+            this.program = program;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Order tasks by descending priority and then by submission.
+         *
+         * @param other
+         *            The task to compare to.
+         * @return The order of this task relative to the other task.
+         */
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.goodworkalan.go.go;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * The default output codec that uses Java serialization.
+ * <p>
+ * Only outputs that are serializable and that were boxed with their own class,
+ * rather than with a super type token that carries type parameters, can be
+ * encoded, since the type of the box is recreated from the class of the
+ * decoded object.
+ *
+ * @author Alan Gutierrez
+ */
+public class SerializationCodec implements OutputCodec {
+    /**
+     * Encode the given boxed outputs, returning null if any output is null,
+     * not serializable, or boxed with a type other than its own class.
+     *
+     * @param outputs
+     *            The boxed outputs.
+     * @return The encoded outputs or null.
+     */
+    public byte[] encode(List<Ilk.Box> outputs) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeInt(outputs.size());
+            for (Ilk.Box box : outputs) {
+                Object object = box.cast(new Ilk<Object>(Object.class));
+                if (object == null || !box.key.equals(ilk(object.getClass()).key)) {
+                    return null;
+                }
+                out.writeObject(object);
+            }
+            out.close();
+        } catch (IOException e) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode the given bytes into boxed outputs, returning null if an output
+     * class cannot be loaded or the bytes cannot be read.
+     *
+     * @param bytes
+     *            The encoded outputs.
+     * @param classLoader
+     *            The class loader used to load the output classes.
+     * @return The boxed outputs or null.
+     */
+    public List<Ilk.Box> decode(byte[] bytes, ClassLoader classLoader) {
+        try {
+            ObjectInputStream in = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes), classLoader);
+            List<Ilk.Box> outputs = new ArrayList<Ilk.Box>();
+            for (int i = 0, stop = in.readInt(); i < stop; i++) {
+                Object object = in.readObject();
+                outputs.add(ilk(object.getClass()).box(object));
+            }
+            return outputs;
+        } catch (IOException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a super type token for the given class.
+     *
+     * @param type
+     *            The class.
+     * @return A super type token for the class.
+     */
+    @SuppressWarnings("unchecked")
+    private static Ilk<Object> ilk(Class<?> type) {
+        return new Ilk<Object>((Class<Object>) type);
+    }
+
+    /**
+     * An object input stream that resolves classes with a given class loader.
+     */
+    private final static class ClassLoaderObjectInputStream extends ObjectInputStream {
+        /** The class loader. */
+        private final ClassLoader classLoader;
+
+        /**
+         * Create an object input stream that reads from the given input stream
+         * and resolves classes with the given class loader.
+         *
+         * @param in
+         *            The input stream.
+         * @param classLoader
+         *            The class loader.
+         * @throws IOException
+         *             If an I/O error occurs reading the stream header.
+         */
+        public ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        /**
+         * Load the class described by the given descriptor with the class
+         * loader of this stream.
+         *
+         * @param desc
+         *            The class descriptor.
+         * @return The class.
+         * @throws ClassNotFoundException
+         *             If the class cannot be found.
+         * @throws IOException
+         *             If an I/O error occurs.
+         */
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.goodworkalan.go.go;
+
+import static com.goodworkalan.go.go.GoException.COMMANDABLE_RESOURCE_IO;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the commandable class names listed in the commandable services
+ * file of each jar file on a class path.
+ * <p>
+ * Finding the commandable services files with
+ * <code>ClassLoader.getResources</code> searches every jar in the class loader
+ * chain each time the class path is extended, only to skip the services files
+ * that were already read. With the index, an executor that extends the class
+ * path reads the services files of only the jars and directories it adds. The
+ * entry for a jar is read once and kept for as long as the length and
+ * modification time of the jar are unchanged, and the index is shared by every
+ * executor of a program queue, or of a daemon. Directories are read each time
+ * they are added, since the modification time of a directory does not change
+ * when a file within it changes.
+ *
+ * @author Alan Gutierrez
+ */
+class ServicesIndex {
+    /** The path of the commandable services file. */
+    final static String COMMANDABLE = "META-INF/services/com.goodworkalan.go.go.Commandable";
+
+    /** The map of jar files to their indexed commandable class names. */
+    private final ConcurrentMap<File, Entry> entries = new ConcurrentHashMap<File, Entry>();
+
+    /**
+     * Get the URL of the commandable services file in the given jar or
+     * directory, the same URL a class loader would return for it.
+     *
+     * @param file
+     *            The jar file or directory.
+     * @return The URL of the services file.
+     */
+    public static URL getURL(File file) {
+        try {
+            if (file.isDirectory()) {
+                return new File(file, COMMANDABLE).toURI().toURL();
+            }
+            return new URL("jar:" + file.toURI().toURL() + "!/" + COMMANDABLE);
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the commandable class names listed in the commandable services file
+     * of the given jar or directory.
+     *
+     * @param file
+     *            The jar file or directory.
+     * @return The list of class names or null if there is no commandable
+     *         services file.
+     * @exception GoException
+     *                If the services file cannot be read.
+     */
+    public List<String> getCommandables(File file) {
+        if (file.isDirectory()) {
+            File services = new File(file, COMMANDABLE);
+            if (!services.isFile()) {
+                return null;
+            }
+            try {
+                return read(new FileInputStream(services));
+            } catch (IOException e) {
+                throw new GoException(COMMANDABLE_RESOURCE_IO, e, services);
+            }
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Entry entry = entries.get(file);
+        if (entry == null || entry.lastModified != lastModified || entry.length != length) {
+            try {
+                ZipFile zip = new ZipFile(file);
+                try {
+                    ZipEntry services = zip.getEntry(COMMANDABLE);
+                    entry = new Entry(lastModified, length, services == null ? null : read(zip.getInputStream(services)));
+                } finally {
+                    zip.close();
+                }
+            } catch (IOException e) {
+                throw new GoException(COMMANDABLE_RESOURCE_IO, e, getURL(file));
+            }
+            entries.put(file, entry);
+        }
+        return entry.classNames;
+    }
+
+    /**
+     * Read the class names from the given services file stream, skipping
+     * blank lines, and close the stream.
+     *
+     * @param in
+     *            The services file stream.
+     * @return The list of class names.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    static List<String> read(InputStream in) throws IOException {
+        List<String> classNames = new ArrayList<String>();
+        try {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in));
+            String line;
+            while ((line = lines.readLine()) != null) {
+                line = line.trim();
+                if (line.length() != 0) {
+                    classNames.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return Collections.unmodifiableList(classNames);
+    }
+
+    /**
+     * The indexed commandable class names of a jar file.
+     */
+    private final static class Entry {
+        /** The modification time of the jar file when it was read. */
+        public final long lastModified;
+
+        /** The length of the jar file when it was read. */
+        public final long length;
+
+        /** The list of class names or null if there is no services file. */
+        public final List<String> classNames;
+
+        /**
+         * Create an entry.
+         *
+         * @param lastModified
+         *            The modification time of the jar file when it was read.
+         * @param length
+         *            The length of the jar file when it was read.
+         * @param classNames
+         *            The list of class names or null if there is no services
+         *            file.
+         */
+        public Entry(long lastModified, long length, List<String> classNames) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.classNames = classNames;
+        }
+    }
+}
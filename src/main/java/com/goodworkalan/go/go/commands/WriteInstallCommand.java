@@ -10,17 +10,21 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import com.goodworkalan.go.go.CommandManifest;
 import com.goodworkalan.go.go.Commandable;
 import com.goodworkalan.go.go.Environment;
 import com.goodworkalan.go.go.GoError;
 import com.goodworkalan.go.go.MetaCommand;
 import com.goodworkalan.go.go.library.Artifact;
 import com.goodworkalan.go.go.library.ArtifactPart;
+import com.goodworkalan.go.go.library.ProgramIndex;
 import com.goodworkalan.ilk.Ilk;
 
 // TODO Document.
@@ -50,7 +54,10 @@ public class WriteInstallCommand implements Commandable {
     public void record(Environment env, ArtifactPart artifactPart) {
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         Artifact artifact = artifactPart.getArtifact();
-        List<String> commands = readCommands(env, classLoader, new File(artifactPart.getLibraryDirectory(), artifact.getPath("jar")));
+        File jar = new File(artifactPart.getLibraryDirectory(), artifact.getPath("jar"));
+        Map<Class<? extends Commandable>, MetaCommand> metaCommands = new LinkedHashMap<Class<? extends Commandable>, MetaCommand>();
+        List<String> commands = readCommands(env, classLoader, jar, metaCommands);
+        CommandManifest.write(jar, metaCommands);
         File gogo = new File(env.library.getDirectories()[0], "go-go");
         File group = new File(gogo, artifact.getGroup());
         if (!group.isDirectory() && !group.mkdirs()) {
@@ -65,6 +72,7 @@ public class WriteInstallCommand implements Commandable {
         }
         File configuration = new File(group, artifact.getName() + ".go");
         writeCommands(line.toString(), configuration);
+        ProgramIndex.invalidate(env.library.getDirectories()[0]);
         env.io.out.println(line);
     }
 
@@ -82,7 +90,9 @@ public class WriteInstallCommand implements Commandable {
 
     /**
      * Read the commandable classes provided by the given jar file and use the
-     * meta command information to create a list of available command paths.
+     * meta command information to create a list of available command paths,
+     * adding the meta command information of each commandable class to the
+     * given map for the command manifest.
      * 
      * @param env
      *            The environment.
@@ -90,9 +100,12 @@ public class WriteInstallCommand implements Commandable {
      *            The class loader to use to load commandable classes.
      * @param jar
      *            The jar file to read.
+     * @param metaCommands
+     *            The map of the commandable classes of the jar to their meta
+     *            command information.
      * @return The list of available command paths.
      */
-    static List<String> readCommands(Environment env, ClassLoader classLoader, File jar) {
+    static List<String> readCommands(Environment env, ClassLoader classLoader, File jar, Map<Class<? extends Commandable>, MetaCommand> metaCommands) {
         List<String> commands = new ArrayList<String>();
         try {
             ZipFile zip = new ZipFile(jar);
@@ -105,6 +118,7 @@ public class WriteInstallCommand implements Commandable {
                     if (line.length() != 0) {
                         Class<? extends Commandable> commandableClass = loadCommandable(classLoader, line);
                         MetaCommand responder = env.getMetaCommand(commandableClass);
+                        metaCommands.put(commandableClass, responder);
                         LinkedList<String> path = new LinkedList<String>();
                         for (;;) {
                             path.addFirst(responder.getName());
@@ -6,14 +6,21 @@ import static com.goodworkalan.go.go.GoException.INVALID_ARTIFACTS_LINE_START;
 import static com.goodworkalan.go.go.GoException.INVALID_INCLUDE;
 import static com.goodworkalan.go.go.GoException.INVALID_INCLUDE_LINE;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.goodworkalan.go.go.GoException;
 
@@ -24,12 +31,245 @@ import com.goodworkalan.go.go.GoException;
  * @author Alan Gutierrez
  */
 public class Artifacts {
-    // TODO Document.
+    /** The version of the compiled dependency file format. */
+    private final static int VERSION = 2;
+
+    /** The suffix appended to a dependency file name to name its compiled form. */
+    private final static String COMPILED_SUFFIX = "c";
+
+    /** The maximum number of parsed dependency files kept in memory. */
+    final static int MAXIMUM_PARSED = 4096;
+
+    /**
+     * The cache of parsed dependency files in least recently used order,
+     * guarded by the map itself.
+     */
+    private final static Map<File, Parsed> PARSED = new LinkedHashMap<File, Parsed>(16, 0.75f, true) {
+        /** The serial version id. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Evict the least recently used parsed dependency file when the cache
+         * is full.
+         * 
+         * @param eldest
+         *            The least recently used entry.
+         * @return True if the cache is full.
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Parsed> eldest) {
+            return size() > MAXIMUM_PARSED;
+        }
+    };
+
+    /**
+     * Get the compiled form of the given dependency file in the given compiled
+     * dependency file directory. The name is the hash of the absolute path of
+     * the dependency file followed by the dependency file name, so that the
+     * directory stays flat. The absolute path is recorded in the compiled
+     * dependency file to detect collisions.
+     * 
+     * @param directory
+     *            The compiled dependency file directory.
+     * @param file
+     *            The dependency file.
+     * @return The compiled dependency file.
+     */
+    private static File getCompiledFile(File directory, File file) {
+        String path = file.getAbsolutePath();
+        return new File(directory, Integer.toHexString(path.hashCode()) + "-" + file.getName() + COMPILED_SUFFIX);
+    }
+
+    /**
+     * Read the list of includes from the given dependency file.
+     * <p>
+     * The parsed includes are cached in memory, keyed by the file and
+     * validated by its modification time and length, so that a dependency file
+     * is parsed only once by a running program no matter how often its
+     * artifact is resolved. The cache holds the most recently used
+     * {@link #MAXIMUM_PARSED} dependency files.
+     * <p>
+     * The returned list is shared and cannot be modified.
+     * 
+     * @param file
+     *            The dependency file.
+     * @return The list of includes.
+     */
     public static List<Include> read(File file) {
+        return read(file, null);
+    }
+
+    /**
+     * Read the list of includes from the given dependency file, compiling it
+     * into the given compiled dependency file directory.
+     * <p>
+     * The parsed includes are cached in memory as they are by
+     * {@link #read(File)}. If the compiled dependency file directory is not
+     * null, the first time a dependency file is parsed a compiled binary form
+     * is written to that directory. The compiled form is validated the same
+     * way and is read instead of the text by later programs. If the compiled
+     * form cannot be written, the text is parsed every time a program starts.
+     * <p>
+     * The returned list is shared and cannot be modified.
+     * 
+     * @param file
+     *            The dependency file.
+     * @param compiledDirectory
+     *            The compiled dependency file directory or null if the
+     *            dependency file is not compiled.
+     * @return The list of includes.
+     */
+    public static List<Include> read(File file, File compiledDirectory) {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Parsed parsed;
+        synchronized (PARSED) {
+            parsed = PARSED.get(file);
+        }
+        if (parsed == null || parsed.lastModified != lastModified || parsed.length != length) {
+            String path = file.getAbsolutePath();
+            File compiled = compiledDirectory == null ? null : getCompiledFile(compiledDirectory, file);
+            List<Include> includes = compiled == null || lastModified == 0L ? null : readCompiled(compiled, path, lastModified, length);
+            if (includes == null) {
+                Reader reader;
+                try {
+                    reader = new FileReader(file);
+                } catch (FileNotFoundException e) {
+                    throw new GoException(ARTIFACT_FILE_NOT_FOUND, e, file);
+                }
+                try {
+                    includes = read(file.toString(), reader);
+                } finally {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        // Nothing was written, so there is nothing to lose.
+                    }
+                }
+                if (compiled != null && !CacheFiles.isRacy(lastModified, System.currentTimeMillis())) {
+                    writeCompiled(compiled, path, lastModified, length, includes);
+                }
+            }
+            parsed = new Parsed(lastModified, length, Collections.unmodifiableList(includes));
+            synchronized (PARSED) {
+                PARSED.put(file, parsed);
+            }
+        }
+        return parsed.includes;
+    }
+
+    /**
+     * Read the list of includes from the given compiled dependency file,
+     * returning null if the compiled dependency file does not exist, cannot be
+     * read, or was compiled from a different dependency file or from a
+     * dependency file with a different modification time or length.
+     * 
+     * @param compiled
+     *            The compiled dependency file.
+     * @param path
+     *            The absolute path of the dependency file.
+     * @param lastModified
+     *            The modification time of the dependency file.
+     * @param length
+     *            The length of the dependency file.
+     * @return The list of includes or null.
+     */
+    private static List<Include> readCompiled(File compiled, String path, long lastModified, long length) {
         try {
-            return read(file.toString(), new FileReader(file));
-        } catch (FileNotFoundException e) {
-            throw new GoException(ARTIFACT_FILE_NOT_FOUND, e, file);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(compiled)));
+            try {
+                if (!CacheFiles.readHeader(in, VERSION) || !in.readUTF().equals(path) || in.readLong() != lastModified || in.readLong() != length) {
+                    return null;
+                }
+                List<Include> includes = new ArrayList<Include>();
+                for (int i = 0, stop = in.readInt(); i < stop; i++) {
+                    Artifact artifact = new Artifact(in.readUTF().intern(), in.readUTF().intern(), in.readUTF().intern());
+                    List<Exclude> excludes = new ArrayList<Exclude>();
+                    for (int j = 0, count = in.readInt(); j < count; j++) {
+                        List<String> exclude = new ArrayList<String>(2);
+                        exclude.add(in.readUTF().intern());
+                        exclude.add(in.readUTF().intern());
+                        excludes.add(new Exclude(exclude));
+                    }
+                    includes.add(new Include(artifact, excludes));
+                }
+                return includes;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the given list of includes to the given compiled dependency file.
+     * The file is written atomically so that a concurrent program never reads
+     * a partial file. Any failure is ignored, since the dependency file will
+     * simply be parsed again.
+     * 
+     * @param compiled
+     *            The compiled dependency file.
+     * @param path
+     *            The absolute path of the dependency file.
+     * @param lastModified
+     *            The modification time of the dependency file.
+     * @param length
+     *            The length of the dependency file.
+     * @param includes
+     *            The list of includes.
+     */
+    private static void writeCompiled(File compiled, final String path, final long lastModified, final long length, final List<Include> includes) {
+        CacheFiles.write(compiled, "dep", new CacheFiles.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                CacheFiles.writeHeader(out, VERSION);
+                out.writeUTF(path);
+                out.writeLong(lastModified);
+                out.writeLong(length);
+                out.writeInt(includes.size());
+                for (Include include : includes) {
+                    Artifact artifact = include.getArtifact();
+                    out.writeUTF(artifact.getGroup());
+                    out.writeUTF(artifact.getName());
+                    out.writeUTF(artifact.getVersion());
+                    out.writeInt(include.getExcludes().size());
+                    for (Exclude exclude : include.getExcludes()) {
+                        out.writeUTF(exclude.get(0));
+                        out.writeUTF(exclude.get(1));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * A parsed dependency file with the modification time and length of the
+     * file when it was parsed.
+     */
+    private final static class Parsed {
+        /** The modification time of the dependency file. */
+        public final long lastModified;
+
+        /** The length of the dependency file. */
+        public final long length;
+
+        /** The list of includes. */
+        public final List<Include> includes;
+
+        /**
+         * Create a parsed dependency file.
+         * 
+         * @param lastModified
+         *            The modification time of the dependency file.
+         * @param length
+         *            The length of the dependency file.
+         * @param includes
+         *            The list of includes.
+         */
+        public Parsed(long lastModified, long length, List<Include> includes) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.includes = includes;
         }
     }
      
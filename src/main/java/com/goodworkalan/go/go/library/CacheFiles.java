@@ -0,0 +1,155 @@
+package com.goodworkalan.go.go.library;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Static utility methods shared by the on disk caches, the program index,
+ * lock files, compiled dependency files and output files, for writing and
+ * checking their common header, for deciding whether a file is too recently
+ * modified to be trusted, and for writing a cache file atomically.
+ *
+ * @author Alan Gutierrez
+ */
+public class CacheFiles {
+    /** The magic number that begins every cache file, "gogo" in ASCII. */
+    public final static int MAGIC = 0x676F676F;
+
+    /**
+     * Files modified more recently than this many milliseconds before a cache
+     * entry is built might be modified again without changing their
+     * modification time on file systems with a coarse clock, so a cache entry
+     * that depends upon them is not written to disk.
+     */
+    final static long RACY_MILLIS = 2000;
+
+    /** This static method container should not be instantiated. */
+    CacheFiles() {
+    }
+
+    /**
+     * Writes the contents of a cache file.
+     */
+    public interface Content {
+        /**
+         * Write the contents of the cache file to the given output.
+         *
+         * @param out
+         *            The data output.
+         * @throws IOException
+         *             If an I/O error occurs.
+         */
+        public void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Return true if a file with the given modification time might be
+     * modified again at the given time without its modification time
+     * changing.
+     *
+     * @param lastModified
+     *            The modification time of the file.
+     * @param time
+     *            The time at which the cache entry was built.
+     * @return True if the file is too recently modified to be trusted.
+     */
+    public static boolean isRacy(long lastModified, long time) {
+        return lastModified > time - RACY_MILLIS;
+    }
+
+    /**
+     * Write the magic number and the given format version.
+     *
+     * @param out
+     *            The data output.
+     * @param version
+     *            The version of the cache file format.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    public static void writeHeader(DataOutput out, int version) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+    }
+
+    /**
+     * Read the magic number and format version and return true if they match
+     * the given format version.
+     *
+     * @param in
+     *            The data input.
+     * @param version
+     *            The version of the cache file format.
+     * @return True if the header matches.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    public static boolean readHeader(DataInput in, int version) throws IOException {
+        return in.readInt() == MAGIC && in.readInt() == version;
+    }
+
+    /**
+     * Read the magic number and format version from the given buffer and
+     * return true if they match the given format version.
+     *
+     * @param buffer
+     *            The buffer.
+     * @param version
+     *            The version of the cache file format.
+     * @return True if the header matches.
+     */
+    public static boolean readHeader(ByteBuffer buffer, int version) {
+        return buffer.getInt() == MAGIC && buffer.getInt() == version;
+    }
+
+    /**
+     * Write a cache file by writing its contents to a temporary file in the
+     * same directory with the given prefix and renaming it, so that a
+     * concurrent reader never sees a partial file. The directory is created
+     * if it does not exist. Any failure is ignored, since a cache file that
+     * cannot be written is simply built again, and false is returned.
+     *
+     * @param file
+     *            The cache file.
+     * @param prefix
+     *            The temporary file name prefix.
+     * @param content
+     *            The writer of the cache file contents.
+     * @return True if the cache file was written.
+     */
+    public static boolean write(File file, String prefix, Content content) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return false;
+        }
+        File temporary = null;
+        try {
+            temporary = File.createTempFile(prefix, ".tmp", directory);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            try {
+                content.write(out);
+            } finally {
+                out.close();
+            }
+            if (!temporary.renameTo(file)) {
+                file.delete();
+                if (!temporary.renameTo(file)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (temporary != null && temporary.exists()) {
+                temporary.delete();
+            }
+        }
+    }
+}
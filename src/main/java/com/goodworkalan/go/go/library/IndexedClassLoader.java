@@ -0,0 +1,485 @@
+package com.goodworkalan.go.go.library;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A class loader that loads classes and resources from an ordered class path
+ * of jar files and directories using an index of the directories in each jar.
+ * <p>
+ * A <code>URLClassLoader</code> searches each jar on the class path in turn
+ * for each class or resource it loads. With a class path of a hundred or more
+ * jars, most of the time spent loading a class is spent looking in jars that
+ * do not contain it. This class loader opens every jar when it is created and
+ * builds a map of each directory in each jar, which for classes is the
+ * package, to the jars that contain entries in that directory. A lookup
+ * searches only the jars that contain the directory of the class or resource,
+ * along with any directories on the class path, since a directory cannot be
+ * indexed without walking it. The candidates are searched in class path
+ * order, so the first class or resource found is the same one that a
+ * <code>URLClassLoader</code> would find.
+ * <p>
+ * As with a <code>URLClassLoader</code>, the <code>Class-Path</code> attribute
+ * of the manifest of each jar is followed. The files it names are placed on
+ * the class path immediately after the jar that names them, and a file that
+ * is already on the class path is not added again. The class path is
+ * expanded when the class loader is created.
+ * <p>
+ * Jar files stay open until the class loader is closed. The URLs of resources
+ * are <code>jar:</code> URLs for jars and <code>file:</code> URLs for
+ * directories, exactly as they would be for a <code>URLClassLoader</code>.
+ *
+ * @author Alan Gutierrez
+ */
+public class IndexedClassLoader extends ClassLoader {
+    /** An empty array of part indexes. */
+    private final static int[] NONE = new int[0];
+
+    /** The class path files in class path order. */
+    private final File[] files;
+
+    /** The base URLs of the class path files in class path order. */
+    private final URL[] urls;
+
+    /**
+     * The open jar files in class path order with a null entry for each
+     * directory.
+     */
+    private final JarFile[] jars;
+
+    /** The code sources of the class path files in class path order. */
+    private final CodeSource[] codeSources;
+
+    /** The indexes of the directories on the class path. */
+    private final int[] directories;
+
+    /** A map of jar directory names to the indexes of the jars that contain them. */
+    private final Map<String, int[]> index = new HashMap<String, int[]>();
+
+    /**
+     * Create an indexed class loader for the given ordered class path of jar
+     * files and directories with the given parent class loader.
+     *
+     * @param files
+     *            The jar files and directories in class path order.
+     * @param parent
+     *            The parent class loader.
+     */
+    public IndexedClassLoader(Collection<File> files, ClassLoader parent) {
+        super(parent);
+        List<File> expanded = new ArrayList<File>();
+        List<JarFile> opened = new ArrayList<JarFile>();
+        Set<File> seen = new HashSet<File>();
+        for (File file : files) {
+            expand(file, expanded, opened, seen);
+        }
+        this.files = expanded.toArray(new File[expanded.size()]);
+        this.jars = opened.toArray(new JarFile[opened.size()]);
+        this.urls = new URL[this.files.length];
+        this.codeSources = new CodeSource[this.files.length];
+        Map<String, List<Integer>> containers = new HashMap<String, List<Integer>>();
+        List<Integer> directories = new ArrayList<Integer>();
+        for (int i = 0; i < this.files.length; i++) {
+            File file = this.files[i];
+            URL url = toURL(file);
+            codeSources[i] = new CodeSource(url, (Certificate[]) null);
+            if (jars[i] == null) {
+                urls[i] = url;
+                directories.add(i);
+            } else {
+                urls[i] = PathParts.toURL("jar:" + url.toExternalForm() + "!/");
+                Enumeration<JarEntry> entries = jars[i].entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    String directory = getDirectory(name);
+                    List<Integer> containing = containers.get(directory);
+                    if (containing == null) {
+                        containing = new ArrayList<Integer>();
+                        containers.put(directory, containing);
+                    }
+                    if (containing.isEmpty() || containing.get(containing.size() - 1) != i) {
+                        containing.add(i);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : containers.entrySet()) {
+            index.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        this.directories = toArray(directories);
+    }
+
+    /**
+     * Add the given class path file to the given list of files, along with
+     * the files named by the <code>Class-Path</code> attribute of its manifest
+     * if it is a jar, unless it is already on the class path. The open jar, or
+     * null for a directory, is added to the given list of jars. A jar that
+     * cannot be read is skipped, as a <code>URLClassLoader</code> skips it.
+     *
+     * @param file
+     *            The class path file.
+     * @param files
+     *            The expanded class path files.
+     * @param jars
+     *            The open jars of the expanded class path files.
+     * @param seen
+     *            The absolute paths of the files already on the class path.
+     */
+    private static void expand(File file, List<File> files, List<JarFile> jars, Set<File> seen) {
+        if (!seen.add(file.getAbsoluteFile())) {
+            return;
+        }
+        if (file.isDirectory()) {
+            files.add(file);
+            jars.add(null);
+            return;
+        }
+        JarFile jar;
+        try {
+            jar = new JarFile(file);
+        } catch (IOException e) {
+            // A URLClassLoader silently skips unreadable jars as well.
+            return;
+        }
+        files.add(file);
+        jars.add(jar);
+        for (File path : getManifestClassPath(file, jar)) {
+            expand(path, files, jars, seen);
+        }
+    }
+
+    /**
+     * Get the existing local files named by the <code>Class-Path</code>
+     * attribute of the manifest of the given jar, resolved against the
+     * location of the jar.
+     *
+     * @param file
+     *            The jar file.
+     * @param jar
+     *            The open jar.
+     * @return The files named by the manifest class path.
+     */
+    private static List<File> getManifestClassPath(File file, JarFile jar) {
+        List<File> paths = new ArrayList<File>();
+        String classPath;
+        try {
+            Manifest manifest = jar.getManifest();
+            classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        } catch (IOException e) {
+            return paths;
+        }
+        if (classPath != null) {
+            URL base = toURL(file);
+            for (String entry : classPath.trim().split("\\s+")) {
+                if (entry.length() == 0) {
+                    continue;
+                }
+                try {
+                    URL url = new URL(base, entry);
+                    if (url.getProtocol().equals("file")) {
+                        File path = new File(url.toURI());
+                        if (path.exists()) {
+                            paths.add(path);
+                        }
+                    }
+                } catch (MalformedURLException e) {
+                    // A URLClassLoader ignores malformed entries as well.
+                } catch (URISyntaxException e) {
+                    // A URLClassLoader ignores malformed entries as well.
+                } catch (IllegalArgumentException e) {
+                    // Not a hierarchical file URL.
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Convert the given list of integers into an array.
+     *
+     * @param list
+     *            The list of integers.
+     * @return An array of integers.
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Get the file URL of the given file.
+     *
+     * @param file
+     *            The file.
+     * @return The file URL.
+     */
+    private static URL toURL(File file) {
+        return PathParts.toURL(file.getAbsoluteFile().toURI().toString());
+    }
+
+    /**
+     * Get the directory part of the given resource name, the name up to the
+     * last slash, ignoring a trailing slash.
+     *
+     * @param name
+     *            The resource name.
+     * @return The directory of the resource.
+     */
+    private static String getDirectory(String name) {
+        int last = name.endsWith("/") ? name.length() - 1 : name.length();
+        int slash = name.lastIndexOf('/', last - 1);
+        return slash == -1 ? "" : name.substring(0, slash);
+    }
+
+    /**
+     * Get the indexes of the class path files that might contain the resource
+     * with the given name, in class path order. These are the jars that
+     * contain the directory of the resource merged with the directories on the
+     * class path.
+     *
+     * @param name
+     *            The resource name.
+     * @return The indexes of the candidate class path files.
+     */
+    private int[] getCandidates(String name) {
+        int[] containing = index.get(getDirectory(name));
+        if (containing == null) {
+            containing = NONE;
+        }
+        if (directories.length == 0) {
+            return containing;
+        }
+        int[] candidates = new int[containing.length + directories.length];
+        int i = 0, j = 0, k = 0;
+        while (i < containing.length && j < directories.length) {
+            candidates[k++] = containing[i] < directories[j] ? containing[i++] : directories[j++];
+        }
+        while (i < containing.length) {
+            candidates[k++] = containing[i++];
+        }
+        while (j < directories.length) {
+            candidates[k++] = directories[j++];
+        }
+        return candidates;
+    }
+
+    /**
+     * Determine if the class path file at the given index contains the
+     * resource with the given name.
+     *
+     * @param i
+     *            The class path index.
+     * @param name
+     *            The resource name.
+     * @return True if the class path file contains the resource.
+     */
+    private boolean contains(int i, String name) {
+        if (jars[i] != null) {
+            return jars[i].getJarEntry(name) != null;
+        }
+        return new File(files[i], name).exists();
+    }
+
+    /**
+     * Get the URL of the resource with the given name in the class path file
+     * at the given index.
+     *
+     * @param i
+     *            The class path index.
+     * @param name
+     *            The resource name.
+     * @return The URL of the resource.
+     */
+    private URL getURL(int i, String name) {
+        try {
+            return new URL(urls[i], name);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the class with the given binary name, reading the class from the
+     * first class path file that contains it. A class read from a signed jar
+     * is defined with the signers of its jar entry, which are known only once
+     * the entry has been read in full.
+     *
+     * @param name
+     *            The binary name of the class.
+     * @return The class.
+     * @throws ClassNotFoundException
+     *             If the class cannot be found.
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        for (int i : getCandidates(path)) {
+            if (contains(i, path)) {
+                try {
+                    byte[] bytes;
+                    CodeSource codeSource = codeSources[i];
+                    if (jars[i] == null) {
+                        bytes = read(getURL(i, path).openStream());
+                    } else {
+                        JarEntry entry = jars[i].getJarEntry(path);
+                        bytes = read(jars[i].getInputStream(entry));
+                        CodeSigner[] signers = entry.getCodeSigners();
+                        if (signers != null) {
+                            codeSource = new CodeSource(codeSource.getLocation(), signers);
+                        }
+                    }
+                    int dot = name.lastIndexOf('.');
+                    if (dot != -1) {
+                        definePackage(i, name.substring(0, dot));
+                    }
+                    return defineClass(name, bytes, 0, bytes.length, new ProtectionDomain(codeSource, null, this, null));
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    /**
+     * Read the bytes of the given input stream to the end and close it.
+     *
+     * @param in
+     *            The input stream.
+     * @return The bytes of the input stream.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Define the package with the given name using the manifest of the class
+     * path file at the given index if it is a jar, if the package has not
+     * already been defined.
+     *
+     * @param i
+     *            The class path index.
+     * @param name
+     *            The package name.
+     * @throws IOException
+     *             If the manifest cannot be read.
+     */
+    private void definePackage(int i, String name) throws IOException {
+        if (getPackage(name) != null) {
+            return;
+        }
+        Manifest manifest = jars[i] == null ? null : jars[i].getManifest();
+        try {
+            if (manifest == null) {
+                definePackage(name, null, null, null, null, null, null, null);
+            } else {
+                Attributes attributes = manifest.getMainAttributes();
+                definePackage(name,
+                        attributes.getValue(Attributes.Name.SPECIFICATION_TITLE),
+                        attributes.getValue(Attributes.Name.SPECIFICATION_VERSION),
+                        attributes.getValue(Attributes.Name.SPECIFICATION_VENDOR),
+                        attributes.getValue(Attributes.Name.IMPLEMENTATION_TITLE),
+                        attributes.getValue(Attributes.Name.IMPLEMENTATION_VERSION),
+                        attributes.getValue(Attributes.Name.IMPLEMENTATION_VENDOR),
+                        null);
+            }
+        } catch (IllegalArgumentException e) {
+            // Defined concurrently by another thread.
+        }
+    }
+
+    /**
+     * Find the URL of the resource with the given name in the first class path
+     * file that contains it.
+     *
+     * @param name
+     *            The resource name.
+     * @return The URL of the resource or null if it is not found.
+     */
+    @Override
+    protected URL findResource(String name) {
+        for (int i : getCandidates(name)) {
+            if (contains(i, name)) {
+                return getURL(i, name);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the URLs of the resource with the given name in every class path
+     * file that contains it, in class path order.
+     *
+     * @param name
+     *            The resource name.
+     * @return An enumeration of the URLs of the resource.
+     */
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        List<URL> found = new ArrayList<URL>();
+        for (int i : getCandidates(name)) {
+            if (contains(i, name)) {
+                URL url = getURL(i, name);
+                if (url != null) {
+                    found.add(url);
+                }
+            }
+        }
+        return Collections.enumeration(found);
+    }
+
+    /**
+     * Close the jar files held open by this class loader. Classes and
+     * resources that have not yet been loaded from jar files can no longer be
+     * found once the class loader is closed.
+     */
+    public void close() {
+        for (int i = 0; i < jars.length; i++) {
+            if (jars[i] != null) {
+                try {
+                    jars[i].close();
+                } catch (IOException e) {
+                    // Nothing was written, so there is nothing to lose.
+                }
+                jars[i] = null;
+            }
+        }
+    }
+}
@@ -10,6 +10,10 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A Jav-a-Go-Go format library.
@@ -23,6 +27,15 @@ public class Library {
     /** The library directory. */
     private final File[] dirs;
 
+    /** The cache of library directory listings. */
+    private final ListingCache listings;
+
+    /**
+     * The directory in which to write compiled dependency files or null if
+     * dependency files are not compiled.
+     */
+    private final File compiledDirectory;
+
     /**
      * Create a library with the given library directory search path. The
      * library uses this search path to locate artifacts. When asked for an
@@ -33,7 +46,39 @@ public class Library {
      *            The library directories.
      */
     public Library(File... dirs) {
+        this(new ListingCache(), dirs);
+    }
+
+    /**
+     * Create a library with the given library directory search path that
+     * shares the given cache of directory listings with other libraries.
+     * 
+     * @param listings
+     *            The cache of library directory listings.
+     * @param dirs
+     *            The library directories.
+     */
+    public Library(ListingCache listings, File... dirs) {
+        this(dirs, listings, null);
+    }
+
+    /**
+     * Create a library with the given library directory search path that
+     * shares the given cache of directory listings with other libraries and
+     * compiles the dependency files of its artifacts into the given directory.
+     * 
+     * @param dirs
+     *            The library directories.
+     * @param listings
+     *            The cache of library directory listings.
+     * @param compiledDirectory
+     *            The directory in which to write compiled dependency files or
+     *            null if dependency files are not compiled.
+     */
+    public Library(File[] dirs, ListingCache listings, File compiledDirectory) {
+        this.listings = listings;
         this.dirs = dirs;
+        this.compiledDirectory = compiledDirectory;
     }
 
     /**
@@ -45,6 +90,26 @@ public class Library {
         return dirs;
     }
 
+    /**
+     * Get the directory in which to write compiled dependency files.
+     * 
+     * @return The compiled dependency file directory or null if dependency
+     *         files are not compiled.
+     */
+    public File getCompiledDirectory() {
+        return compiledDirectory;
+    }
+
+    /**
+     * Discard the cached directory listings of this library so that artifacts
+     * added to or removed from the library directories are visible. If the
+     * listing cache is shared, the listings are discarded for all of the
+     * libraries that share it.
+     */
+    public void invalidate() {
+        listings.clear();
+    }
+
     /**
      * Expand the given collection of path parts.
      * 
@@ -93,6 +158,112 @@ public class Library {
         return new ArrayList<PathPart>(expanded.values());
     }
 
+    /**
+     * Expand the given collection of path parts, expanding the path parts of
+     * each level of the dependency graph concurrently using the given executor
+     * service. If the executor service is null, the path parts are expanded
+     * one at a time on the calling thread.
+     * <p>
+     * The expanded path parts are identical to those returned by
+     * {@link #resolve(Collection, Set)}, in the same order. Of all of the path
+     * parts at a level of the dependency graph, only the first path part for
+     * each unversioned key is expanded. The results are merged in the order of
+     * the path parts at that level, exactly as if they had been expanded one
+     * at a time. If an expansion fails, the exception that would have been
+     * thrown by the first failed expansion in that order is thrown.
+     * <p>
+     * Expansion lists directories and reads dependency files, so the speed up
+     * is greatest when the library directories are on a slow file system,
+     * such as a network file system.
+     * 
+     * @param parts
+     *            The collection of path parts.
+     * @param exclude
+     *            A set of unversioned keys of artifacts to exclude.
+     * @param executor
+     *            The executor service used to expand path parts or null to
+     *            expand path parts on the calling thread.
+     * @return An expanded collection of path parts.
+     */
+    public Collection<PathPart> resolve(Collection<PathPart> parts, Set<?> exclude, ExecutorService executor) {
+        if (executor == null) {
+            return resolve(parts, exclude);
+        }
+        Map<Object, PathPart> expanded = new LinkedHashMap<Object, PathPart>();
+        Collection<PathPart> current = parts;
+        while (!current.isEmpty()) {
+            Map<Object, Future<Expansion>> expansions = new LinkedHashMap<Object, Future<Expansion>>();
+            for (final PathPart part : current) {
+                Object key = part.getUnversionedKey();
+                if (!(expanded.containsKey(key) || exclude.contains(key) || expansions.containsKey(key))) {
+                    expansions.put(key, executor.submit(new Callable<Expansion>() {
+                        public Expansion call() {
+                            Expansion expansion = new Expansion();
+                            part.expand(Library.this, expansion.expanded, expansion.expand);
+                            return expansion;
+                        }
+                    }));
+                }
+            }
+            Collection<PathPart> next = new ArrayList<PathPart>();
+            try {
+                for (Map.Entry<Object, Future<Expansion>> entry : expansions.entrySet()) {
+                    if (!expanded.containsKey(entry.getKey())) {
+                        Expansion expansion = get(entry.getValue());
+                        for (PathPart part : expansion.expanded) {
+                            expanded.put(part.getUnversionedKey(), part);
+                        }
+                        next.addAll(expansion.expand);
+                    }
+                }
+            } finally {
+                for (Future<Expansion> future : expansions.values()) {
+                    future.cancel(true);
+                }
+            }
+            current = next;
+        }
+        return new ArrayList<PathPart>(expanded.values());
+    }
+
+    /**
+     * Get the expansion of a path part from the given future, trying again if
+     * the calling thread is interrupted, and rethrowing any exception thrown
+     * by the expansion.
+     * 
+     * @param future
+     *            The future expansion.
+     * @return The expansion.
+     */
+    private static Expansion get(Future<Expansion> future) {
+        for (;;) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                continue;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The result of expanding a single path part.
+     */
+    private final static class Expansion {
+        /** The expanded path parts. */
+        public final Collection<PathPart> expanded = new ArrayList<PathPart>();
+
+        /** The path parts to expand at the next level. */
+        public final Collection<PathPart> expand = new ArrayList<PathPart>();
+    }
+
     /**
      * Get an artifact part for the given artifact or null if the given artifact
      * cannot be found in the library search path. Each library in the search
@@ -106,7 +277,7 @@ public class Library {
     public ArtifactPart getArtifactPart(Artifact artifact) {
         for (File dir : dirs) {
             File deps = new File(dir, artifact.getPath("dep"));
-            if (deps.exists()) {
+            if (listings.exists(deps)) {
                 return new ArtifactPart(dir, artifact, Collections.<Exclude>emptySet());
             }
         }
@@ -132,17 +303,15 @@ public class Library {
         for (int i = dirs.length - 1, stop = -1; i != stop; i--) {
             File dir = dirs[i];
             File unversioned = new File(dir, artifact.getUnversionedDirectoryPath());
-            if (unversioned.isDirectory()) {
-                FILES: for (String fileName : unversioned.list()) {
-                    Artifact candidate = new Artifact(artifact.getGroup(),  artifact.getName(), fileName);
-                    for (String suffix : suffixes) {
-                        File file = new File(dir, candidate.getPath(suffix));
-                        if (!file.exists()) {
-                            continue FILES;
-                        }
+            FILES: for (String fileName : listings.list(unversioned)) {
+                Artifact candidate = new Artifact(artifact.getGroup(),  artifact.getName(), fileName);
+                Set<String> files = listings.list(new File(unversioned, fileName));
+                for (String suffix : suffixes) {
+                    if (!files.contains(candidate.getFileName(suffix))) {
+                        continue FILES;
                     }
-                    versions.put(fileName, dir);
                 }
+                versions.put(fileName, dir);
             }
         }
         String version = include.getVersionSelector().select(versions.keySet());
@@ -167,7 +336,7 @@ public class Library {
     public File getArtifactDirectory(Artifact artifact, String suffix) {
         for (File dir : dirs) {
             File deps = new File(dir, artifact.getPath(suffix));
-            if (deps.exists()) {
+            if (listings.exists(deps)) {
                 return dir;
             }
         }
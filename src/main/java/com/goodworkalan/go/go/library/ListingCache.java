@@ -0,0 +1,102 @@
+package com.goodworkalan.go.go.library;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of library directory listings.
+ * <p>
+ * Artifact lookup lists the unversioned directory of an artifact in each
+ * library directory and then checks for the presence of the artifact files in
+ * each version directory. With a listing cache, each directory is listed once
+ * and the file presence checks become set lookups, so resolving a dependency
+ * graph costs one listing per artifact directory no matter how often an
+ * artifact is included.
+ * <p>
+ * A library creates a listing cache of its own by default, which lives only as
+ * long as the library. A listing cache can also be shared by many libraries
+ * that live in the same long running process, in which case it must be
+ * invalidated when artifacts are added to or removed from the library
+ * directories.
+ * <p>
+ * The listing cache is thread safe.
+ *
+ * @author Alan Gutierrez
+ */
+public class ListingCache {
+    /** The listing of a directory that does not exist. */
+    private final static Set<String> MISSING = Collections.emptySet();
+
+    /** The map of directories to the set of file names they contain. */
+    private final ConcurrentMap<File, Set<String>> listings = new ConcurrentHashMap<File, Set<String>>();
+
+    /**
+     * Get the set of names of the files in the given directory. If the
+     * directory does not exist, or is not a directory, an empty set is
+     * returned.
+     *
+     * @param directory
+     *            The directory.
+     * @return The set of file names in the directory.
+     */
+    public Set<String> list(File directory) {
+        Set<String> listing = listings.get(directory);
+        if (listing == null) {
+            String[] names = directory.list();
+            if (names == null) {
+                listing = MISSING;
+            } else {
+                listing = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(names)));
+            }
+            Set<String> existing = listings.putIfAbsent(directory, listing);
+            if (existing != null) {
+                listing = existing;
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * Determine if the given file exists according to the listing of its
+     * parent directory.
+     *
+     * @param file
+     *            The file.
+     * @return True if the file exists.
+     */
+    public boolean exists(File file) {
+        File parent = file.getParentFile();
+        if (parent == null) {
+            return file.exists();
+        }
+        return list(parent).contains(file.getName());
+    }
+
+    /**
+     * Discard the listing of the given directory and the listing of its parent
+     * directory, so that files created or deleted in the directory, or the
+     * creation or deletion of the directory itself, are visible.
+     *
+     * @param directory
+     *            The directory.
+     */
+    public void invalidate(File directory) {
+        listings.remove(directory);
+        File parent = directory.getParentFile();
+        if (parent != null) {
+            listings.remove(parent);
+        }
+    }
+
+    /**
+     * Discard all of the cached listings.
+     */
+    public void clear() {
+        listings.clear();
+    }
+}
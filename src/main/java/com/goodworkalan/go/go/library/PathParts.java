@@ -5,7 +5,6 @@ import static com.goodworkalan.go.go.GoException.MALFORMED_URL;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
@@ -107,9 +106,10 @@ public class PathParts {
      *         represented by the path parts.
      * @throws UnsupportedOperationException
      *             If any of the path parts are expanding path parts.
+     * @see IndexedClassLoader
      */
     public static ClassLoader getClassLoader(Collection<PathPart> parts, ClassLoader parent) {
-        return new URLClassLoader(urls(parts), parent);
+        return new IndexedClassLoader(fileSet(parts), parent);
     }
 
     /**
@@ -0,0 +1,476 @@
+package com.goodworkalan.go.go.library;
+
+import static com.goodworkalan.go.go.GoException.PROGRAM_CONFIGURATION_IO;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.goodworkalan.go.go.GoException;
+
+/**
+ * A binary index of the programs installed in a library that maps command
+ * paths to the artifacts that provide them.
+ * <p>
+ * The programs installed in a library are recorded in <code>.go</code> files
+ * in the group directories of the <code>go-go</code> directory of the library.
+ * Reading all of those files at every launch is costly when there are hundreds
+ * of programs installed, so the index gathers them into a single file,
+ * <code>go-go/programs.index</code>, that is memory mapped when the library is
+ * opened. The index is an open addressing hash table keyed on the space
+ * delimited command path, so that looking up a program is a hash probe into the
+ * mapped file and not a scan.
+ * <p>
+ * The index records the modification time of the <code>go-go</code> directory
+ * and of each group directory. If any of them have changed, the index is
+ * discarded and rebuilt from the <code>.go</code> files. Overwriting an
+ * existing <code>.go</code> file does not change the modification time of its
+ * directory, so anything that writes a <code>.go</code> file must call
+ * {@link #invalidate(File) invalidate} when it is done.
+ * <p>
+ * If the library is not writable, the index is built in memory at each launch,
+ * which is no worse than reading the <code>.go</code> files directly.
+ *
+ * @author Alan Gutierrez
+ */
+public class ProgramIndex {
+    /** The name of the index file in the <code>go-go</code> directory. */
+    static final String INDEX_FILE_NAME = "programs.index";
+
+    /** The version of the index file format. */
+    private static final int VERSION = 1;
+
+    /** The index file contents. */
+    private final ByteBuffer buffer;
+
+    /** The number of programs in the index. */
+    private final int size;
+
+    /** The number of slots in the hash table. */
+    private final int slotCount;
+
+    /** The offset of the hash table in the buffer. */
+    private final int slotsOffset;
+
+    /**
+     * Create a program index that reads the given index file contents. The
+     * buffer position is expected to be at the start of the program count,
+     * just past the directory modification times.
+     *
+     * @param buffer
+     *            The index file contents.
+     */
+    private ProgramIndex(ByteBuffer buffer) {
+        this.size = buffer.getInt();
+        this.slotCount = buffer.getInt();
+        this.slotsOffset = buffer.position();
+        this.buffer = buffer;
+    }
+
+    /**
+     * Open the program index for the given library directory, reading the
+     * existing index if it is current, or rebuilding it from the
+     * <code>.go</code> files if it is not. Returns null if the library has no
+     * readable <code>go-go</code> directory.
+     *
+     * @param library
+     *            The library directory.
+     * @return The program index or null.
+     */
+    public static ProgramIndex open(File library) {
+        File gogo = new File(library, "go-go");
+        if (!(gogo.isDirectory() && gogo.canRead())) {
+            return null;
+        }
+        File file = new File(gogo, INDEX_FILE_NAME);
+        if (file.isFile()) {
+            ByteBuffer buffer = map(file);
+            if (buffer != null && isCurrent(gogo, buffer)) {
+                return new ProgramIndex(buffer);
+            }
+        }
+        return build(gogo, file);
+    }
+
+    /**
+     * Invalidate the program index of the given library directory so that it
+     * will be rebuilt the next time it is opened.
+     *
+     * @param library
+     *            The library directory.
+     */
+    public static void invalidate(File library) {
+        File gogo = new File(library, "go-go");
+        File file = new File(gogo, INDEX_FILE_NAME);
+        if (file.exists() && !file.delete()) {
+            // A mapped file cannot be deleted on some platforms, so we touch
+            // the directory to make the index look stale instead.
+            gogo.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Map the given index file into memory returning null if the file cannot
+     * be read.
+     *
+     * @param file
+     *            The index file.
+     * @return The mapped file contents or null.
+     */
+    private static ByteBuffer map(File file) {
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Determine if the index file contents are of the current format and that
+     * none of the directories recorded in the index have been modified since
+     * the index was written. When this method returns true, the buffer is
+     * positioned at the program count. If the given directory is null, the
+     * modification times are skipped and not checked.
+     *
+     * @param gogo
+     *            The <code>go-go</code> directory or null.
+     * @param buffer
+     *            The index file contents.
+     * @return True if the index is current.
+     */
+    private static boolean isCurrent(File gogo, ByteBuffer buffer) {
+        try {
+            if (!CacheFiles.readHeader(buffer, VERSION) || buffer.getInt() != buffer.capacity()) {
+                return false;
+            }
+            for (int i = 0, stop = buffer.getInt(); i < stop; i++) {
+                long lastModified = buffer.getLong();
+                String name = getString(buffer, buffer.position());
+                buffer.position(buffer.position() + 2 + (buffer.getShort(buffer.position()) & 0xFFFF));
+                File directory = name.length() == 0 ? gogo : new File(gogo, name);
+                if (gogo != null && directory.lastModified() != lastModified) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // A truncated or otherwise damaged index is simply rebuilt.
+            return false;
+        }
+    }
+
+    /**
+     * Read the <code>.go</code> files in the group directories of the given
+     * <code>go-go</code> directory and build a new index, writing it to the
+     * given index file if the directory is writable.
+     *
+     * @param gogo
+     *            The <code>go-go</code> directory.
+     * @param file
+     *            The index file.
+     * @return A new program index.
+     */
+    private static ProgramIndex build(File gogo, File file) {
+        long start = System.currentTimeMillis();
+        Map<String, Long> directories = new LinkedHashMap<String, Long>();
+        directories.put("", gogo.lastModified());
+        Map<String, String> programs = new LinkedHashMap<String, String>();
+        for (File directory : gogo.listFiles()) {
+            if (directory.isDirectory()) {
+                directories.put(directory.getName(), directory.lastModified());
+                for (File configuration : directory.listFiles()) {
+                    if (configuration.getName().endsWith(".go")) {
+                        read(configuration, programs);
+                    }
+                }
+            }
+        }
+        byte[] bytes = serialize(directories, programs);
+        boolean racy = false;
+        for (long lastModified : directories.values()) {
+            racy = racy || CacheFiles.isRacy(lastModified, start);
+        }
+        if (!racy) {
+            write(file, bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        isCurrent(null, buffer);
+        return new ProgramIndex(buffer);
+    }
+
+    /**
+     * Read the program records in the given <code>.go</code> file into the
+     * given map of space delimited command paths to artifact strings. Each
+     * line of a <code>.go</code> file is an artifact followed by a comma
+     * separated list of the command paths it provides.
+     *
+     * @param configuration
+     *            The <code>.go</code> file.
+     * @param programs
+     *            The map of command paths to artifact strings.
+     */
+    static void read(File configuration, Map<String, String> programs) {
+        try {
+            BufferedReader lines = new BufferedReader(new FileReader(configuration));
+            try {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() == 0 || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] record = line.split("\\s+", 2);
+                    // Parse the artifact now to report a malformed artifact.
+                    String artifact = new Artifact(record[0]).toString();
+                    if (record.length > 1) {
+                        for (String path : record[1].split(",")) {
+                            StringBuilder command = new StringBuilder();
+                            String separator = "";
+                            for (String part : path.trim().split("\\s+")) {
+                                command.append(separator).append(part);
+                                separator = " ";
+                            }
+                            programs.put(command.toString(), artifact);
+                        }
+                    }
+                }
+            } finally {
+                lines.close();
+            }
+        } catch (IOException e) {
+            throw new GoException(PROGRAM_CONFIGURATION_IO, e, configuration);
+        }
+    }
+
+    /**
+     * Create the contents of an index file for the given directory modification
+     * times and the given map of space delimited command paths to artifact
+     * strings.
+     *
+     * @param directories
+     *            The map of directory names to modification times.
+     * @param programs
+     *            The map of command paths to artifact strings.
+     * @return The index file contents.
+     */
+    private static byte[] serialize(Map<String, Long> directories, Map<String, String> programs) {
+        int slotCount = 1;
+        while (slotCount < programs.size() * 2) {
+            slotCount <<= 1;
+        }
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(directories.size());
+            for (Map.Entry<String, Long> entry : directories.entrySet()) {
+                out.writeLong(entry.getValue());
+                putString(out, entry.getKey());
+            }
+            out.writeInt(programs.size());
+            out.writeInt(slotCount);
+            out.flush();
+
+            int recordsOffset = 12 + header.size() + slotCount * 4;
+            int[] slots = new int[slotCount];
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            out = new DataOutputStream(records);
+            for (Map.Entry<String, String> entry : programs.entrySet()) {
+                int hash = entry.getKey().hashCode();
+                int slot = hash & (slotCount - 1);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & (slotCount - 1);
+                }
+                slots[slot] = recordsOffset + out.size();
+                out.writeInt(hash);
+                putString(out, entry.getKey());
+                putString(out, entry.getValue());
+            }
+            out.flush();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            out = new DataOutputStream(bytes);
+            CacheFiles.writeHeader(out, VERSION);
+            out.writeInt(recordsOffset + records.size());
+            header.writeTo(out);
+            for (int slot : slots) {
+                out.writeInt(slot);
+            }
+            records.writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Byte array output streams do not throw I/O exceptions.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write the index file contents atomically, so that concurrent launches
+     * never see a partial index. If the index cannot be written, it is built
+     * in memory at the next launch.
+     *
+     * @param file
+     *            The index file.
+     * @param bytes
+     *            The index file contents.
+     */
+    private static void write(File file, final byte[] bytes) {
+        CacheFiles.write(file, "programs", new CacheFiles.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                out.write(bytes);
+            }
+        });
+    }
+
+    /**
+     * Write a string to the given output as an unsigned short byte count
+     * followed by the UTF-8 bytes of the string.
+     *
+     * @param out
+     *            The data output.
+     * @param string
+     *            The string.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    private static void putString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #putString(DataOutputStream, String)
+     * putString} at the given offset in the given buffer using absolute reads
+     * so that the buffer can be shared by concurrent readers.
+     *
+     * @param buffer
+     *            The buffer.
+     * @param offset
+     *            The offset of the string.
+     * @return The string.
+     */
+    private static String getString(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Determine whether the string at the given offset in the buffer is equal
+     * to the given UTF-8 bytes.
+     *
+     * @param offset
+     *            The offset of the string.
+     * @param bytes
+     *            The UTF-8 bytes to compare.
+     * @return True if the string is equal to the given bytes.
+     */
+    private boolean equals(int offset, byte[] bytes) {
+        if ((buffer.getShort(offset) & 0xFFFF) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(offset + 2 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of programs in the index.
+     *
+     * @return The number of programs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the artifact that provides the program with the given command path
+     * or null if no such program is installed in the library.
+     *
+     * @param command
+     *            The command path.
+     * @return The artifact that provides the command or null.
+     */
+    public Artifact get(List<?> command) {
+        StringBuilder key = new StringBuilder();
+        String separator = "";
+        for (Object part : command) {
+            String string = part.toString();
+            if (string.length() == 0) {
+                return null;
+            }
+            for (int i = 0, stop = string.length(); i < stop; i++) {
+                if (Character.isWhitespace(string.charAt(i))) {
+                    return null;
+                }
+            }
+            key.append(separator).append(string);
+            separator = " ";
+        }
+        byte[] bytes;
+        try {
+            bytes = key.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        int hash = key.toString().hashCode();
+        int mask = slotCount - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int offset = buffer.getInt(slotsOffset + slot * 4);
+            if (offset == 0) {
+                return null;
+            }
+            if (buffer.getInt(offset) == hash && equals(offset + 4, bytes)) {
+                int artifact = offset + 4 + 2 + bytes.length;
+                return new Artifact(getString(buffer, artifact));
+            }
+        }
+    }
+
+    /**
+     * Get a map of all of the programs in the index. This decodes the entire
+     * index and is meant for diagnostics, not for program lookup.
+     *
+     * @return A map of command paths to artifacts.
+     */
+    public Map<List<String>, Artifact> getPrograms() {
+        Map<List<String>, Artifact> programs = new LinkedHashMap<List<String>, Artifact>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = buffer.getInt(slotsOffset + slot * 4);
+            if (offset != 0) {
+                String command = getString(buffer, offset + 4);
+                int artifact = offset + 4 + 2 + (buffer.getShort(offset + 4) & 0xFFFF);
+                programs.put(new ArrayList<String>(Arrays.asList(command.split(" "))), new Artifact(getString(buffer, artifact)));
+            }
+        }
+        return programs;
+    }
+}
@@ -0,0 +1,382 @@
+package com.goodworkalan.go.go.library;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An on disk cache of resolved class paths.
+ * <p>
+ * Resolving the class path of a program walks the entire dependency graph,
+ * listing the version directories of each artifact and parsing each of the
+ * dependency files. For an installed program the result almost never changes,
+ * so this cache writes the resolved path parts to a lock file keyed by the
+ * library path, the path parts to resolve and the set of excluded keys.
+ * <p>
+ * The lock file also records a fingerprint of the library entries that the
+ * resolution depended upon, the modification times of the unversioned
+ * directory of each resolved artifact in each library directory and of the
+ * jar and dependency files of each version of the artifact. When any of
+ * them change, the lock file is discarded and the path parts are resolved
+ * again. Checking the fingerprint costs a file system stat for each entry,
+ * but no directory listings and no parsing.
+ * <p>
+ * Only the path part implementations in this package can be written to a lock
+ * file. A collection of path parts that contains any other implementation is
+ * resolved by the library every time.
+ *
+ * @author Alan Gutierrez
+ */
+public class ResolutionCache {
+    /** The version of the lock file format. */
+    private static final int VERSION = 1;
+
+    /** The lock file type for an artifact part. */
+    private static final byte ARTIFACT = 'a';
+
+    /** The lock file type for a jar part. */
+    private static final byte JAR = 'j';
+
+    /** The lock file type for a directory part. */
+    private static final byte DIRECTORY = 'd';
+
+    /** The directory where lock files are written. */
+    private final File directory;
+
+    /**
+     * Create a resolution cache that writes lock files to the given directory.
+     *
+     * @param directory
+     *            The lock file directory.
+     */
+    public ResolutionCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Resolve the given collection of path parts excluding artifacts whose
+     * unversioned key is in the given set of excludes, returning the resolution
+     * recorded in a lock file if it is still current, otherwise resolving the
+     * path parts with the given library and recording the resolution.
+     *
+     * @param library
+     *            The library.
+     * @param parts
+     *            The collection of path parts.
+     * @param exclude
+     *            A set of unversioned keys of artifacts to exclude.
+     * @return An expanded collection of path parts.
+     * @see Library#resolve(Collection, Set)
+     */
+    public Collection<PathPart> resolve(Library library, Collection<PathPart> parts, Set<?> exclude) {
+        return resolve(library, parts, exclude, null);
+    }
+
+    /**
+     * Resolve the given collection of path parts excluding artifacts whose
+     * unversioned key is in the given set of excludes, returning the resolution
+     * recorded in a lock file if it is still current, otherwise resolving the
+     * path parts with the given library, using the given executor service to
+     * expand the path parts concurrently, and recording the resolution.
+     *
+     * @param library
+     *            The library.
+     * @param parts
+     *            The collection of path parts.
+     * @param exclude
+     *            A set of unversioned keys of artifacts to exclude.
+     * @param executor
+     *            The executor service used to expand path parts or null to
+     *            expand path parts on the calling thread.
+     * @return An expanded collection of path parts.
+     * @see Library#resolve(Collection, Set, ExecutorService)
+     */
+    public Collection<PathPart> resolve(Library library, Collection<PathPart> parts, Set<?> exclude, ExecutorService executor) {
+        List<String> key = getKey(library, parts, exclude);
+        if (key == null) {
+            return library.resolve(parts, exclude, executor);
+        }
+        File file = new File(directory, digest(key) + ".lock");
+        if (file.isFile()) {
+            Collection<PathPart> resolved = read(file, key);
+            if (resolved != null) {
+                return resolved;
+            }
+        }
+        long start = System.currentTimeMillis();
+        Collection<PathPart> resolved = library.resolve(parts, exclude, executor);
+        Map<File, Long> fingerprint = getFingerprint(library, resolved);
+        for (long lastModified : fingerprint.values()) {
+            if (CacheFiles.isRacy(lastModified, start)) {
+                return resolved;
+            }
+        }
+        write(file, key, fingerprint, resolved);
+        return resolved;
+    }
+
+    /**
+     * Create the key that identifies a resolution, a list of strings that
+     * describe the library path, the path parts and the sorted excludes, or
+     * null if one of the path parts cannot be recorded in a lock file.
+     *
+     * @param library
+     *            The library.
+     * @param parts
+     *            The collection of path parts.
+     * @param exclude
+     *            A set of unversioned keys of artifacts to exclude.
+     * @return The resolution key or null.
+     */
+    private static List<String> getKey(Library library, Collection<PathPart> parts, Set<?> exclude) {
+        List<String> key = new ArrayList<String>();
+        for (File dir : library.getDirectories()) {
+            key.add("l " + dir.getAbsolutePath());
+        }
+        for (PathPart part : parts) {
+            if (part instanceof ResolutionPart || part instanceof ArtifactPart) {
+                StringBuilder line = new StringBuilder();
+                if (part instanceof ArtifactPart) {
+                    line.append("a ").append(((ArtifactPart) part).getLibraryDirectory().getAbsolutePath()).append(' ');
+                } else {
+                    line.append("r ");
+                }
+                line.append(part.getArtifact());
+                for (String excluded : sort(part.getExcludes())) {
+                    line.append(' ').append(excluded);
+                }
+                key.add(line.toString());
+            } else if (part instanceof JarPart) {
+                key.add("j " + part.getFile().getAbsolutePath());
+            } else if (part instanceof DirectoryPart) {
+                key.add("d " + part.getFile().getAbsolutePath());
+            } else {
+                return null;
+            }
+        }
+        for (String excluded : sort(exclude)) {
+            key.add("e " + excluded);
+        }
+        return key;
+    }
+
+    /**
+     * Create a sorted list of the string values of the given objects, with
+     * file objects converted to absolute paths.
+     *
+     * @param objects
+     *            The objects.
+     * @return The sorted string values.
+     */
+    private static List<String> sort(Collection<?> objects) {
+        List<String> strings = new ArrayList<String>();
+        for (Object object : objects) {
+            if (object instanceof File) {
+                strings.add(((File) object).getAbsolutePath());
+            } else {
+                strings.add(object.toString());
+            }
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+
+    /**
+     * Create a hexadecimal SHA-1 digest of the given key to use as the lock
+     * file name.
+     *
+     * @param key
+     *            The resolution key.
+     * @return The digest of the key.
+     */
+    private static String digest(List<String> key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String line : key) {
+                digest.update(line.getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the modification times of the library entries that the resolution of
+     * the given path parts depended upon. For each artifact part, this is the
+     * unversioned directory of the artifact in each of the library
+     * directories, and the jar and dependency files of each of the versions
+     * within them, since a version is a candidate only if both are present.
+     * Missing files have a modification time of zero, so that their creation
+     * is also detected. Other files in the version directories, such as
+     * compiled dependency files or checksums, do not affect resolution, so the
+     * modification times of the version directories themselves are not used.
+     *
+     * @param library
+     *            The library.
+     * @param resolved
+     *            The resolved path parts.
+     * @return A map of files to their modification times.
+     */
+    private static Map<File, Long> getFingerprint(Library library, Collection<PathPart> resolved) {
+        Map<File, Long> fingerprint = new LinkedHashMap<File, Long>();
+        for (PathPart part : resolved) {
+            if (part instanceof ArtifactPart) {
+                Artifact artifact = part.getArtifact();
+                for (File dir : library.getDirectories()) {
+                    File unversioned = new File(dir, artifact.getUnversionedDirectoryPath());
+                    fingerprint.put(unversioned, unversioned.lastModified());
+                    String[] versions = unversioned.list();
+                    if (versions != null) {
+                        for (String version : versions) {
+                            Artifact candidate = new Artifact(artifact.getGroup(), artifact.getName(), version);
+                            for (String suffix : new String[] { "jar", "dep" }) {
+                                File file = new File(dir, candidate.getPath(suffix));
+                                fingerprint.put(file, file.lastModified());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Read the resolved path parts from the given lock file returning null if
+     * the lock file was written for a different key, if the fingerprint no
+     * longer matches the library, or if the lock file cannot be read.
+     *
+     * @param file
+     *            The lock file.
+     * @param key
+     *            The resolution key.
+     * @return The resolved path parts or null.
+     */
+    private static Collection<PathPart> read(File file, List<String> key) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (!CacheFiles.readHeader(in, VERSION)) {
+                    return null;
+                }
+                int keySize = in.readInt();
+                if (keySize != key.size()) {
+                    return null;
+                }
+                for (String line : key) {
+                    if (!line.equals(in.readUTF())) {
+                        return null;
+                    }
+                }
+                for (int i = 0, stop = in.readInt(); i < stop; i++) {
+                    File entry = new File(in.readUTF());
+                    if (entry.lastModified() != in.readLong()) {
+                        return null;
+                    }
+                }
+                List<PathPart> resolved = new ArrayList<PathPart>();
+                for (int i = 0, stop = in.readInt(); i < stop; i++) {
+                    byte type = in.readByte();
+                    if (type == ARTIFACT) {
+                        File libraryDirectory = new File(in.readUTF());
+                        Artifact artifact = new Artifact(in.readUTF());
+                        Set<Exclude> excludes = new LinkedHashSet<Exclude>();
+                        for (int j = 0, excludeCount = in.readInt(); j < excludeCount; j++) {
+                            excludes.add(new Exclude(in.readUTF()));
+                        }
+                        resolved.add(new ArtifactPart(libraryDirectory, artifact, excludes));
+                    } else if (type == JAR) {
+                        resolved.add(new JarPart(new File(in.readUTF())));
+                    } else if (type == DIRECTORY) {
+                        resolved.add(new DirectoryPart(new File(in.readUTF())));
+                    } else {
+                        return null;
+                    }
+                }
+                return resolved;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // A damaged lock file is simply resolved again.
+            return null;
+        }
+    }
+
+    /**
+     * Write the lock file for the given key, fingerprint and resolved path
+     * parts. The lock file is written atomically, so that a concurrent launch
+     * never reads a partial lock file. Any failure is ignored, since the path
+     * parts will simply be resolved again.
+     *
+     * @param file
+     *            The lock file.
+     * @param key
+     *            The resolution key.
+     * @param fingerprint
+     *            The map of files to their modification times.
+     * @param resolved
+     *            The resolved path parts.
+     */
+    private void write(File file, final List<String> key, final Map<File, Long> fingerprint, final Collection<PathPart> resolved) {
+        for (PathPart part : resolved) {
+            if (!(part instanceof ArtifactPart || part instanceof JarPart || part instanceof DirectoryPart)) {
+                return;
+            }
+        }
+        CacheFiles.write(file, "resolution", new CacheFiles.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                CacheFiles.writeHeader(out, VERSION);
+                out.writeInt(key.size());
+                for (String line : key) {
+                    out.writeUTF(line);
+                }
+                out.writeInt(fingerprint.size());
+                for (Map.Entry<File, Long> entry : fingerprint.entrySet()) {
+                    out.writeUTF(entry.getKey().getAbsolutePath());
+                    out.writeLong(entry.getValue());
+                }
+                out.writeInt(resolved.size());
+                for (PathPart part : resolved) {
+                    if (part instanceof ArtifactPart) {
+                        ArtifactPart artifactPart = (ArtifactPart) part;
+                        out.writeByte(ARTIFACT);
+                        out.writeUTF(artifactPart.getLibraryDirectory().getAbsolutePath());
+                        out.writeUTF(artifactPart.getArtifact().toString());
+                        out.writeInt(artifactPart.getExcludes().size());
+                        for (Exclude exclude : artifactPart.getExcludes()) {
+                            out.writeUTF(exclude.toString());
+                        }
+                    } else {
+                        out.writeByte(part instanceof JarPart ? JAR : DIRECTORY);
+                        out.writeUTF(part.getFile().getAbsolutePath());
+                    }
+                }
+            }
+        });
+    }
+}
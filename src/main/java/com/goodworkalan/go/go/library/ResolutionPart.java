@@ -41,7 +41,7 @@ public class ResolutionPart extends ExpandingPathPart {
             throw new GoException(UNRESOLVED_ARTIFACT, include.getArtifact());
         }
         expanded.add(artifactPart);
-        for (Include subInclude : Artifacts.read(new File(artifactPart.getLibraryDirectory(), artifactPart.getArtifact().getPath("dep")))) {
+        for (Include subInclude : Artifacts.read(new File(artifactPart.getLibraryDirectory(), artifactPart.getArtifact().getPath("dep")), library.getCompiledDirectory())) {
             if (!include.getExcludes().contains(subInclude.getArtifact().getUnversionedKey())) {
                 Set<Exclude> subExcludes = new HashSet<Exclude>();
                 subExcludes.addAll(include.getExcludes());
@@ -2,22 +2,31 @@ package com.goodworkalan.go.go;
 
 import static com.goodworkalan.go.go.ExcludeTest.exceptional;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.Writer;
+import java.util.List;
 
 import org.testng.annotations.Test;
 
+import com.goodworkalan.go.go.library.Artifact;
 import com.goodworkalan.go.go.library.Artifacts;
+import com.goodworkalan.go.go.library.Exclude;
+import com.goodworkalan.go.go.library.Include;
 /**
  * Test suite for artifacts file.
  *
  * @author Alan Gutierrez
  */
-public class ArtifactsReaderTest {
+public class ArtifactsReaderTest extends TemporaryFiles {
     /**
      * Check default constructor.
      */
@@ -103,4 +112,51 @@ public class ArtifactsReaderTest {
         Reader reader = new InputStreamReader(getClass().getResourceAsStream("example.dep"));
         Artifacts.read(reader);
     }
+
+    /**
+     * Write the given text to the given file and set its modification time to
+     * a fixed time in the past.
+     * 
+     * @param file
+     *            The file.
+     * @param text
+     *            The text.
+     */
+    private void write(File file, String text) throws IOException {
+        Writer writer = new FileWriter(file);
+        writer.write(text);
+        writer.close();
+        file.setLastModified(1000000000000L);
+    }
+
+    /** Test caching and compiling a dependency file. */
+    @Test
+    public void compiled() throws IOException {
+        File file = newFile("artifact", ".dep");
+        File directory = newDirectory("dependencies");
+        write(file, "+ com.example/a/0.1 com.example/b\n");
+        List<Include> includes = Artifacts.read(file, directory);
+        assertEquals(includes.size(), 1);
+        assertEquals(includes.get(0).getArtifact(), new Artifact("com.example/a/0.1"));
+        assertEquals(includes.get(0).getExcludes(), Exclude.excludes("com.example/b"));
+        File[] compiled = directory.listFiles();
+        assertEquals(compiled.length, 1);
+        assertTrue(compiled[0].getName().endsWith("-" + file.getName() + "c"));
+        assertFalse(new File(file.getPath() + "c").exists());
+        assertSame(Artifacts.read(file, directory), includes);
+        write(file, "+ com.example/a/0.1 com.example/b\n+ com.example/c/0.1\n");
+        includes = Artifacts.read(file, directory);
+        assertEquals(includes.size(), 2);
+        assertEquals(includes.get(1).getArtifact(), new Artifact("com.example/c/0.1"));
+        assertEquals(includes.get(1).getExcludes().size(), 0);
+    }
+
+    /** Dependency files are not compiled unless a directory is set. */
+    @Test
+    public void uncompiled() throws IOException {
+        File file = newFile("artifact", ".dep");
+        write(file, "+ com.example/a/0.1\n");
+        assertEquals(Artifacts.read(file).size(), 1);
+        assertFalse(new File(file.getPath() + "c").exists());
+    }
 }
@@ -0,0 +1,70 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link Assignment} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class AssignmentTest {
+    /** A class with a field and a setter method, not public. */
+    static class Arguable {
+        /** A flag field. */
+        public boolean flag;
+
+        /** A count set by a method. */
+        private int count;
+
+        /**
+         * Set the count.
+         *
+         * @param count
+         *            The count.
+         */
+        public void addCount(int count) {
+            this.count = count;
+        }
+    }
+
+    /** Assign a primitive field and a primitive setter from boxed values. */
+    @Test
+    public void assign() throws Exception {
+        Assignment flag = new Assignment(Arguable.class.getField("flag"), null);
+        Assignment count = new Assignment(Arguable.class.getMethod("addCount", int.class), null);
+        assertTrue(flag.flag);
+        assertFalse(count.flag);
+        assertEquals(count.type, int.class);
+        assertEquals(count.getMember().getName(), "addCount");
+        Arguable arguable = new Arguable();
+        flag.set(arguable, Boolean.TRUE);
+        count.set(arguable, 7);
+        assertTrue(arguable.flag);
+        assertEquals(arguable.count, 7);
+    }
+
+    /** An exception raised by a setter is wrapped. */
+    @Test(expectedExceptions = InvocationTargetException.class)
+    public void thrown() throws Exception {
+        new Assignment(Thrower.class.getMethod("addValue", String.class), null).set(new Thrower(), "x");
+    }
+
+    /** A class whose setter throws. */
+    public static class Thrower {
+        /**
+         * Throw an exception.
+         *
+         * @param value
+         *            The value.
+         */
+        public void addValue(String value) {
+            throw new IllegalStateException();
+        }
+    }
+}
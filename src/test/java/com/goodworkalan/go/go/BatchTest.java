@@ -0,0 +1,46 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link Batch} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class BatchTest {
+    /** Split command lines with quotes and escapes. */
+    @Test
+    public void split() {
+        assertEquals(Batch.split("  snap  crackle pop "), Arrays.asList("snap", "crackle", "pop"));
+        assertEquals(Batch.split("snap 'a \"b\" \\c' \"d \\\"e\\\"\" f\\ g ''"), Arrays.asList("snap", "a \"b\" \\c", "d \"e\"", "f g", ""));
+    }
+
+    /** An unterminated quote is an error. */
+    @Test(expectedExceptions = GoError.class)
+    public void unterminated() {
+        Batch.split("snap 'crackle");
+    }
+
+    /** Report the exit code of each line and return the first failure. */
+    @Test
+    public void exitCodes() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String lines = "# comment\n\n--bogus\nsnap 'crackle\n";
+        InputOutput io = new InputOutput(new ByteArrayInputStream(lines.getBytes()), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true));
+        Batch batch = new Batch(Collections.<File>emptyList(), new ExecutorSupport(), null, Collections.<String>emptyList(), 2, true, 0);
+        int code = batch.run(io);
+        assertEquals(code, new GoError(GoError.INVALID_ARGUMENT, "--bogus").getExitCode());
+        String output = err.toString();
+        assertTrue(output.indexOf("Line 1 exited") < output.indexOf("Line 2 exited"));
+    }
+}
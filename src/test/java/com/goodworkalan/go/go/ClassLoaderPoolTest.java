@@ -0,0 +1,112 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.go.go.library.DirectoryPart;
+import com.goodworkalan.go.go.library.JarPart;
+import com.goodworkalan.go.go.library.PathPart;
+
+/**
+ * Unit tests for the {@link ClassLoaderPool} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class ClassLoaderPoolTest {
+    /**
+     * Create a class path of a single directory.
+     *
+     * @param name
+     *            The directory name.
+     * @return The class path.
+     */
+    private Collection<PathPart> path(String name) {
+        return Collections.<PathPart>singletonList(new DirectoryPart(new File(name).getAbsoluteFile()));
+    }
+
+    /** The same class path and parent share a class loader. */
+    @Test
+    public void share() {
+        ClassLoaderPool pool = new ClassLoaderPool(Long.MAX_VALUE);
+        List<ClassLoader> evicted = new ArrayList<ClassLoader>();
+        ClassLoader parent = getClass().getClassLoader();
+        ClassLoader first = pool.acquire(path("a"), parent, evicted);
+        assertSame(pool.acquire(path("a"), parent, evicted), first);
+        assertNotSame(pool.acquire(path("b"), parent, evicted), first);
+        assertNotSame(pool.acquire(path("a"), null, evicted), first);
+        assertEquals(pool.size(), 3);
+        pool.release(first, evicted);
+        pool.release(first, evicted);
+        assertEquals(pool.size(), 3);
+        assertTrue(evicted.isEmpty());
+        pool.clear(evicted);
+        assertEquals(pool.size(), 2);
+        assertEquals(evicted, Collections.singletonList(first));
+    }
+
+    /** An unreferenced class loader is evicted after the idle timeout. */
+    @Test
+    public void idle() {
+        ClassLoaderPool pool = new ClassLoaderPool(0);
+        List<ClassLoader> evicted = new ArrayList<ClassLoader>();
+        ClassLoader first = pool.acquire(path("a"), null, evicted);
+        pool.release(first, evicted);
+        assertEquals(evicted, Collections.singletonList(first));
+        assertEquals(pool.size(), 0);
+    }
+
+    /** A pooled parent class loader is not evicted while a child is pooled. */
+    @Test
+    public void parent() {
+        ClassLoaderPool pool = new ClassLoaderPool(Long.MAX_VALUE);
+        List<ClassLoader> evicted = new ArrayList<ClassLoader>();
+        ClassLoader parent = pool.acquire(path("a"), null, evicted);
+        ClassLoader child = pool.acquire(path("b"), parent, evicted);
+        pool.release(parent, evicted);
+        pool.clear(evicted);
+        assertEquals(pool.size(), 2);
+        pool.release(child, evicted);
+        pool.clear(evicted);
+        assertEquals(pool.size(), 0);
+        assertEquals(evicted.size(), 2);
+        assertSame(evicted.get(0), child);
+    }
+
+    /**
+     * An evicted class loader can still load resources until the pool is
+     * cleared.
+     */
+    @Test
+    public void retired() throws IOException {
+        File jar = File.createTempFile("pool", ".jar");
+        jar.deleteOnExit();
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        out.putNextEntry(new JarEntry("a/b.txt"));
+        out.closeEntry();
+        out.close();
+        ClassLoaderPool pool = new ClassLoaderPool(0);
+        List<ClassLoader> evicted = new ArrayList<ClassLoader>();
+        ClassLoader classLoader = pool.acquire(Collections.<PathPart>singletonList(new JarPart(jar)), null, evicted);
+        pool.release(classLoader, evicted);
+        assertEquals(evicted, Collections.singletonList(classLoader));
+        assertNotNull(classLoader.getResource("a/b.txt"));
+        pool.clear(evicted);
+        assertNull(classLoader.getResource("a/b.txt"));
+    }
+}
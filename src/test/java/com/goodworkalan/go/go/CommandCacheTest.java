@@ -0,0 +1,53 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link CommandCache} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class CommandCacheTest {
+    /** An executor sees the entries of its ancestors but not its descendants. */
+    @Test
+    public void scopes() {
+        CommandCache cache = new CommandCache(Integer.MAX_VALUE, false);
+        int[] parent = new int[] { cache.newScope() };
+        int[] child = new int[] { parent[0], cache.newScope() };
+        List<String> key = Arrays.asList("snap");
+        CacheEntry cacheEntry = new CacheEntry();
+        assertNull(cache.put(parent, key, cacheEntry));
+        assertSame(cache.get(child, key), cacheEntry);
+        CacheEntry override = new CacheEntry();
+        assertSame(cache.put(child, key, override), cacheEntry);
+        assertSame(cache.get(child, key), override);
+        assertSame(cache.get(parent, key), cacheEntry);
+        assertNull(cache.put(parent, Arrays.asList("crackle"), cacheEntry));
+        assertNull(cache.get(parent, Arrays.asList("pop")));
+        assertEquals(cache.getHits(), 3);
+        assertEquals(cache.getMisses(), 1);
+    }
+
+    /** The least recently used entry is evicted. */
+    @Test
+    public void evict() {
+        CommandCache cache = new CommandCache(2, true);
+        int[] scopes = new int[] { cache.newScope() };
+        CacheEntry a = new CacheEntry();
+        cache.put(scopes, Arrays.asList("a"), a);
+        cache.put(scopes, Arrays.asList("b"), new CacheEntry());
+        assertSame(cache.get(scopes, Arrays.asList("a")), a);
+        cache.put(scopes, Arrays.asList("c"), new CacheEntry());
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictions(), 1);
+        assertNull(cache.get(scopes, Arrays.asList("b")));
+        assertSame(cache.get(scopes, Arrays.asList("a")), a);
+    }
+}
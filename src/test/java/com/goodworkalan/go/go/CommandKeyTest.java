@@ -0,0 +1,41 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link CommandKey} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class CommandKeyTest {
+    /** A command key is a list of its elements. */
+    @Test
+    public void list() {
+        CommandKey key = CommandKey.EMPTY.extend("snap").extend("--snap:foo=bar").extend("crackle");
+        List<String> expected = Arrays.asList("snap", "--snap:foo=bar", "crackle");
+        assertEquals(key.size(), 3);
+        assertEquals(key.get(1), "--snap:foo=bar");
+        assertEquals(key.hashCode(), expected.hashCode());
+        assertTrue(key.equals(expected));
+        assertTrue(expected.equals(key));
+        assertEquals(CommandKey.EMPTY.hashCode(), Collections.emptyList().hashCode());
+        assertEquals(CommandKey.EMPTY.extend(expected), key);
+    }
+
+    /** Compare command keys that share a prefix. */
+    @Test
+    public void shared() {
+        CommandKey snap = CommandKey.EMPTY.extend("snap");
+        assertEquals(snap.extend("crackle"), CommandKey.EMPTY.extend("snap").extend("crackle"));
+        assertFalse(snap.extend("crackle").equals(snap.extend("pop")));
+        assertFalse(snap.equals(snap.extend("pop")));
+    }
+}
@@ -0,0 +1,92 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.go.go.commands.BranchCommand;
+import com.goodworkalan.go.go.commands.LeafCommand;
+
+/**
+ * Unit tests for the {@link CommandManifest} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class CommandManifestTest extends TemporaryFiles {
+    /**
+     * Create a jar file with the given contents.
+     *
+     * @param contents
+     *            The contents.
+     * @return The jar file.
+     */
+    private File newJar(String contents) throws IOException {
+        File jar = new File(newDirectory("manifest"), "program.jar");
+        OutputStream out = new FileOutputStream(jar);
+        out.write(contents.getBytes());
+        out.close();
+        return jar;
+    }
+
+    /** Write and read a manifest and build a lazy command node from it. */
+    @Test
+    public void manifest() throws IOException {
+        File jar = newJar("jar");
+        Map<Class<? extends Commandable>, MetaCommand> metaCommands = new LinkedHashMap<Class<? extends Commandable>, MetaCommand>();
+        metaCommands.put(LeafCommand.class, new CommandNode(new InputOutput(), LeafCommand.class));
+        metaCommands.put(AnnotationNamedArguments.class, new CommandNode(new InputOutput(), AnnotationNamedArguments.class));
+        CommandManifest.write(jar, metaCommands);
+        List<CommandManifest> manifests = CommandManifest.read(jar);
+        assertEquals(manifests.size(), 2);
+        assertEquals(manifests.get(0).className, LeafCommand.class.getName());
+        assertEquals(manifests.get(0).name, "leaf");
+        assertEquals(manifests.get(0).parentClassName, BranchCommand.class.getName());
+        assertNull(manifests.get(1).parentClassName);
+        assertEquals(manifests.get(1).arguments.get("foo"), String.class.getName());
+        CommandNode commandNode = new CommandNode(new ExecutorSupport(), new InputOutput(), getClass().getClassLoader(), manifests.get(1));
+        assertEquals(commandNode.getArguments().get("foo"), String.class);
+        assertSame(commandNode.getCommandClass(), AnnotationNamedArguments.class);
+        assertEquals(commandNode.getAssignments().keySet(), commandNode.getArguments().keySet());
+    }
+
+    /** A manifest that does not match its jar is ignored. */
+    @Test
+    public void stale() throws IOException {
+        File jar = newJar("jar");
+        CommandManifest.write(jar, new LinkedHashMap<Class<? extends Commandable>, MetaCommand>());
+        assertEquals(CommandManifest.read(jar).size(), 0);
+        OutputStream out = new FileOutputStream(jar, true);
+        out.write("longer".getBytes());
+        out.close();
+        assertNull(CommandManifest.read(jar));
+    }
+
+    /** A manifest that cannot be written is not an error. */
+    @Test
+    public void unwritable() throws IOException {
+        File file = newJar("jar");
+        File jar = new File(new File(file, "directory"), "program.jar");
+        assertFalse(CommandManifest.write(jar, new LinkedHashMap<Class<? extends Commandable>, MetaCommand>()));
+        assertNull(CommandManifest.read(jar));
+    }
+
+    /** Find the jar file of a resource. */
+    @Test
+    public void getJar() throws IOException {
+        File jar = newJar("jar").getAbsoluteFile();
+        assertEquals(CommandManifest.getJar(new URL("jar:" + jar.toURI() + "!/META-INF/services/com.goodworkalan.go.go.Commandable")), jar);
+        assertNull(CommandManifest.getJar(new URL("file:/tmp/classes/META-INF/services/com.goodworkalan.go.go.Commandable")));
+    }
+}
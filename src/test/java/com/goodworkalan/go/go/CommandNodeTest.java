@@ -2,9 +2,15 @@ package com.goodworkalan.go.go;
 
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Map;
 
 import org.testng.annotations.Test;
 
@@ -37,4 +43,76 @@ public class CommandNodeTest {
         assertEquals(commandNode.getArguments().size(), 2);
         assertEquals(commandNode.getArguments().get("foo"), String.class);
     }
+
+    /** Create new commandables with the cached constructor. */
+    @Test
+    public void newCommandable() {
+        CommandNode commandNode = new CommandNode(new CommandNode(new InputOutput(), NoArguments.class));
+        Commandable commandable = commandNode.newCommandable();
+        assertTrue(commandable instanceof NoArguments);
+        assertNotSame(commandNode.newCommandable(), commandable);
+    }
+
+    /** An unchecked exception thrown by a constructor is thrown as is. */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void constructorThrows() {
+        new CommandNode(new InputOutput(), ThrowingConstructor.class).newCommandable();
+    }
+
+    /** Build the argument dispatch table. */
+    @Test
+    public void dispatch() {
+        CommandNode commandNode = new CommandNode(new InputOutput(), Flagged.class);
+        Map<String, Dispatch> dispatch = commandNode.getDispatch();
+        Dispatch quiet = dispatch.get("quiet");
+        assertEquals(quiet.name, "quiet");
+        assertFalse(quiet.negated);
+        assertSame(dispatch.get(commandNode.getName() + ":quiet"), quiet);
+        Dispatch noQuiet = dispatch.get(commandNode.getName() + ":no-quiet");
+        assertEquals(noQuiet.name, "quiet");
+        assertTrue(noQuiet.negated);
+        assertSame(noQuiet.assignment, quiet.assignment);
+        assertNull(dispatch.get("no-label"));
+        assertEquals(dispatch.get("label").name, "label");
+        assertEquals(dispatch.get("verbose").verbosity, 1);
+        assertEquals(dispatch.get("no-verbose").verbosity, -1);
+        assertSame(commandNode.getDispatch(), dispatch);
+    }
+
+    /** A commandable with a flag argument and a string argument. */
+    public static class Flagged implements Commandable {
+        /** A flag argument. */
+        @Argument
+        public boolean quiet;
+
+        /** A string argument. */
+        @Argument
+        public String label;
+
+        /**
+         * Do nothing.
+         * 
+         * @param env
+         *            The environment.
+         */
+        public void execute(Environment env) {
+        }
+    }
+
+    /** A commandable whose constructor throws an exception. */
+    public static class ThrowingConstructor implements Commandable {
+        /** Throw an exception. */
+        public ThrowingConstructor() {
+            throw new IllegalStateException();
+        }
+
+        /**
+         * Do nothing.
+         * 
+         * @param env
+         *            The environment.
+         */
+        public void execute(Environment env) {
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link Daemon} and {@link Client} classes.
+ *
+ * @author Alan Gutierrez
+ */
+public class DaemonTest {
+    /**
+     * Start a daemon that writes its port and secret to the given daemon file
+     * in a new thread and wait for the daemon file to appear.
+     *
+     * @param daemonFile
+     *            The daemon file.
+     * @return The daemon thread.
+     */
+    private Thread start(final File daemonFile) throws InterruptedException {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                new ProgramQueue(Collections.<File>emptyList(), "--daemon=" + daemonFile).run(InputOutput.nulls());
+            }
+        });
+        thread.start();
+        for (int i = 0; i < 500 && !daemonFile.exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(daemonFile.exists());
+        return thread;
+    }
+
+    /**
+     * Run the given command line in the daemon described by the given daemon
+     * file.
+     *
+     * @param daemonFile
+     *            The daemon file.
+     * @param err
+     *            The standard error output.
+     * @param arguments
+     *            The command line.
+     * @return The exit code.
+     */
+    private int run(File daemonFile, ByteArrayOutputStream err, String... arguments) throws IOException {
+        return Client.run(daemonFile, new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), err, arguments);
+    }
+
+    /** Run a command line in a daemon and stop the daemon. */
+    @Test
+    public void daemon() throws IOException, InterruptedException {
+        File daemonFile = File.createTempFile("daemon", "");
+        daemonFile.delete();
+        daemonFile.deleteOnExit();
+        Thread thread = start(daemonFile);
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(run(daemonFile, err, "--bogus"), 1);
+        assertEquals(err.toString().trim(), new GoError(GoError.INVALID_ARGUMENT, "--bogus").getMessage());
+
+        BufferedReader reader = new BufferedReader(new FileReader(daemonFile));
+        String port = reader.readLine().split(" ")[0];
+        reader.close();
+        File impostor = File.createTempFile("daemon", "");
+        impostor.deleteOnExit();
+        Writer writer = new FileWriter(impostor);
+        writer.write(port + " 0123456789abcdef0123456789abcdef\n");
+        writer.close();
+        try {
+            run(impostor, err, "--bogus");
+            assertTrue(false);
+        } catch (IOException e) {
+        }
+
+        assertEquals(run(daemonFile, err, Daemon.STOP), 0);
+        thread.join();
+        assertFalse(daemonFile.exists());
+    }
+
+    /**
+     * A connection that sends nothing is disconnected after the handshake
+     * timeout, freeing the only connection permit for the next client.
+     */
+    @Test
+    public void handshakeTimeout() throws IOException, InterruptedException {
+        final File daemonFile = File.createTempFile("daemon", "");
+        daemonFile.delete();
+        daemonFile.deleteOnExit();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                new Daemon(Collections.<File>emptyList(), new ExecutorSupport(), daemonFile, 0, 1, 100).serve(InputOutput.nulls());
+            }
+        });
+        thread.start();
+        for (int i = 0; i < 500 && !daemonFile.exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(daemonFile.exists());
+
+        BufferedReader reader = new BufferedReader(new FileReader(daemonFile));
+        int port = Integer.parseInt(reader.readLine().split(" ")[0]);
+        reader.close();
+        Socket silent = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        try {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(run(daemonFile, err, "--bogus"), 1);
+            assertEquals(silent.getInputStream().read(), -1);
+        } finally {
+            silent.close();
+        }
+
+        assertEquals(run(daemonFile, new ByteArrayOutputStream(), Daemon.STOP), 0);
+        thread.join();
+        assertFalse(daemonFile.exists());
+    }
+}
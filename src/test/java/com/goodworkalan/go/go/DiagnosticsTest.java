@@ -0,0 +1,63 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link Diagnostics} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class DiagnosticsTest {
+    /** Write posted messages in order. */
+    @Test
+    public void text() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputOutput io = new InputOutput(System.in, System.out, new PrintStream(out, true));
+        Diagnostics diagnostics = new Diagnostics(16, false);
+        assertTrue(diagnostics.post(io, null, 1, Batch.class, "exit", 1, 0, "a"));
+        assertTrue(diagnostics.post(io, null, 1, Batch.class, "exit", 2, 1, "b"));
+        diagnostics.flush();
+        assertEquals(out.toString(), "Line 1 exited with code 0: a\nLine 2 exited with code 1: b\n");
+        diagnostics.close();
+        assertFalse(diagnostics.post(io, null, 1, Batch.class, "exit", 3, 0, "c"));
+    }
+
+    /** Prefix messages with their structured fields. */
+    @Test
+    public void fields() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputOutput io = new InputOutput(System.in, System.out, new PrintStream(out, true));
+        Diagnostics diagnostics = new Diagnostics(16, true);
+        diagnostics.post(io, Arrays.asList("snap", "crackle"), 2, Batch.class, "exit", 1, 0, "a");
+        diagnostics.close();
+        assertEquals(out.toString(), "2\tsnap crackle\tBatch/exit\tLine 1 exited with code 0: a\n");
+    }
+
+    /** Drop messages when the ring buffer is full. */
+    @Test
+    public void dropped() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputOutput io = new InputOutput(System.in, System.out, new PrintStream(out, true));
+        Diagnostics diagnostics = new Diagnostics(2, false);
+        int posted = 0;
+        synchronized (io.err) {
+            for (int i = 0; i < 8; i++) {
+                if (diagnostics.post(io, null, 1, Batch.class, "exit", i, 0, "a")) {
+                    posted++;
+                }
+            }
+        }
+        diagnostics.close();
+        assertTrue(posted < 8);
+        assertEquals(diagnostics.getDropped(), 8 - posted);
+        assertTrue(out.toString().endsWith("Dropped " + (8 - posted) + " verbose or debug messages because the diagnostics buffer was full.\n"));
+    }
+}
@@ -1,6 +1,7 @@
 package com.goodworkalan.go.go;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -33,6 +34,27 @@ public class EnvironmentTest {
 
     }
 
+    /** Get the last command, arguments and remaining argument. */
+    @Test
+    public void last() {
+        Environment env = new Environment(new Library(new File[0]), new InputOutput(), getExecutor());
+        assertNull(env.getLastCommand());
+        assertNull(env.getLastArguments());
+        assertNull(env.getLastRemaining());
+        env.addCommand("snap");
+        env.addArgument("--snap:a=b");
+        env.addCommand("watusi");
+        env.addArgument("--watusi:c=d");
+        env.remaining.add("e");
+        Environment copy = new Environment(env, getExecutor());
+        copy.addCommand("dance");
+        assertEquals(env.getLastCommand(), "watusi");
+        assertEquals(env.getLastArguments(), Collections.singletonList("--watusi:c=d"));
+        assertEquals(env.getLastRemaining(), "e");
+        assertEquals(copy.getLastCommand(), "dance");
+        assertEquals(copy.getLastArguments().size(), 0);
+    }
+
     /** Test debug output. */
     @Test
     public void debug() {
@@ -3,10 +3,13 @@ package com.goodworkalan.go.go;
 import static com.goodworkalan.go.go.ExcludeTest.exceptional;
 import static com.goodworkalan.go.go.GoException.COMMANDABLE_RESOURCES_IO;
 import static com.goodworkalan.go.go.GoException.COMMANDABLE_RESOURCE_IO;
+import static com.goodworkalan.go.go.GoException.FUTURE_EXECUTION;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -14,6 +17,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -27,6 +31,7 @@ import org.testng.annotations.Test;
 
 import com.goodworkalan.go.go.library.Artifact;
 import com.goodworkalan.go.go.library.Library;
+import com.goodworkalan.ilk.Ilk;
 
 /**
  * Unit tests for the {@link Executor} class.
@@ -122,6 +127,47 @@ public class ExecutorTest {
         assertEquals(out.toString(), "WARNING: Command class java.lang.String does not implement com.goodworkalan.go.go.Commandable.\n");
     }
 
+    /** Test that an inline continuation runs with the given context class loader. */
+    @Test
+    public void continueInline() {
+        final ClassLoader classLoader = new URLClassLoader(new URL[0]);
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final ClassLoader[] seen = new ClassLoader[1];
+        Executor.continueInline(classLoader, null, null, new Executor.FutureBox() {
+            public Ilk.Box call(Executor executor, Environment env) {
+                seen[0] = Thread.currentThread().getContextClassLoader();
+                return null;
+            }
+        });
+        assertSame(seen[0], classLoader);
+        assertSame(Thread.currentThread().getContextClassLoader(), contextClassLoader);
+    }
+
+    /**
+     * Test that an exception thrown by an inline continuation is wrapped as it
+     * would be by a spawned thread and that the context class loader is
+     * restored.
+     */
+    @Test
+    public void continueInlineException() {
+        final RuntimeException thrown = new IllegalStateException();
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        GoException caught = null;
+        try {
+            Executor.continueInline(new URLClassLoader(new URL[0]), null, null, new Executor.FutureBox() {
+                public Ilk.Box call(Executor executor, Environment env) {
+                    throw thrown;
+                }
+            });
+        } catch (GoException e) {
+            caught = e;
+        }
+        assertEquals(caught.getCode(), FUTURE_EXECUTION);
+        assertTrue(caught.getCause() instanceof ExecutionException);
+        assertSame(caught.getCause().getCause(), thrown);
+        assertSame(Thread.currentThread().getContextClassLoader(), contextClassLoader);
+    }
+
     /**
      * Create an executor that will search for commands in two of the test
      * libraries.
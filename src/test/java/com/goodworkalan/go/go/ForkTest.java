@@ -0,0 +1,126 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * Unit tests for the {@link Fork} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class ForkTest {
+    /** A fork that has not started is run by the joining thread. */
+    @Test
+    public void joinInline() {
+        Scheduler scheduler = new Scheduler(1, 1, null);
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.submit(new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        }, 0);
+        final Thread[] ranOn = new Thread[1];
+        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+            public Ilk.Box call() {
+                ranOn[0] = Thread.currentThread();
+                return null;
+            }
+        });
+        scheduler.submit(future, 0);
+        Fork<Void> fork = new Fork<Void>(future, scheduler, null, InputOutput.nulls(), 0, null);
+        assertEquals(fork.join(), 0);
+        assertTrue(fork.isDone());
+        assertSame(ranOn[0], Thread.currentThread());
+        assertNull(fork.getOutcome());
+        latch.countDown();
+        scheduler.awaitIdle();
+        scheduler.shutdown();
+    }
+
+    /** An error raised by a fork is reported as its exit code. */
+    @Test
+    public void error() {
+        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+            public Ilk.Box call() {
+                throw new GoError(GoError.INVALID_ARGUMENT, "--bogus");
+            }
+        });
+        future.run();
+        Fork<Void> fork = new Fork<Void>(future, null, null, InputOutput.nulls(), 0, null);
+        assertEquals(fork.join(), new GoError(GoError.INVALID_ARGUMENT, "--bogus").getExitCode());
+        assertNull(fork.getOutcome());
+    }
+
+    /** An error raised by a fork that is never joined is reaped once. */
+    @Test
+    public void reap() {
+        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+            public Ilk.Box call() {
+                throw new GoError(GoError.INVALID_ARGUMENT, "--bogus");
+            }
+        });
+        future.run();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        InputOutput io = new InputOutput(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true));
+        Fork<Void> fork = new Fork<Void>(future, null, null, io, 0, null);
+        GoError error = new GoError(GoError.INVALID_ARGUMENT, "--bogus");
+        assertEquals(fork.reap(), error.getExitCode());
+        assertEquals(err.toString().trim(), error.getMessage());
+        assertEquals(fork.reap(), 0);
+        Fork<Void> joined = new Fork<Void>(future, null, null, InputOutput.nulls(), 0, null);
+        joined.join();
+        assertEquals(joined.reap(), 0);
+    }
+
+    /** An error raised by a fork whose outcome is requested is reported. */
+    @Test
+    public void outcomeError() {
+        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+            public Ilk.Box call() {
+                throw new GoError(GoError.INVALID_ARGUMENT, "--bogus");
+            }
+        });
+        future.run();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        InputOutput io = new InputOutput(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true));
+        Fork<Void> fork = new Fork<Void>(future, null, null, io, 0, null);
+        assertNull(fork.getOutcome());
+        assertEquals(err.toString().trim(), new GoError(GoError.INVALID_ARGUMENT, "--bogus").getMessage());
+        assertEquals(fork.reap(), 0);
+    }
+
+    /** Diagnostics posted before a fork error are written before the error. */
+    @Test
+    public void diagnosticsFirst() {
+        FutureTask<Ilk.Box> future = new FutureTask<Ilk.Box>(new Callable<Ilk.Box>() {
+            public Ilk.Box call() {
+                throw new GoError(GoError.INVALID_ARGUMENT, "--bogus");
+            }
+        });
+        future.run();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        InputOutput io = new InputOutput(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true));
+        Diagnostics diagnostics = new Diagnostics(16, false);
+        diagnostics.post(io, null, 1, Batch.class, "exit", 1, 0, "a");
+        Fork<Void> fork = new Fork<Void>(future, null, null, io, 0, diagnostics);
+        fork.join();
+        diagnostics.close();
+        assertEquals(err.toString(), "Line 1 exited with code 0: a\n" + new GoError(GoError.INVALID_ARGUMENT, "--bogus").getMessage() + "\n");
+    }
+}
@@ -0,0 +1,75 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link LayeredList} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class LayeredListTest {
+    /** A child list behaves as a copy of its parent. */
+    @Test
+    public void copy() {
+        LayeredList<String> parent = new LayeredList<String>();
+        parent.add("a");
+        parent.add("b");
+        LayeredList<String> child = new LayeredList<String>(parent);
+        assertEquals(child, Arrays.asList("a", "b"));
+        child.add("c");
+        parent.add("d");
+        assertEquals(parent, Arrays.asList("a", "b", "d"));
+        assertEquals(child, Arrays.asList("a", "b", "c"));
+        child.set(1, "B");
+        parent.set(0, "A");
+        assertEquals(parent, Arrays.asList("A", "b", "d"));
+        assertEquals(child, Arrays.asList("a", "B", "c"));
+        child.remove(0);
+        child.add(0, "x");
+        assertEquals(child, Arrays.asList("x", "B", "c"));
+        assertEquals(parent, Arrays.asList("A", "b", "d"));
+    }
+
+    /** Insert into a list whose top layer is frozen. */
+    @Test
+    public void insertFrozen() {
+        LayeredList<String> parent = new LayeredList<String>();
+        parent.add("a");
+        parent.add("b");
+        parent.add("c");
+        LayeredList<String> child = new LayeredList<String>(parent);
+        parent.add(0, "x");
+        assertEquals(parent, Arrays.asList("x", "a", "b", "c"));
+        parent.add(2, "y");
+        assertEquals(parent, Arrays.asList("x", "a", "y", "b", "c"));
+        child.add(1, "z");
+        assertEquals(child, Arrays.asList("a", "z", "b", "c"));
+        parent.listIterator(1).add("w");
+        assertEquals(parent, Arrays.asList("x", "w", "a", "y", "b", "c"));
+        assertEquals(child, Arrays.asList("a", "z", "b", "c"));
+    }
+
+    /** Deep chains of children are merged. */
+    @Test
+    public void deep() {
+        LayeredList<Integer> list = new LayeredList<Integer>();
+        for (int i = 0; i < LayeredMap.MAXIMUM_DEPTH * 3; i++) {
+            list.add(i);
+            list = new LayeredList<Integer>(list);
+        }
+        assertEquals(list.size(), LayeredMap.MAXIMUM_DEPTH * 3);
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(list.get(i), (Integer) i);
+        }
+    }
+
+    /** An index out of bounds is rejected. */
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void outOfBounds() {
+        new LayeredList<String>(new LayeredList<String>()).get(0);
+    }
+}
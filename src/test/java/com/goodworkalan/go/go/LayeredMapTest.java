@@ -0,0 +1,70 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link LayeredMap} and {@link LayeredSet} classes.
+ *
+ * @author Alan Gutierrez
+ */
+public class LayeredMapTest {
+    /** A child map behaves as a copy of its parent. */
+    @Test
+    public void copy() {
+        LayeredMap<String, Integer> parent = new LayeredMap<String, Integer>();
+        parent.put("a", 1);
+        parent.put("b", 2);
+        LayeredMap<String, Integer> child = new LayeredMap<String, Integer>(parent);
+        assertEquals(child.put("b", 3), (Integer) 2);
+        child.put("c", 4);
+        parent.put("d", 5);
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        expected.put("a", 1);
+        expected.put("b", 3);
+        expected.put("c", 4);
+        assertEquals(child, expected);
+        assertEquals(child.size(), 3);
+        assertNull(child.get("d"));
+        assertEquals(parent.get("b"), (Integer) 2);
+        assertFalse(parent.containsKey("c"));
+        assertEquals(parent.size(), 3);
+    }
+
+    /** Deep chains of children are merged. */
+    @Test
+    public void deep() {
+        LayeredMap<Integer, Integer> map = new LayeredMap<Integer, Integer>();
+        for (int i = 0; i < LayeredMap.MAXIMUM_DEPTH * 3; i++) {
+            map.put(i, i);
+            map = new LayeredMap<Integer, Integer>(map);
+        }
+        assertEquals(map.size(), LayeredMap.MAXIMUM_DEPTH * 3);
+        assertEquals(map.get(0), (Integer) 0);
+    }
+
+    /** A child set behaves as a copy of its parent. */
+    @Test
+    public void set() {
+        LayeredSet<String> parent = new LayeredSet<String>();
+        parent.add("a");
+        LayeredSet<String> child = new LayeredSet<String>(parent);
+        assertFalse(child.add("a"));
+        assertTrue(child.add("b"));
+        parent.add("c");
+        Set<String> expected = new HashSet<String>();
+        expected.add("a");
+        expected.add("b");
+        assertEquals(child, expected);
+        assertFalse(parent.contains("b"));
+    }
+}
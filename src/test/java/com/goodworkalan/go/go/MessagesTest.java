@@ -0,0 +1,78 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.MissingResourceException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link Messages} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class MessagesTest {
+    /** The name of the standard error message bundle. */
+    private final static String STDERR = "com.goodworkalan.go.go.stderr";
+
+    /** Cache the catalog of a bundle. */
+    @Test
+    public void cached() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        assertSame(Messages.getInstance(STDERR, classLoader), Messages.getInstance(STDERR, classLoader));
+        assertNull(Messages.getInstance("com.goodworkalan.go.go.missing", classLoader));
+        assertNull(Messages.getInstance("com.goodworkalan.go.go.missing", classLoader));
+    }
+
+    /** Format messages. */
+    @Test
+    public void format() {
+        Messages messages = Messages.getInstance(STDERR, getClass().getClassLoader());
+        assertEquals(messages.format("Environment/bundle.missing"), "Error message bundle missing. This is a meta-error message.");
+        assertEquals(messages.format("Environment/message.missing", "a"), "Error message [a] missing. This is a meta-error message.");
+    }
+
+    /** Missing message key. */
+    @Test(expectedExceptions = MissingResourceException.class)
+    public void missing() {
+        Messages.getInstance(STDERR, getClass().getClassLoader()).format("Environment/missing");
+    }
+
+    /** Format exception messages when they are requested. */
+    @Test
+    public void lazy() {
+        GoException e = new GoException(GoException.NO_SUCH_ARGUMENT, "foo");
+        assertEquals(e.getMessage(), "No such argument [foo].");
+        assertSame(e.getMessage(), e.getMessage());
+    }
+
+    /**
+     * An exception does not keep the context class loader it was created with
+     * from being collected, and still formats its message afterward.
+     */
+    @Test
+    public void collected() {
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        ClassLoader classLoader = new URLClassLoader(new URL[0], previous);
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(classLoader);
+        GoException e;
+        thread.setContextClassLoader(classLoader);
+        try {
+            e = new GoException(GoException.NO_SUCH_ARGUMENT, "foo");
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+        classLoader = null;
+        for (int i = 0; i < 32 && reference.get() != null; i++) {
+            System.gc();
+        }
+        assertNull(reference.get());
+        assertEquals(e.getMessage(), "No such argument [foo].");
+    }
+}
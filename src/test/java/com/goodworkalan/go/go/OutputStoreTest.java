@@ -0,0 +1,108 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.go.go.library.DirectoryPart;
+import com.goodworkalan.go.go.library.PathPart;
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * Unit tests for the {@link OutputStore} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class OutputStoreTest extends TemporaryFiles {
+    /** A codec that records only the number of outputs. */
+    public static class CountingCodec implements OutputCodec {
+        /** Encode the number of outputs, refusing to encode none. */
+        public byte[] encode(List<Ilk.Box> outputs) {
+            return outputs.isEmpty() ? null : new byte[] { (byte) outputs.size() };
+        }
+
+        /** Decode as many ignorable outputs as were encoded. */
+        public List<Ilk.Box> decode(byte[] bytes, ClassLoader classLoader) {
+            List<Ilk.Box> outputs = new ArrayList<Ilk.Box>();
+            for (int i = 0; i < bytes[0]; i++) {
+                outputs.add(new Ilk<IgnorableOutput>(IgnorableOutput.class).box(new IgnorableOutput()));
+            }
+            return outputs;
+        }
+    }
+
+    /**
+     * Create a cache entry with the given number of outputs and a transient
+     * command.
+     *
+     * @param count
+     *            The number of outputs.
+     * @return The cache entry.
+     */
+    private CacheEntry entry(int count) {
+        CacheEntry cacheEntry = new CacheEntry();
+        cacheEntry.transients.add(NoArguments.class);
+        for (int i = 0; i < count; i++) {
+            cacheEntry.outputs.add(new Ilk<IgnorableOutput>(IgnorableOutput.class).box(new IgnorableOutput()));
+        }
+        return cacheEntry;
+    }
+
+    /** Outputs are restored for the same command and class path. */
+    @Test
+    public void restore() throws IOException {
+        OutputStore store = new OutputStore(newDirectory("outputs"), Long.MAX_VALUE, new CountingCodec());
+        List<String> command = Arrays.asList("snap", "--snap:crackle=pop");
+        List<String> fingerprint = Collections.singletonList("a.jar\t1\t2");
+        store.put(command, fingerprint, entry(3));
+        CacheEntry cacheEntry = store.get(command, fingerprint, getClass().getClassLoader());
+        assertNotNull(cacheEntry);
+        assertEquals(cacheEntry.outputs.size(), 3);
+        assertEquals(cacheEntry.transients, Collections.singletonList(NoArguments.class));
+        assertNull(store.get(command, Collections.singletonList("a.jar\t1\t3"), getClass().getClassLoader()));
+        assertNull(store.get(Arrays.asList("snap"), fingerprint, getClass().getClassLoader()));
+        store.put(Arrays.asList("snap"), fingerprint, entry(0));
+        assertNull(store.get(Arrays.asList("snap"), fingerprint, getClass().getClassLoader()));
+    }
+
+    /** The least recently used outputs are evicted. */
+    @Test
+    public void evict() throws IOException {
+        File directory = newDirectory("outputs");
+        OutputStore store = new OutputStore(directory, 1, new CountingCodec());
+        List<String> fingerprint = Collections.emptyList();
+        store.put(Arrays.asList("a"), fingerprint, entry(1));
+        assertEquals(directory.list().length, 0);
+        store = new OutputStore(directory, 1024, new CountingCodec());
+        for (int i = 0; i < 64; i++) {
+            store.put(Arrays.asList("command", Integer.toString(i)), fingerprint, entry(1));
+        }
+        long size = 0;
+        for (File file : directory.listFiles()) {
+            size += file.length();
+        }
+        assertTrue(size <= 1024);
+        assertFalse(directory.list().length == 0);
+    }
+
+    /** Recently modified class path files are not trusted. */
+    @Test
+    public void racy() throws IOException {
+        File file = newFile("racy", ".jar");
+        List<PathPart> parts = Collections.<PathPart>singletonList(new DirectoryPart(file.getAbsoluteFile()));
+        assertNull(OutputStore.getFingerprint(parts));
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        assertEquals(OutputStore.getFingerprint(parts).size(), 1);
+    }
+}
@@ -0,0 +1,47 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.ilk.Ilk;
+
+/**
+ * Unit tests for the {@link Outputs} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class OutputsTest {
+    /** Get the most specific assignable output. */
+    @Test
+    public void mostSpecific() {
+        Outputs outputs = new Outputs();
+        Ilk.Box number = new Ilk<Number>(Number.class).box(1L);
+        Ilk.Box integer = new Ilk<Integer>(Integer.class).box(2);
+        outputs.add(number);
+        outputs.add(integer);
+        assertSame(outputs.get(new Ilk<Number>(Number.class).key), integer);
+        assertSame(outputs.get(new Ilk<Long>(Long.class).key), null);
+        assertEquals(outputs.getBoxes().size(), 2);
+    }
+
+    /** Update memoized answers when an output is added. */
+    @Test
+    public void memoized() {
+        Outputs outputs = new Outputs();
+        assertNull(outputs.get(new Ilk<Number>(Number.class).key));
+        Ilk.Box number = new Ilk<Number>(Number.class).box(1L);
+        outputs.add(number);
+        assertSame(outputs.get(new Ilk<Number>(Number.class).key), number);
+        outputs.add(new Ilk<String>(String.class).box("a"));
+        assertSame(outputs.get(new Ilk<Number>(Number.class).key), number);
+        Ilk.Box integer = new Ilk<Integer>(Integer.class).box(2);
+        outputs.add(integer);
+        assertSame(outputs.get(new Ilk<Number>(Number.class).key), integer);
+        Ilk.Box replacement = new Ilk<Integer>(Integer.class).box(3);
+        outputs.add(replacement);
+        assertSame(outputs.get(new Ilk<Number>(Number.class).key), replacement);
+    }
+}
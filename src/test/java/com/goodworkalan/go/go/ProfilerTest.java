@@ -0,0 +1,64 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link Profiler} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class ProfilerTest {
+    /** Add runs of a phase together. */
+    @Test
+    public void phases() {
+        Profiler profiler = new Profiler();
+        Profiler.Node program = profiler.getRoot().child("program");
+        Profiler.end(Profiler.begin(program, "configure"));
+        Profiler.end(Profiler.begin(program, "configure"));
+        Profiler.end(Profiler.begin(program.child("layer 1"), "resolve"));
+        assertSame(program.child("configure"), program.getChildren().get(0));
+        assertEquals(program.child("configure").getCount(), 2);
+        assertTrue(program.child("configure").getNanos() >= 0);
+        assertEquals(program.getChildren().size(), 2);
+        assertEquals(program.child("layer 1").child("resolve").getCount(), 1);
+    }
+
+    /** Ignore phases when profiling is disabled. */
+    @Test
+    public void disabled() {
+        assertNull(Profiler.begin(null, "configure"));
+        assertNull(Profiler.begin(null));
+        Profiler.end(null);
+    }
+
+    /** Write the profile as JSON. */
+    @Test
+    public void json() {
+        Profiler.Node node = new Profiler.Node("program \"a\"");
+        node.add(5, -1);
+        node.child("execute").add(3, 10);
+        StringBuilder json = new StringBuilder();
+        Profiler.json(json, node);
+        assertEquals(json.toString(), "{\"name\":\"program \\\"a\\\"\",\"count\":1,\"nanos\":5,\"children\":[{\"name\":\"execute\",\"count\":1,\"nanos\":3,\"bytes\":10,\"children\":[]}]}");
+    }
+
+    /** Print the profile as a tree. */
+    @Test
+    public void print() {
+        Profiler profiler = new Profiler();
+        Profiler.Node program = profiler.getRoot().child("program");
+        program.add(2000000, -1);
+        program.child("execute").add(1000000, 64);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profiler.print(new InputOutput(System.in, System.out, new PrintStream(out, true)));
+        assertEquals(out.toString(), "program: 1 runs, 2.000 ms, ? bytes allocated\n  execute: 1 runs, 1.000 ms, 64 bytes allocated\n");
+    }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
 
 /**
  * Unit tests for the {@link ProgramQueue} class.
@@ -34,4 +35,17 @@ public class ProgramQueueTest {
     public void runButton() {
         assertEquals(new ProgramQueue(getLibrary(), "snap", "--mississippi", "--button:saratoga=Nippissing").run(new InputOutput()), 0);
     }
+
+    /** Switches that change shared or process wide state are rejected when support is shared. */
+    @Test
+    public void sharedSupport() {
+        for (String argument : new String[] { "--define=a:b", "--resolve-threads=2", "--no-cache-outputs", "--compile-dependencies", "--daemon" }) {
+            try {
+                new ProgramQueue(new ExecutorSupport(), Collections.<File>emptyList(), argument, "boot", "hello");
+                fail(argument);
+            } catch (GoError e) {
+                assertEquals(e.getCode(), GoError.INVALID_ARGUMENT);
+            }
+        }
+    }
 }
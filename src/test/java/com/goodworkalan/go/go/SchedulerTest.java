@@ -0,0 +1,104 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link Scheduler} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class SchedulerTest {
+    /** Waiting programs run by priority and then in order of submission. */
+    @Test
+    public void priority() {
+        Scheduler scheduler = new Scheduler(1, 16, null);
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.submit(new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        }, 0);
+        final List<String> order = new ArrayList<String>();
+        for (final String name : new String[] { "a", "b", "c", "d" }) {
+            scheduler.submit(new Runnable() {
+                public void run() {
+                    synchronized (order) {
+                        order.add(name);
+                    }
+                }
+            }, name.equals("c") ? 1 : 0);
+        }
+        latch.countDown();
+        scheduler.awaitIdle();
+        scheduler.shutdown();
+        assertEquals(order.toString(), "[c, a, b, d]");
+        assertEquals(scheduler.getScheduled(), 5);
+    }
+
+    /** A program submitted to a full or shut down scheduler runs inline. */
+    @Test
+    public void inline() {
+        Scheduler scheduler = new Scheduler(1, 1, null);
+        final Thread[] ranOn = new Thread[1];
+        Runnable program = new Runnable() {
+            public void run() {
+                ranOn[0] = Thread.currentThread();
+            }
+        };
+        scheduler.shutdown();
+        scheduler.submit(program, 0);
+        assertSame(ranOn[0], Thread.currentThread());
+        assertEquals(scheduler.getScheduled(), 0);
+    }
+
+    /** A burst of programs grows the pool past an idle worker. */
+    @Test
+    public void burst() throws InterruptedException {
+        Scheduler scheduler = new Scheduler(4, 16, null);
+        scheduler.submit(new Runnable() {
+            public void run() {
+            }
+        }, 0);
+        scheduler.awaitIdle();
+        final CountDownLatch started = new CountDownLatch(4);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Set<Thread> threads = new HashSet<Thread>();
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(new Runnable() {
+                public void run() {
+                    synchronized (threads) {
+                        threads.add(Thread.currentThread());
+                    }
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }, 0);
+        }
+        boolean concurrent = started.await(10, TimeUnit.SECONDS);
+        release.countDown();
+        scheduler.awaitIdle();
+        scheduler.shutdown();
+        assertTrue(concurrent);
+        assertEquals(threads.size(), 4);
+        for (Thread thread : threads) {
+            assertTrue(thread.isDaemon());
+        }
+    }
+}
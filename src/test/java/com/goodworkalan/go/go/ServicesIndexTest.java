@@ -0,0 +1,69 @@
+package com.goodworkalan.go.go;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link ServicesIndex} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class ServicesIndexTest extends TemporaryFiles {
+    /**
+     * Write a jar with the given commandable services file contents or
+     * without a services file if the contents are null.
+     *
+     * @param jar
+     *            The jar file.
+     * @param services
+     *            The services file contents or null.
+     */
+    private void writeJar(File jar, String services) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        zip.putNextEntry(new ZipEntry(services == null ? "README" : ServicesIndex.COMMANDABLE));
+        zip.write((services == null ? "" : services).getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.close();
+    }
+
+    /** A jar is read once until it changes. */
+    @Test
+    public void jar() throws IOException {
+        File jar = newFile("services", ".jar");
+        writeJar(jar, "com.example.SnapCommand\n\ncom.example.CrackleCommand\n");
+        ServicesIndex index = new ServicesIndex();
+        List<String> classNames = index.getCommandables(jar);
+        assertEquals(classNames, Arrays.asList("com.example.SnapCommand", "com.example.CrackleCommand"));
+        assertSame(index.getCommandables(jar), classNames);
+        writeJar(jar, null);
+        jar.setLastModified(jar.lastModified() + 2000);
+        assertNull(index.getCommandables(jar));
+        assertEquals(ServicesIndex.getURL(jar).toString(), "jar:" + jar.toURI().toURL() + "!/" + ServicesIndex.COMMANDABLE);
+    }
+
+    /** A directory is read each time. */
+    @Test
+    public void directory() throws IOException {
+        File directory = newDirectory("services");
+        File services = new File(directory, ServicesIndex.COMMANDABLE);
+        services.getParentFile().mkdirs();
+        ServicesIndex index = new ServicesIndex();
+        assertNull(index.getCommandables(directory));
+        FileOutputStream out = new FileOutputStream(services);
+        out.write("com.example.PopCommand\n".getBytes("UTF-8"));
+        out.close();
+        assertEquals(index.getCommandables(directory), Arrays.asList("com.example.PopCommand"));
+        assertEquals(ServicesIndex.getURL(directory), services.toURI().toURL());
+    }
+}
@@ -0,0 +1,66 @@
+package com.goodworkalan.go.go;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+
+import com.goodworkalan.comfort.io.Files;
+
+/**
+ * A base class for unit tests that create temporary files and directories,
+ * deleting them and everything written beneath them after each test method.
+ *
+ * @author Alan Gutierrez
+ */
+public class TemporaryFiles {
+    /** The temporary files and directories created by the current test. */
+    private final List<File> temporary = new ArrayList<File>();
+
+    /**
+     * Create an empty temporary file with the given prefix and suffix.
+     *
+     * @param prefix
+     *            The file name prefix.
+     * @param suffix
+     *            The file name suffix.
+     * @return The temporary file.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    protected File newFile(String prefix, String suffix) throws IOException {
+        File file = File.createTempFile(prefix, suffix);
+        temporary.add(file);
+        return file;
+    }
+
+    /**
+     * Create an empty temporary directory with the given prefix.
+     *
+     * @param prefix
+     *            The directory name prefix.
+     * @return The temporary directory.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    protected File newDirectory(String prefix) throws IOException {
+        File directory = newFile(prefix, "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Delete the temporary files and directories created by the test,
+     * recursively.
+     */
+    @AfterMethod
+    public void deleteTemporaryFiles() {
+        for (File file : temporary) {
+            Files.unlink(file);
+        }
+        temporary.clear();
+    }
+}
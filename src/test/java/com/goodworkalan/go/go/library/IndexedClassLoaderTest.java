@@ -0,0 +1,168 @@
+package com.goodworkalan.go.go.library;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.go.go.TemporaryFiles;
+
+/**
+ * Unit tests for the {@link IndexedClassLoader} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class IndexedClassLoaderTest extends TemporaryFiles {
+    /** A class to load from a jar. */
+    public static class Loaded {
+    }
+
+    /**
+     * Write a jar containing the given entries, where each name is followed by
+     * its content.
+     *
+     * @param entries
+     *            The alternating entry names and contents.
+     * @return The jar file.
+     */
+    private File jar(String... entries) throws IOException {
+        File file = newFile("classpath", ".jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        for (int i = 0; i < entries.length; i += 2) {
+            out.putNextEntry(new JarEntry(entries[i]));
+            out.write(entries[i + 1].getBytes("UTF-8"));
+            out.closeEntry();
+        }
+        out.close();
+        return file;
+    }
+
+    /**
+     * Read the given URL as a string.
+     *
+     * @param url
+     *            The URL.
+     * @return The contents of the URL.
+     */
+    private String read(URL url) throws IOException {
+        InputStream in = url.openStream();
+        StringBuilder string = new StringBuilder();
+        int read;
+        while ((read = in.read()) != -1) {
+            string.append((char) read);
+        }
+        in.close();
+        return string.toString();
+    }
+
+    /** Resources are found in class path order, as with a URL class loader. */
+    @Test
+    public void resources() throws IOException {
+        File directory = newDirectory("classpath");
+        new File(directory, "a/b").mkdirs();
+        Writer writer = new FileWriter(new File(directory, "a/b/c.txt"));
+        writer.write("directory");
+        writer.close();
+        List<File> files = new ArrayList<File>();
+        files.add(jar("x/y.txt", "first"));
+        files.add(directory);
+        files.add(jar("a/b/c.txt", "second", "x/y.txt", "third"));
+        IndexedClassLoader loader = new IndexedClassLoader(files, null);
+        List<URL> urls = new ArrayList<URL>();
+        for (File file : files) {
+            urls.add(file.toURI().toURL());
+        }
+        URLClassLoader expected = new URLClassLoader(urls.toArray(new URL[urls.size()]), null);
+        for (String name : Arrays.asList("x/y.txt", "a/b/c.txt")) {
+            assertEquals(loader.getResource(name), expected.getResource(name));
+            assertEquals(Collections.list(loader.getResources(name)), Collections.list(expected.getResources(name)));
+        }
+        assertEquals(read(loader.getResource("x/y.txt")), "first");
+        assertEquals(read(loader.getResource("a/b/c.txt")), "directory");
+        assertNull(loader.getResource("x/z.txt"));
+        assertNull(loader.getResource("q/y.txt"));
+        loader.close();
+    }
+
+    /** Load a class from a jar. */
+    @Test
+    public void loadClass() throws IOException, ClassNotFoundException {
+        String path = Loaded.class.getName().replace('.', '/') + ".class";
+        InputStream in = getClass().getClassLoader().getResourceAsStream(path);
+        File file = newFile("classpath", ".jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        out.putNextEntry(new JarEntry(path));
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        out.close();
+        IndexedClassLoader loader = new IndexedClassLoader(Collections.singletonList(file), null);
+        Class<?> loaded = loader.loadClass(Loaded.class.getName());
+        assertSame(loaded.getClassLoader(), loader);
+        assertEquals(loaded.getPackage().getName(), Loaded.class.getPackage().getName());
+        assertSame(loader.loadClass(Loaded.class.getName()), loaded);
+        loader.close();
+    }
+
+    /**
+     * The manifest class path of a jar is searched immediately after the jar,
+     * as with a URL class loader.
+     */
+    @Test
+    public void manifestClassPath() throws IOException {
+        File directory = newDirectory("classpath");
+        File referenced = new File(directory, "referenced.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(referenced));
+        out.putNextEntry(new JarEntry("x/y.txt"));
+        out.write("referenced".getBytes("UTF-8"));
+        out.closeEntry();
+        out.close();
+        File referencing = new File(directory, "referencing.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "referenced.jar missing.jar");
+        out = new JarOutputStream(new FileOutputStream(referencing), manifest);
+        out.close();
+        List<File> files = new ArrayList<File>();
+        files.add(referencing);
+        files.add(jar("x/y.txt", "later"));
+        files.add(referenced);
+        IndexedClassLoader loader = new IndexedClassLoader(files, null);
+        List<URL> urls = new ArrayList<URL>();
+        for (File file : files) {
+            urls.add(file.toURI().toURL());
+        }
+        URLClassLoader expected = new URLClassLoader(urls.toArray(new URL[urls.size()]), null);
+        assertEquals(loader.getResource("x/y.txt"), expected.getResource("x/y.txt"));
+        assertEquals(Collections.list(loader.getResources("x/y.txt")), Collections.list(expected.getResources("x/y.txt")));
+        assertEquals(read(loader.getResource("x/y.txt")), "referenced");
+        loader.close();
+    }
+
+    /** A missing class is not found. */
+    @Test(expectedExceptions = ClassNotFoundException.class)
+    public void classNotFound() throws IOException, ClassNotFoundException {
+        new IndexedClassLoader(Collections.singletonList(jar("x/y.txt", "x")), null).loadClass("x.Missing");
+    }
+}
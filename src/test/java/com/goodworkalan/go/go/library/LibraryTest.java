@@ -2,19 +2,35 @@ package com.goodworkalan.go.go.library;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.Test;
 
+import com.goodworkalan.go.go.GoException;
+import com.goodworkalan.go.go.TemporaryFiles;
 import com.goodworkalan.go.go.library.Library;
 
+
 /**
  * Unit test for the library class.
  * 
  * @author Alan Gutierrez
  */
-public class LibraryTest {
+public class LibraryTest extends TemporaryFiles {
     /**  Test the library equality and hash code. */
     @Test
     public void equality() {
@@ -23,4 +39,191 @@ public class LibraryTest {
         assertFalse(library.equals("/lib"));
         assertEquals(library.hashCode(), new Library(new File("/lib")).hashCode());
     }
+
+    /** Artifact lookup uses cached listings until the library is invalidated. */
+    @Test
+    public void listings() throws IOException {
+        File dir = newDirectory("library");
+        Artifact artifact = new Artifact("com.example/a/0.1");
+        new File(dir, artifact.getDirectoryPath()).mkdirs();
+        File jar = new File(dir, artifact.getPath("jar"));
+        jar.createNewFile();
+        new File(dir, artifact.getPath("dep")).createNewFile();
+        Library library = new Library(dir);
+        Include include = new Include(new Artifact("com.example/a/0.+1"));
+        assertEquals(library.getArtifactPart(include, "jar", "dep").getArtifact(), artifact);
+        jar.delete();
+        assertEquals(library.getArtifactPart(include, "jar", "dep").getArtifact(), artifact);
+        library.invalidate();
+        assertNull(library.getArtifactPart(include, "jar", "dep"));
+        assertEquals(library.getArtifactPart(include, "dep").getArtifact(), artifact);
+    }
+
+    /**
+     * Create a library with a deep dependency graph, with a root artifact that
+     * depends on each artifact of the first of the given number of levels,
+     * where each artifact depends on three artifacts of the next level.
+     * 
+     * @param levels
+     *            The number of levels.
+     * @param width
+     *            The number of artifacts in each level.
+     * @return The library directory.
+     */
+    private File getDeepLibrary(int levels, int width) throws IOException {
+        File dir = newDirectory("library");
+        List<String> root = new ArrayList<String>();
+        for (int i = 0; i < width; i++) {
+            root.add("+ com.example/n0-" + i + "/0.1");
+        }
+        install(dir, new Artifact("com.example/root/0.1"), root);
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < width; i++) {
+                List<String> deps = new ArrayList<String>();
+                if (level + 1 < levels) {
+                    int[] next = new int[] { i, (i + 1) % width, (i * 7) % width };
+                    for (int j : next) {
+                        deps.add("+ com.example/n" + (level + 1) + "-" + j + "/0.1");
+                    }
+                }
+                install(dir, new Artifact("com.example/n" + level + "-" + i + "/0.1"), deps);
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * Install an artifact with an empty jar and a dependency file with the
+     * given lines in the given library directory.
+     * 
+     * @param dir
+     *            The library directory.
+     * @param artifact
+     *            The artifact.
+     * @param lines
+     *            The dependency file lines.
+     */
+    private void install(File dir, Artifact artifact, List<String> lines) throws IOException {
+        new File(dir, artifact.getDirectoryPath()).mkdirs();
+        new File(dir, artifact.getPath("jar")).createNewFile();
+        Writer writer = new FileWriter(new File(dir, artifact.getPath("dep")));
+        for (String line : lines) {
+            writer.write(line);
+            writer.write("\n");
+        }
+        writer.close();
+    }
+
+    /**
+     * A library that simulates a slow network file system by sleeping during
+     * each artifact lookup, recording the greatest number of lookups that were
+     * in progress at once.
+     */
+    private final static class SlowLibrary extends Library {
+        /** The number of lookups in progress. */
+        private final AtomicInteger active = new AtomicInteger();
+
+        /** The greatest number of lookups that were in progress at once. */
+        private final AtomicInteger peak = new AtomicInteger();
+
+        /**
+         * Create a slow library.
+         * 
+         * @param dirs
+         *            The library directories.
+         */
+        public SlowLibrary(File... dirs) {
+            super(dirs);
+        }
+
+        /**
+         * Sleep and then get the artifact part.
+         * 
+         * @param include
+         *            The artifact to include.
+         * @param suffixes
+         *            The required file suffixes.
+         * @return The artifact part or null.
+         */
+        @Override
+        public ArtifactPart getArtifactPart(Include include, String... suffixes) {
+            int count = active.incrementAndGet();
+            for (;;) {
+                int greatest = peak.get();
+                if (count <= greatest || peak.compareAndSet(greatest, count)) {
+                    break;
+                }
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+            return super.getArtifactPart(include, suffixes);
+        }
+
+        /**
+         * Get the greatest number of lookups that were in progress at once.
+         * 
+         * @return The peak number of concurrent lookups.
+         */
+        public int getPeak() {
+            return peak.get();
+        }
+    }
+
+    /**
+     * Concurrent resolution of a deep dependency graph on a slow file system
+     * overlaps artifact lookups and produces the same class path as sequential
+     * resolution.
+     */
+    @Test
+    public void parallel() throws IOException {
+        File dir = getDeepLibrary(6, 40);
+        Collection<PathPart> parts = Collections.<PathPart>singletonList(new ResolutionPart(new Artifact("com.example/root/0.1")));
+        Set<Object> exclude = Collections.<Object>singleton(new Exclude("com.example/n3-5"));
+        SlowLibrary sequentialLibrary = new SlowLibrary(dir);
+        Collection<PathPart> sequential = sequentialLibrary.resolve(parts, exclude);
+        assertEquals(sequentialLibrary.getPeak(), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            SlowLibrary parallelLibrary = new SlowLibrary(dir);
+            Collection<PathPart> parallel = parallelLibrary.resolve(parts, exclude, executor);
+            assertEquals(artifacts(parallel), artifacts(sequential));
+            assertEquals(sequential.size(), 240);
+            assertTrue(parallelLibrary.getPeak() > 1, "peak " + parallelLibrary.getPeak());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** A failed concurrent expansion throws the exception of the first failure. */
+    @Test(expectedExceptions = GoException.class)
+    public void parallelUnresolved() throws IOException {
+        File dir = getDeepLibrary(2, 4);
+        new File(dir, new Artifact("com.example/n1-2/0.1").getPath("jar")).delete();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            new Library(dir).resolve(Collections.<PathPart>singletonList(new ResolutionPart(new Artifact("com.example/root/0.1"))), Collections.emptySet(), executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Get the artifacts of the given path parts.
+     * 
+     * @param parts
+     *            The path parts.
+     * @return The list of artifacts.
+     */
+    private List<Artifact> artifacts(Collection<PathPart> parts) {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        for (PathPart part : parts) {
+            artifacts.add(part.getArtifact());
+        }
+        return artifacts;
+    }
 }
@@ -0,0 +1,114 @@
+package com.goodworkalan.go.go.library;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.go.go.TemporaryFiles;
+
+/**
+ * Unit tests for the {@link ProgramIndex} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class ProgramIndexTest extends TemporaryFiles {
+    /**
+     * Write a <code>.go</code> file with the given line to the given group
+     * directory of the given library.
+     *
+     * @param library
+     *            The library directory.
+     * @param group
+     *            The group.
+     * @param name
+     *            The artifact name.
+     * @param line
+     *            The program configuration line.
+     */
+    private void write(File library, String group, String name, String line) throws IOException {
+        File directory = new File(new File(library, "go-go"), group);
+        directory.mkdirs();
+        Writer writer = new FileWriter(new File(directory, name + ".go"));
+        writer.write(line);
+        writer.write("\n");
+        writer.close();
+    }
+
+    /**
+     * Set the modification times of the <code>go-go</code> directories to a
+     * fixed time in the past so that the index is not considered racy and so
+     * that rewriting a <code>.go</code> file does not change them.
+     *
+     * @param library
+     *            The library directory.
+     */
+    private void age(File library) {
+        File gogo = new File(library, "go-go");
+        long lastModified = 1000000000000L;
+        for (File directory : gogo.listFiles()) {
+            directory.setLastModified(lastModified);
+        }
+        gogo.setLastModified(lastModified);
+    }
+
+    /** A library without a <code>go-go</code> directory has no index. */
+    @Test
+    public void missing() throws IOException {
+        assertNull(ProgramIndex.open(newDirectory("library")));
+    }
+
+    /** Build and look up programs in an index. */
+    @Test
+    public void lookup() throws IOException {
+        File library = newDirectory("library");
+        write(library, "com.goodworkalan", "leaves", "com.goodworkalan/leaves/0.1 branch, branch leaf");
+        write(library, "com.goodworkalan", "example", "com.goodworkalan/example/0.1 ");
+        age(library);
+        ProgramIndex index = ProgramIndex.open(library);
+        assertEquals(index.size(), 2);
+        assertEquals(index.get(asList("branch", "leaf")), new Artifact("com.goodworkalan/leaves/0.1"));
+        assertEquals(index.get(asList("branch")), new Artifact("com.goodworkalan/leaves/0.1"));
+        assertNull(index.get(asList("leaf")));
+        assertNull(index.get(asList("branch leaf")));
+        assertEquals(index.getPrograms().size(), 2);
+        assertTrue(new File(library, "go-go/programs.index").isFile());
+
+        index = ProgramIndex.open(library);
+        assertEquals(index.get(asList("branch", "leaf")), new Artifact("com.goodworkalan/leaves/0.1"));
+    }
+
+    /** An invalidated index is rebuilt. */
+    @Test
+    public void invalidate() throws IOException {
+        File library = newDirectory("library");
+        write(library, "com.goodworkalan", "leaves", "com.goodworkalan/leaves/0.1 branch");
+        age(library);
+        assertEquals(ProgramIndex.open(library).get(asList("branch")), new Artifact("com.goodworkalan/leaves/0.1"));
+        write(library, "com.goodworkalan", "leaves", "com.goodworkalan/leaves/0.2 branch");
+        age(library);
+        assertEquals(ProgramIndex.open(library).get(asList("branch")), new Artifact("com.goodworkalan/leaves/0.1"));
+        ProgramIndex.invalidate(library);
+        assertFalse(new File(library, "go-go/programs.index").exists());
+        assertEquals(ProgramIndex.open(library).get(asList("branch")), new Artifact("com.goodworkalan/leaves/0.2"));
+    }
+
+    /** A new group directory makes the index stale. */
+    @Test
+    public void stale() throws IOException {
+        File library = newDirectory("library");
+        write(library, "com.goodworkalan", "leaves", "com.goodworkalan/leaves/0.1 branch");
+        age(library);
+        assertNull(ProgramIndex.open(library).get(asList("snap")));
+        write(library, "com.github.bigeasy", "snap", "com.github.bigeasy/snap/0.1 snap");
+        assertEquals(ProgramIndex.open(library).get(asList("snap")), new Artifact("com.github.bigeasy/snap/0.1"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.goodworkalan.go.go.library;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.goodworkalan.go.go.TemporaryFiles;
+
+/**
+ * Unit tests for the {@link ResolutionCache} class.
+ *
+ * @author Alan Gutierrez
+ */
+public class ResolutionCacheTest extends TemporaryFiles {
+    /** A fixed modification time in the past so that nothing is racy. */
+    private final static long AGED = 1000000000000L;
+
+    /**
+     * Install an artifact with an empty jar and a dependency file containing
+     * the given lines in the given library.
+     *
+     * @param library
+     *            The library directory.
+     * @param artifact
+     *            The artifact.
+     * @param lines
+     *            The dependency file lines.
+     */
+    private void install(File library, Artifact artifact, String... lines) throws IOException {
+        File directory = new File(library, artifact.getDirectoryPath());
+        directory.mkdirs();
+        new File(library, artifact.getPath("jar")).createNewFile();
+        Writer writer = new FileWriter(new File(library, artifact.getPath("dep")));
+        for (String line : lines) {
+            writer.write(line);
+            writer.write("\n");
+        }
+        writer.close();
+    }
+
+    /**
+     * Set the modification time of every file in the given directory tree to a
+     * fixed time in the past.
+     *
+     * @param file
+     *            The root of the directory tree.
+     */
+    private void age(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                age(child);
+            }
+        }
+        file.setLastModified(AGED);
+    }
+
+    /**
+     * Get the artifacts of the given path parts.
+     *
+     * @param parts
+     *            The path parts.
+     * @return The list of artifacts.
+     */
+    private List<Artifact> artifacts(Collection<PathPart> parts) {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        for (PathPart part : parts) {
+            artifacts.add(part.getArtifact());
+        }
+        return artifacts;
+    }
+
+    /**
+     * Resolve the given artifact with the given cache and library.
+     *
+     * @param cache
+     *            The resolution cache.
+     * @param library
+     *            The library.
+     * @param artifact
+     *            The artifact to resolve.
+     * @return The resolved artifacts.
+     */
+    private List<Artifact> resolve(ResolutionCache cache, Library library, Artifact artifact) {
+        return artifacts(cache.resolve(library, Collections.<PathPart>singletonList(new ResolutionPart(artifact)), Collections.emptySet()));
+    }
+
+    /** A warm resolution is read from the lock file. */
+    @Test
+    public void warm() throws IOException {
+        File dir = newDirectory("library");
+        Artifact a = new Artifact("com.example/a/0.1");
+        Artifact b = new Artifact("com.example/b/0.1");
+        install(dir, a, "+ com.example/b/0.1");
+        install(dir, b);
+        age(dir);
+        File locks = newDirectory("library");
+        ResolutionCache cache = new ResolutionCache(locks);
+        Library library = new Library(dir);
+        assertEquals(resolve(cache, library, a), asList(a, b));
+        assertEquals(locks.list().length, 1);
+
+        // Replace the dependency of a on b with a dependency on a missing
+        // artifact without changing the length or modification time of the
+        // dependency file so that only the lock file still finds b.
+        install(dir, a, "+ com.example/c/0.1");
+        new File(dir, a.getPath("dep")).setLastModified(AGED);
+        assertEquals(resolve(cache, new Library(dir), a), asList(a, b));
+    }
+
+    /** A changed dependency file invalidates the lock file. */
+    @Test
+    public void stale() throws IOException {
+        File dir = newDirectory("library");
+        Artifact a = new Artifact("com.example/a/0.1");
+        Artifact b = new Artifact("com.example/b/0.1");
+        install(dir, a, "+ com.example/b/0.1");
+        install(dir, b);
+        age(dir);
+        ResolutionCache cache = new ResolutionCache(newDirectory("library"));
+        Library library = new Library(dir);
+        assertEquals(resolve(cache, library, a), asList(a, b));
+        install(dir, a);
+        new File(dir, a.getPath("dep")).setLastModified(AGED - 60000);
+        assertEquals(resolve(cache, library, a), asList(a));
+    }
+
+    /** A new version directory invalidates the lock file. */
+    @Test
+    public void version() throws IOException {
+        File dir = newDirectory("library");
+        Artifact a = new Artifact("com.example/a/0.1");
+        install(dir, a);
+        age(dir);
+        ResolutionCache cache = new ResolutionCache(newDirectory("library"));
+        Library library = new Library(dir);
+        assertEquals(resolve(cache, library, new Artifact("com.example/a/0.+1")), asList(a));
+        Artifact newer = new Artifact("com.example/a/0.2");
+        install(dir, newer);
+        age(dir);
+        new File(dir, a.getUnversionedDirectoryPath()).setLastModified(AGED - 60000);
+        library.invalidate();
+        assertEquals(resolve(cache, library, new Artifact("com.example/a/0.+1")), asList(newer));
+    }
+
+    /**
+     * Create a list of artifacts.
+     *
+     * @param artifacts
+     *            The artifacts.
+     * @return The list of artifacts.
+     */
+    private static List<Artifact> asList(Artifact... artifacts) {
+        List<Artifact> list = new ArrayList<Artifact>();
+        Collections.addAll(list, artifacts);
+        return list;
+    }
+}